@@ -0,0 +1,23 @@
+package project.bench;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+
+/**
+ * Runs the JMH benchmarks of this package with the GC profiler attached, so every result comes  <br>
+ * with its allocation rate per operation. Takes the usual JMH command line, e.g.               <br>
+ * <tt>java -jar target/benchmarks.jar OcTree -p depth=5</tt> after <tt>mvn -Pjmh package</tt>. <br>
+ * Run every change to the spatial structures through it before and after.
+ */
+public final class Benchmarks {
+
+    private Benchmarks() {}
+
+    public static void main(String[] args) throws Exception {
+        String[] withProfiler = new String[args.length + 2];
+        withProfiler[0] = "-prof";
+        withProfiler[1] = GCProfiler.class.getName();
+        System.arraycopy(args, 0, withProfiler, 2, args.length);
+        Main.main(withProfiler);
+    }
+}
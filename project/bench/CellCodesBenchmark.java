@@ -0,0 +1,70 @@
+package project.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import project.data.CellCodes;
+import project.data.OcTree;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cell codes of a batch of points, one at a time through <code>OcTree.getCellCode</code> and in bulk
+ * through {@link CellCodes}, scalar and vectorized when the Vector API is there. Times are per point.
+ * For the vector loop build with <tt>-Pjmh,vector</tt> and run with <tt>-jvmArgsAppend --add-modules=jdk.incubator.vector</tt>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CellCodesBenchmark {
+
+    private static final int POINTS = 1_000_000;
+
+    @Param({ "1", "3", "5" })
+    public int depth;
+
+    private double[] xs, ys, zs;
+    private final long[] codes = new long[POINTS];
+
+    @Setup
+    public void setup() {
+        double[][] points = PointSets.of("uniform", POINTS, 3);
+        xs = points[0];
+        ys = points[1];
+        zs = points[2];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void getCellCode(Blackhole blackhole) {
+        for (int i = 0; i < POINTS; i++)
+            blackhole.consume(OcTree.getCellCode(xs[i], ys[i], zs[i], 1.0, depth));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public long[] computeScalar() {
+        CellCodes.computeScalar(xs, ys, zs, POINTS, 1.0, depth, codes);
+        return codes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public long[] compute() {
+        CellCodes.compute(xs, ys, zs, POINTS, 1.0, depth, codes);
+        return codes;
+    }
+}
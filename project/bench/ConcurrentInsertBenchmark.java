@@ -0,0 +1,81 @@
+package project.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import project.data.ConcurrentOcTree;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Filling a {@link ConcurrentOcTree} from several writer threads, with a reader scanning the
+ * tree the whole time. Each invocation starts its own threads, so the time per point includes
+ * starting them; with 4M points that's noise. Compare the <tt>threads</tt> results for the speedup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentInsertBenchmark {
+
+    private static final int POINTS = 4_000_000;
+
+    @Param({ "1", "2", "4", "8" })
+    public int threads;
+
+    @Param({ "5" })
+    public int depth;
+
+    private double[] xs, ys, zs;
+
+    @Setup
+    public void setup() {
+        double[][] points = PointSets.of("uniform", POINTS, 3);
+        xs = points[0];
+        ys = points[1];
+        zs = points[2];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public ConcurrentOcTree insert() throws InterruptedException {
+        ConcurrentOcTree tree = new ConcurrentOcTree(depth);
+        AtomicBoolean done = new AtomicBoolean();
+
+        Thread reader = new Thread(() -> {
+            long[] seen = new long[1];
+            while (!done.get())
+                tree.forEachPoint((x, y, z) -> seen[0]++);
+        });
+        reader.setDaemon(true);
+        reader.start();
+
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int from = (int) ((long) POINTS * t / threads), to = (int) ((long) POINTS * (t + 1) / threads);
+            writers[t] = new Thread(() -> {
+                for (int i = from; i < to; i++)
+                    tree.insert(xs[i], ys[i], zs[i]);
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers)
+            writer.join();
+
+        done.set(true);
+        reader.join();
+        return tree;
+    }
+}
@@ -0,0 +1,56 @@
+package project.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import project.data.ComplexArray;
+import project.data.FFT;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@link FFT} transform, sequential and split over the fork/join pool, for power of two
+ * sizes and the Bluestein ones in between. Times are per transform, input copy included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FFTBenchmark {
+
+    @Param({ "1024", "1000", "65536", "1048576", "1000000" })
+    public int size;
+
+    @Param({ "false", "true" })
+    public boolean parallel;
+
+    private ComplexArray input, work;
+    private FFT fft;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        input = new ComplexArray(size);
+        for (int i = 0; i < size; i++)
+            input.set(i, random.nextGaussian(), random.nextGaussian());
+        work = new ComplexArray(size);
+        fft = new FFT(size).setParallel(parallel);
+    }
+
+    @Benchmark
+    public ComplexArray transform() {
+        fft.transform(work.copyFrom(input));
+        return work;
+    }
+}
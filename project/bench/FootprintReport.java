@@ -0,0 +1,44 @@
+package project.bench;
+
+import project.data.QuadTree;
+import project.data.Tree;
+
+import java.util.Random;
+
+/**
+ * Prints the heap footprint of the dense and sparse branch layouts of {@link Tree}.
+ * Usage: <tt>FootprintReport [points] [depth]</tt>, defaulting to 1M points at depth 10.
+ */
+public class FootprintReport {
+
+    public static void main(String[] args) {
+        int points = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int depth  = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        System.out.printf("%d points, depth %d%n", points, depth);
+        System.out.printf("%-8s %12s %12s %16s %16s%n", "layout", "elements", "nodes", "estimated B/elem", "measured B/elem");
+        report("dense", new QuadTree<>(depth, 1.0, false), points);
+        report("sparse", new QuadTree<>(depth, 1.0, true), points);
+    }
+
+    private static void report(String name, Tree<Integer> tree, int points) {
+        Random random = new Random(42);
+        long before = usedHeap();
+
+        for (int i = 0; i < points; i++)
+            tree.insert(i, random.nextDouble(), random.nextDouble());
+
+        long measured = usedHeap() - before;
+        long elements = tree.getLeaves().size();
+
+        System.out.printf("%-8s %12d %12d %16.1f %16.1f%n", name, elements, tree.getNodeCount(),
+                (double) tree.estimateHeapSize() / elements, (double) measured / elements);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,84 @@
+package project.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import project.data.KdTree;
+import project.data.Tree;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filling a {@link KdTree} per point, and its 8 nearest neighbour search per query, exact
+ * (<tt>epsilon = 0</tt>) and within twice the true distance (<tt>epsilon = 1</tt>).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KdTreeBenchmark {
+
+    private static final int POINTS = 100_000;
+    private static final int QUERIES = 256;
+
+    @Param({ "uniform", "clustered" })
+    public String distribution;
+
+    @Param({ "3", "8", "16", "32" })
+    public int dimensions;
+
+    @Param({ "0", "1" })
+    public double epsilon;
+
+    private Tree.NVector[] vectors, targets;
+    private KdTree<Integer> filled;
+
+    @Setup
+    public void setup() {
+        vectors = vectors(PointSets.of(distribution, POINTS, dimensions), POINTS, dimensions);
+        targets = vectors(PointSets.uniform(QUERIES, dimensions, 1.0, 7), QUERIES, dimensions);
+
+        filled = new KdTree<>(dimensions);
+        for (int i = 0; i < POINTS; i++)
+            filled.insert(vectors[i], i);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public KdTree<Integer> insert() {
+        KdTree<Integer> tree = new KdTree<>(dimensions);
+        for (int i = 0; i < POINTS; i++)
+            tree.insert(vectors[i], i);
+        return tree;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void nearest(Blackhole blackhole) {
+        for (Tree.NVector target : targets)
+            blackhole.consume(filled.nearest(target, 8, epsilon));
+    }
+
+    private static Tree.NVector[] vectors(double[][] points, int count, int dimensions) {
+        Tree.NVector[] vectors = new Tree.NVector[count];
+        for (int i = 0; i < count; i++) {
+            double[] coordinates = new double[dimensions];
+            for (int k = 0; k < dimensions; k++)
+                coordinates[k] = points[k][i];
+            vectors[i] = new Tree.NVector(coordinates);
+        }
+        return vectors;
+    }
+}
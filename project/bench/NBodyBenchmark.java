@@ -0,0 +1,68 @@
+package project.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import project.data.BarnesHut;
+import project.data.OcTree;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@link BarnesHut} step over 100K clustered bodies for several opening angles, and building
+ * the tree it runs on. Times are per step. <tt>NBodyReport</tt> prints the accuracy of every angle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NBodyBenchmark {
+
+    private static final int BODIES = 100_000;
+    private static final int LEAF_CAPACITY = 16;
+
+    @Param({ "0.3", "0.5", "0.7", "1.0" })
+    public double theta;
+
+    private double[] xs, ys, zs, masses;
+    private final double[] ax = new double[BODIES], ay = new double[BODIES], az = new double[BODIES];
+    private BarnesHut evaluator;
+
+    @Setup
+    public void setup() {
+        double[][] points = PointSets.clustered(BODIES, 3, 1.0, 16, 0.05, 42);
+        xs = points[0];
+        ys = points[1];
+        zs = points[2];
+        masses = new double[BODIES];
+        Random random = new Random(42);
+        for (int i = 0; i < BODIES; i++)
+            masses[i] = 0.5 + random.nextDouble();
+
+        evaluator = new BarnesHut(build()).setTheta(theta).setSoftening(1e-3);
+    }
+
+    @Benchmark
+    public OcTree build() {
+        OcTree tree = OcTree.adaptive(1.0, LEAF_CAPACITY).trackMass();
+        tree.insertAll(xs, ys, zs, masses);
+        return tree;
+    }
+
+    @Benchmark
+    public double[] accelerations() {
+        evaluator.accelerations(xs, ys, zs, ax, ay, az);
+        return ax;
+    }
+}
@@ -0,0 +1,65 @@
+package project.bench;
+
+import project.data.BarnesHut;
+import project.data.OcTree;
+
+import java.util.Random;
+
+/**
+ * Checks the accuracy of {@link BarnesHut} for several opening angles against the exact all pairs
+ * sum on a sample of the bodies. For the time per step see <code>NBodyBenchmark</code>.
+ * Usage: <tt>NBodyReport [bodies] [leafCapacity]</tt>, defaulting to 100K bodies and 16 per leaf.
+ */
+public class NBodyReport {
+
+    private static final int SAMPLE = 500;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+
+        double[][] points = PointSets.clustered(count, 3, 1.0, 16, 0.05, 42);
+        double[] xs = points[0], ys = points[1], zs = points[2];
+        double[] masses = new double[count];
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++)
+            masses[i] = 0.5 + random.nextDouble();
+
+        OcTree tree = OcTree.adaptive(1.0, capacity).trackMass();
+        tree.insertAll(xs, ys, zs, masses);
+        System.out.printf("%d bodies%n", count);
+
+        // Exact accelerations of a sample of the bodies.
+        double[][] exact = new double[SAMPLE][3];
+        for (int s = 0; s < SAMPLE; s++) {
+            int i = s * (count / SAMPLE);
+            for (int k = 0; k < count; k++) {
+                double dx = xs[k] - xs[i], dy = ys[k] - ys[i], dz = zs[k] - zs[i];
+                double d2 = dx * dx + dy * dy + dz * dz + 1e-6;
+                if (k == i)
+                    continue;
+                double f = masses[k] / (d2 * Math.sqrt(d2));
+                exact[s][0] += f * dx;
+                exact[s][1] += f * dy;
+                exact[s][2] += f * dz;
+            }
+        }
+
+        System.out.printf("%-8s %16s %16s%n", "theta", "median rel err", "max rel err");
+        double[] ax = new double[count], ay = new double[count], az = new double[count];
+        for (double theta : new double[] { 0.3, 0.5, 0.7, 1.0 }) {
+            BarnesHut evaluator = new BarnesHut(tree).setTheta(theta).setSoftening(1e-3);
+            evaluator.accelerations(xs, ys, zs, ax, ay, az);
+
+            double[] errors = new double[SAMPLE];
+            for (int s = 0; s < SAMPLE; s++) {
+                int i = s * (count / SAMPLE);
+                double ex = exact[s][0], ey = exact[s][1], ez = exact[s][2];
+                errors[s] = Math.sqrt((ax[i] - ex) * (ax[i] - ex) + (ay[i] - ey) * (ay[i] - ey) + (az[i] - ez) * (az[i] - ez))
+                        / Math.sqrt(ex * ex + ey * ey + ez * ez);
+            }
+            java.util.Arrays.sort(errors);
+            System.out.printf("%-8.2f %16.2e %16.2e%n", theta, errors[SAMPLE / 2], errors[SAMPLE - 1]);
+        }
+    }
+}
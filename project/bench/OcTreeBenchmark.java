@@ -0,0 +1,75 @@
+package project.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import project.data.OcTree;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filling an {@link OcTree}, looking up the leaf of every point and listing the leaves.
+ * Times are per point, except for <code>getLeaves</code>, which is per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OcTreeBenchmark {
+
+    private static final int POINTS = 1_000_000;
+
+    @Param({ "uniform", "clustered" })
+    public String distribution;
+
+    @Param({ "1", "3", "5" })
+    public int depth;
+
+    private double[] xs, ys, zs;
+    private OcTree filled;
+
+    @Setup
+    public void setup() {
+        double[][] points = PointSets.of(distribution, POINTS, 3);
+        xs = points[0];
+        ys = points[1];
+        zs = points[2];
+
+        filled = new OcTree(depth);
+        for (int i = 0; i < POINTS; i++)
+            filled.insert(xs[i], ys[i], zs[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public OcTree insert() {
+        OcTree tree = new OcTree(depth);
+        for (int i = 0; i < POINTS; i++)
+            tree.insert(xs[i], ys[i], zs[i]);
+        return tree;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void getLeaf(Blackhole blackhole) {
+        for (int i = 0; i < POINTS; i++)
+            blackhole.consume(filled.getLeaf(xs[i], ys[i], zs[i]));
+    }
+
+    @Benchmark
+    public Object getLeaves() {
+        return filled.getLeaves();
+    }
+}
@@ -0,0 +1,61 @@
+package project.bench;
+
+import java.util.Random;
+
+/**
+ * Generators for the point distributions the benchmarks run on.
+ * Points are returned per axis, <tt>points[axis][i]</tt>, scaled to [0, scale].
+ */
+public final class PointSets {
+
+    private PointSets() {}
+
+    /**
+     * Points of the named distribution in the unit space, <tt>uniform</tt> or 16 <tt>clustered</tt> blobs, <br>
+     * as the <code>distribution</code> parameter of the benchmarks names them.
+     */
+    public static double[][] of(String distribution, int count, int dimensions) {
+        switch (distribution) {
+            case "uniform":   return uniform(count, dimensions, 1.0, 42);
+            case "clustered": return clustered(count, dimensions, 1.0, 16, 0.02, 42);
+            default: throw new IllegalArgumentException("Unknown distribution " + distribution);
+        }
+    }
+
+    /**
+     * Points spread evenly over the whole space.
+     */
+    public static double[][] uniform(int count, int dimensions, double scale, long seed) {
+        Random random = new Random(seed);
+        double[][] points = new double[dimensions][count];
+        for (int i = 0; i < count; i++) {
+            for (int k = 0; k < dimensions; k++)
+                points[k][i] = random.nextDouble() * scale;
+        }
+        return points;
+    }
+
+    /**
+     * Points packed in gaussian blobs around a few random centres,     <br>
+     * with a standard deviation of <tt>spread</tt> relative to the scale. <br>
+     * Points falling outside of the space are clamped to its edge.
+     */
+    public static double[][] clustered(int count, int dimensions, double scale, int clusters, double spread, long seed) {
+        Random random = new Random(seed);
+        double[][] centres = new double[clusters][dimensions];
+        for (double[] centre : centres) {
+            for (int k = 0; k < dimensions; k++)
+                centre[k] = random.nextDouble();
+        }
+
+        double[][] points = new double[dimensions][count];
+        for (int i = 0; i < count; i++) {
+            double[] centre = centres[random.nextInt(clusters)];
+            for (int k = 0; k < dimensions; k++) {
+                double x = centre[k] + random.nextGaussian() * spread;
+                points[k][i] = Math.max(Math.min(x, 1), 0) * scale;
+            }
+        }
+        return points;
+    }
+}
@@ -0,0 +1,79 @@
+package project.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import project.data.PointQuadTree;
+import project.data.QuadTree;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filling the generic {@link QuadTree} against the flat {@link PointQuadTree}, and looking up
+ * the leaves of the latter. Times are per point.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuadTreeBenchmark {
+
+    private static final int POINTS = 1_000_000;
+
+    @Param({ "uniform", "clustered" })
+    public String distribution;
+
+    @Param({ "4", "8", "12" })
+    public int depth;
+
+    private double[] xs, ys;
+    private PointQuadTree filled;
+
+    @Setup
+    public void setup() {
+        double[][] points = PointSets.of(distribution, POINTS, 2);
+        xs = points[0];
+        ys = points[1];
+
+        filled = new PointQuadTree(depth, 1.0);
+        for (int i = 0; i < POINTS; i++)
+            filled.insert(xs[i], ys[i], i);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public QuadTree<Integer> quadTreeInsert() {
+        QuadTree<Integer> tree = new QuadTree<>(depth, 1.0);
+        for (int i = 0; i < POINTS; i++)
+            tree.insert(i, xs[i], ys[i]);
+        return tree;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public PointQuadTree pointQuadTreeInsert() {
+        PointQuadTree tree = new PointQuadTree(depth, 1.0);
+        for (int i = 0; i < POINTS; i++)
+            tree.insert(xs[i], ys[i], i);
+        return tree;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void pointQuadTreeFindLeaf(Blackhole blackhole) {
+        for (int i = 0; i < POINTS; i++)
+            blackhole.consume(filled.findLeaf(xs[i], ys[i]));
+    }
+}
@@ -0,0 +1,129 @@
+package project.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import project.data.OcTree;
+import project.data.SpatialHash;
+import project.data.SpatialIndex;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the same workloads on every {@link SpatialIndex}: filling it, moving every point
+ * a little, looking up leaves, small range queries and a scan over the points, on uniform
+ * and clustered data. The grid cells are as wide as the leaves of the fixed depth tree.
+ * Times are per point, or per query for <code>queryRange</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpatialIndexBenchmark {
+
+    private static final int POINTS = 500_000;
+    private static final int QUERIES = 10_000;
+    private static final double STEP = 0.002;
+    private static final double QUERY_SIZE = 0.02;
+    private static final int DEPTH = 5;
+
+    @Param({ "uniform", "clustered" })
+    public String distribution;
+
+    @Param({ "OcTree", "OcTree.adaptive", "SpatialHash" })
+    public String structure;
+
+    private double[] xs, ys, zs, nxs, nys, nzs;
+    private SpatialIndex<?> filled;
+
+    @Setup
+    public void setup() {
+        double[][] points = PointSets.of(distribution, POINTS, 3);
+        xs = points[0];
+        ys = points[1];
+        zs = points[2];
+
+        Random random = new Random(7);
+        nxs = new double[POINTS];
+        nys = new double[POINTS];
+        nzs = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            nxs[i] = step(xs[i], random);
+            nys[i] = step(ys[i], random);
+            nzs[i] = step(zs[i], random);
+        }
+
+        filled = insert();
+    }
+
+    private SpatialIndex<?> create() {
+        switch (structure) {
+            case "OcTree":          return new OcTree(DEPTH);
+            case "OcTree.adaptive": return OcTree.adaptive(1.0, 16);
+            case "SpatialHash":     return new SpatialHash(1.0 / (1 << DEPTH));
+            default: throw new IllegalArgumentException("Unknown structure " + structure);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public SpatialIndex<?> insert() {
+        SpatialIndex<?> index = create();
+        for (int i = 0; i < POINTS; i++)
+            index.insert(xs[i], ys[i], zs[i]);
+        return index;
+    }
+
+    // Every point steps away and back again, so the index ends up as it started.
+    @Benchmark
+    @OperationsPerInvocation(2 * POINTS)
+    public void update(Blackhole blackhole) {
+        for (int i = 0; i < POINTS; i++)
+            blackhole.consume(filled.update(xs[i], ys[i], zs[i], nxs[i], nys[i], nzs[i]));
+        for (int i = 0; i < POINTS; i++)
+            blackhole.consume(filled.update(nxs[i], nys[i], nzs[i], xs[i], ys[i], zs[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void findLeaf(Blackhole blackhole) {
+        for (int i = 0; i < POINTS; i++)
+            blackhole.consume(filled.findLeaf(xs[i], ys[i], zs[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public long queryRange() {
+        long[] count = new long[1];
+        for (int i = 0; i < QUERIES; i++) {
+            double x = xs[i], y = ys[i], z = zs[i];
+            filled.queryRange(x, y, z, x + QUERY_SIZE, y + QUERY_SIZE, z + QUERY_SIZE, (px, py, pz) -> count[0]++);
+        }
+        return count[0];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public long forEachPoint() {
+        long[] count = new long[1];
+        filled.forEachPoint((x, y, z) -> count[0]++);
+        return count[0];
+    }
+
+    private static double step(double value, Random random) {
+        return Math.max(0, Math.min(1, value + (random.nextDouble() * 2 - 1) * STEP));
+    }
+}
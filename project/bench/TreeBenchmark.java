@@ -0,0 +1,61 @@
+package project.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import project.data.Tree;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filling the n-dimensional {@link Tree}, per point.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeBenchmark {
+
+    private static final int POINTS = 1_000_000;
+
+    @Param({ "uniform", "clustered" })
+    public String distribution;
+
+    @Param({ "2", "3", "4" })
+    public int dimensions;
+
+    @Param({ "3", "5", "8" })
+    public int depth;
+
+    private double[][] points;
+    private double[] coordinates;
+
+    @Setup
+    public void setup() {
+        points = PointSets.of(distribution, POINTS, dimensions);
+        coordinates = new double[dimensions];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public Tree<Integer> insert() {
+        Tree<Integer> tree = new Tree<>(dimensions, depth, 1.0) {};
+        for (int i = 0; i < POINTS; i++) {
+            for (int k = 0; k < dimensions; k++)
+                coordinates[k] = points[k][i];
+            tree.insert(new Tree.NVector(tree, coordinates), i);
+        }
+        return tree;
+    }
+}
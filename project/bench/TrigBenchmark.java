@@ -0,0 +1,106 @@
+package project.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import project.data.FMath;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the sine and cosine variants in {@link FMath} against <code>Math.sin</code> and
+ * <code>Math.cos</code>, per angle, over angles in [-1000, 1000]. Their accuracy is checked by <tt>FMathTest</tt>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrigBenchmark {
+
+    private static final int ANGLES = 1 << 16;
+
+    @State(Scope.Thread)
+    public static class Precision {
+        @Param({ "TABLE", "LERP", "POLY" })
+        public FMath.Precision precision;
+    }
+
+    private final float[] angles = new float[ANGLES];
+    private final float[] out = new float[ANGLES];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < ANGLES; i++)
+            angles[i] = (float) (random.nextDouble() * 2000 - 1000);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANGLES)
+    public float[] fsinArray(Precision precision) {
+        FMath.fsin(angles, out, precision.precision);
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANGLES)
+    public float[] fcosArray(Precision precision) {
+        FMath.fcos(angles, out, precision.precision);
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANGLES)
+    public void fsin(Blackhole blackhole) {
+        for (float angle : angles)
+            blackhole.consume(FMath.fsin(angle));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANGLES)
+    public void fcos(Blackhole blackhole) {
+        for (float angle : angles)
+            blackhole.consume(FMath.fcos(angle));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANGLES)
+    public void dsin(Blackhole blackhole) {
+        for (float angle : angles)
+            blackhole.consume(FMath.dsin(angle));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANGLES)
+    public void dsinPoly(Blackhole blackhole) {
+        for (float angle : angles)
+            blackhole.consume(FMath.dsin_poly(angle));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANGLES)
+    public void mathSin(Blackhole blackhole) {
+        for (float angle : angles)
+            blackhole.consume(Math.sin(angle));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANGLES)
+    public void mathCos(Blackhole blackhole) {
+        for (float angle : angles)
+            blackhole.consume(Math.cos(angle));
+    }
+}
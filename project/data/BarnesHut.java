@@ -0,0 +1,192 @@
+package project.data;
+
+import org.joml.Vector3d;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** <tt>
+ * Barnes–Hut approximation of the gravitational acceleration on a set of bodies, <br>
+ * using the mass aggregates of an {@link OcTree} that tracks mass.               <br>
+ * A branch far enough away acts as a single body at its center of mass: when     <br>
+ * its cell size <tt>s</tt> and the distance <tt>d</tt> to its center of mass     <br>
+ * satisfy <tt>s / d < θ</tt>. Everything closer is opened up, down to the points <br>
+ * in the leaves. θ = 0 gives the exact all pairs sum, larger θ trade accuracy    <br>
+ * for speed, 0.5 being the usual pick.                                           <br>
+ * The tree is only read, so it can be shared by any amount of evaluations, as    <br>
+ * long as nobody changes it meanwhile.
+ * </tt>
+ */
+public class BarnesHut {
+
+    // Bodies per fork/join task.
+    private static final int CHUNK = 1 << 10;
+
+    private final OcTree tree;
+    private double theta = 0.5d;
+    private double softening = 0.0d;
+    private double gravity = 1.0d;
+
+    /**
+     * Constructor for an evaluator over the given tree, which has to track mass.
+     */
+    public BarnesHut(OcTree tree) {
+        if (!tree.tracksMass())
+            throw new IllegalArgumentException("Tree doesn't track mass, call trackMass() on it first");
+        this.tree = tree;
+    }
+
+    /**
+     * Sets the opening angle θ, 0.5 by default.
+     */
+    public BarnesHut setTheta(double theta) {
+        if (theta < 0)
+            throw new IllegalArgumentException("Theta can't be negative, got " + theta);
+        this.theta = theta;
+        return this;
+    }
+
+    /**
+     * Sets the softening length ε, which keeps close encounters finite: <br>
+     * a = G·m·r / (|r|² + ε²)^(3/2). 0 by default.
+     */
+    public BarnesHut setSoftening(double softening) {
+        this.softening = softening;
+        return this;
+    }
+
+    /**
+     * Sets the gravitational constant G, 1 by default.
+     */
+    public BarnesHut setGravity(double gravity) {
+        this.gravity = gravity;
+        return this;
+    }
+
+    public double getTheta() { return this.theta; }
+
+    public double getSoftening() { return this.softening; }
+
+    public double getGravity() { return this.gravity; }
+
+    /**
+     * Computes the acceleration at every point [xs[i], ys[i], zs[i]] into [ax[i], ay[i], az[i]], <br>
+     * spread over the fork/join pool. Points at exactly the same position as a body, such    <br>
+     * as the bodies themselves, don't feel that body.
+     */
+    public void accelerations(double[] xs, double[] ys, double[] zs, double[] ax, double[] ay, double[] az) {
+        int n = xs.length;
+        if (ys.length != n || zs.length != n || ax.length < n || ay.length < n || az.length < n)
+            throw new IllegalArgumentException("Array lengths differ");
+        ForkJoinPool.commonPool().invoke(new Evaluate(xs, ys, zs, ax, ay, az, 0, n));
+    }
+
+    /**
+     * Computes the acceleration at [x, y, z] into <tt>out</tt>, returning it.
+     */
+    public Vector3d acceleration(double x, double y, double z, Vector3d out) {
+        double[] result = new double[3];
+        new Walker().accelerate(x, y, z, result);
+        out.x = result[0];
+        out.y = result[1];
+        out.z = result[2];
+        return out;
+    }
+
+    /**
+     * Walks the tree for one point at a time, with its own stack so walkers can run side by side.
+     */
+    private class Walker {
+        private final OcTree.Branch[] stack = new OcTree.Branch[7 * tree.getDepth() + 8];
+        private final double theta2 = theta * theta;
+        private final double epsilon2 = softening * softening;
+        private final double[] sizes = new double[tree.getDepth() + 1];
+
+        private Walker() {
+            for (int i = 0; i < sizes.length; i++)
+                sizes[i] = Math.scalb(tree.getScale(), -i);
+        }
+
+        private void accelerate(double x, double y, double z, double[] result) {
+            double ax = 0, ay = 0, az = 0;
+            int n = 0;
+            stack[n++] = tree.getRoot();
+
+            while (n > 0) {
+                OcTree.Branch branch = stack[--n];
+                if (branch.mass == 0)
+                    continue;
+
+                double dx = branch.getCenterX() - x, dy = branch.getCenterY() - y, dz = branch.getCenterZ() - z;
+                double d2 = dx * dx + dy * dy + dz * dz;
+                double size = sizes[branch.depth];
+
+                // Far enough away to be a single body. Also being further than the cell's diagonal
+                // means the point itself can't be in the cell, whatever θ is.
+                if (size * size < theta2 * d2 && 3 * size * size < d2) {
+                    double r2 = d2 + epsilon2;
+                    double f = gravity * branch.mass / (r2 * Math.sqrt(r2));
+                    ax += f * dx;
+                    ay += f * dy;
+                    az += f * dz;
+                    continue;
+                }
+
+                for (int i = 0; i < branch.size; i++) {
+                    double px = branch.xs[i] - x, py = branch.ys[i] - y, pz = branch.zs[i] - z;
+                    double p2 = px * px + py * py + pz * pz;
+                    if (p2 == 0)
+                        continue;
+                    double r2 = p2 + epsilon2;
+                    double f = gravity * branch.getMass(i) / (r2 * Math.sqrt(r2));
+                    ax += f * px;
+                    ay += f * py;
+                    az += f * pz;
+                }
+
+                for (int j = 0; j < 8 && branch.branches != null; j++) {
+                    if (branch.branches[j] != null)
+                        stack[n++] = branch.branches[j];
+                }
+            }
+
+            result[0] = ax;
+            result[1] = ay;
+            result[2] = az;
+        }
+    }
+
+    private class Evaluate extends RecursiveAction {
+        private final double[] xs, ys, zs, ax, ay, az;
+        private final int from, to;
+
+        private Evaluate(double[] xs, double[] ys, double[] zs, double[] ax, double[] ay, double[] az, int from, int to) {
+            this.xs = xs;
+            this.ys = ys;
+            this.zs = zs;
+            this.ax = ax;
+            this.ay = ay;
+            this.az = az;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Evaluate(xs, ys, zs, ax, ay, az, from, mid), new Evaluate(xs, ys, zs, ax, ay, az, mid, to));
+                return;
+            }
+
+            Walker walker = new Walker();
+            double[] result = new double[3];
+            for (int i = from; i < to; i++) {
+                walker.accelerate(xs[i], ys[i], zs[i], result);
+                ax[i] = result[0];
+                ay[i] = result[1];
+                az[i] = result[2];
+            }
+        }
+    }
+}
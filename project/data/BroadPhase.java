@@ -0,0 +1,425 @@
+package project.data;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** <tt>
+ * Broad phase collision detection, finding the pairs of overlapping axis aligned boxes. <br>
+ * Boxes are kept in an octree, every box in the deepest cell that still holds it   <br>
+ * entirely, with the same child indexing as the {@link OcTree}. A box then         <br>
+ * can only overlap boxes in its own cell, the cells above it and the cells below   <br>
+ * it, so a depth first walk finds every pair exactly once: the boxes of a cell     <br>
+ * are swept against each other and against the boxes of the cells above it that   <br>
+ * reach into the cell. Every sweep runs over lists sorted on the minimum x         <br>
+ * (sweep and prune), which stay nearly sorted between ticks when bodies move a bit, <br>
+ * so no part of it ever falls back to testing all pairs.                            <br>
+ * Boxes sticking out of [0, scale] are kept in the root.
+ * </tt>
+ */
+public class BroadPhase {
+
+    private static final int OCTREE_SIZE = 8;
+    private static final int MAX_DEPTH = 10;
+
+    // The parallel search forks a task for every subtree this deep.
+    private static final int PARALLEL_DEPTH = 2;
+
+    private final Node root = new Node(null);
+    private final double scale;
+    private final int depth;
+
+    // Box bounds by id, in the scale of the world.
+    private double[] minX = new double[16], minY = new double[16], minZ = new double[16];
+    private double[] maxX = new double[16], maxY = new double[16], maxZ = new double[16];
+    private Node[] nodes = new Node[16];
+    private int[] slots = new int[16];
+
+    // Ids of removed boxes, reused by add.
+    private int[] freeIds = new int[16];
+    private int freeIdCount = 0;
+    private int idCount = 0;
+    private int size = 0;
+
+    /**
+     * Callback for the overlapping pairs, called with <tt>a < b</tt>.
+     */
+    public interface PairConsumer {
+        void accept(int a, int b);
+    }
+
+    /**
+     * Constructor for a broad phase over the world [0, scale]³, with cells down to <tt>scale / 2^depth</tt>. <br>
+     * The depth is clamped to [1, 10]; pick it so the smallest cells are about as big as a typical box.
+     */
+    public BroadPhase(int depth, double scale) {
+        this.depth = Math.max(Math.min(MAX_DEPTH, depth), 1);
+        this.scale = scale;
+    }
+
+    /**
+     * Adds the box [min, max] and returns its id.
+     */
+    public int add(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        int id;
+        if (freeIdCount > 0) {
+            id = freeIds[--freeIdCount];
+        } else {
+            id = idCount++;
+            if (id == this.minX.length)
+                grow(id << 1);
+        }
+        setBounds(id, minX, minY, minZ, maxX, maxY, maxZ);
+        insert(id, locate(id));
+        size++;
+        return id;
+    }
+
+    /**
+     * Moves box <tt>id</tt> to [min, max]. Only touches the tree when it lands in another cell.
+     */
+    public void update(int id, double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        checkId(id);
+        setBounds(id, minX, minY, minZ, maxX, maxY, maxZ);
+
+        Node target = locate(id);
+        if (target != nodes[id]) {
+            Node old = nodes[id];
+            detach(id);
+            insert(id, target);
+            prune(old);
+        }
+    }
+
+    /**
+     * Removes box <tt>id</tt>, its id will be handed out again by <code>add</code>.
+     */
+    public void remove(int id) {
+        checkId(id);
+        Node old = nodes[id];
+        detach(id);
+        prune(old);
+        nodes[id] = null;
+
+        if (freeIdCount == freeIds.length)
+            freeIds = Arrays.copyOf(freeIds, freeIdCount << 1);
+        freeIds[freeIdCount++] = id;
+        size--;
+    }
+
+    /**
+     * Visits every pair of overlapping boxes once, on the calling thread.
+     */
+    public void findPairs(PairConsumer consumer) {
+        new Search(consumer).run(root, 0, 0, 0, scale, 0, new int[0], 0);
+    }
+
+    /**
+     * Visits every pair of overlapping boxes once, with the subtrees searched in parallel <br>
+     * on the fork/join pool. The consumer is called from several threads at the same time.
+     */
+    public void findPairsParallel(PairConsumer consumer) {
+        ForkJoinPool.commonPool().invoke(new SearchTask(consumer, root, 0, 0, 0, scale, 0, new int[0], 0));
+    }
+
+    /**
+     * Returns whether boxes <tt>a</tt> and <tt>b</tt> overlap, touching included.
+     */
+    public boolean overlaps(int a, int b) {
+        return minX[a] <= maxX[b] && minX[b] <= maxX[a]
+                && minY[a] <= maxY[b] && minY[b] <= maxY[a]
+                && minZ[a] <= maxZ[b] && minZ[b] <= maxZ[a];
+    }
+
+    /**
+     * Returns the amount of boxes.
+     */
+    public int size() { return this.size; }
+
+    public int getDepth() { return this.depth; }
+
+    public double getScale() { return this.scale; }
+
+    private void setBounds(int id, double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        this.minX[id] = minX;
+        this.minY[id] = minY;
+        this.minZ[id] = minZ;
+        this.maxX[id] = maxX;
+        this.maxY[id] = maxY;
+        this.maxZ[id] = maxZ;
+    }
+
+    /**
+     * Finds, growing it if needed, the deepest cell holding the whole box.
+     */
+    private Node locate(int id) {
+        double x0 = minX[id] / scale, y0 = minY[id] / scale, z0 = minZ[id] / scale;
+        double x1 = maxX[id] / scale, y1 = maxY[id] / scale, z1 = maxZ[id] / scale;
+        if (x0 < 0 || y0 < 0 || z0 < 0 || x1 > 1 || y1 > 1 || z1 > 1)
+            return root;
+
+        Node node = root;
+        for (int level = 0; level < depth; level++) {
+            // Both corners have to end up in the same child.
+            int j = FMath.round(x0) + 4 * FMath.round(y0) + 2 * FMath.round(z0);
+            if (j != FMath.round(x1) + 4 * FMath.round(y1) + 2 * FMath.round(z1))
+                break;
+
+            if (node.children == null)
+                node.children = new Node[OCTREE_SIZE];
+            if (node.children[j] == null)
+                node.children[j] = new Node(node);
+            node = node.children[j];
+
+            int rx = j & 1, ry = j >> 2 & 1, rz = j >> 1 & 1;
+            x0 = 2 * x0 - rx;
+            y0 = 2 * y0 - ry;
+            z0 = 2 * z0 - rz;
+            x1 = 2 * x1 - rx;
+            y1 = 2 * y1 - ry;
+            z1 = 2 * z1 - rz;
+        }
+        return node;
+    }
+
+    private void insert(int id, Node node) {
+        if (node.count == node.items.length)
+            node.items = Arrays.copyOf(node.items, Math.max(4, node.count << 1));
+        node.items[node.count] = id;
+        nodes[id] = node;
+        slots[id] = node.count++;
+    }
+
+    // Swap remove, the search re-sorts the items anyway.
+    private void detach(int id) {
+        Node node = nodes[id];
+        int slot = slots[id], last = node.items[--node.count];
+        node.items[slot] = last;
+        slots[last] = slot;
+    }
+
+    /**
+     * Drops empty nodes without children, walking up.
+     */
+    private void prune(Node node) {
+        while (node.parent != null && node.count == 0 && node.children == null) {
+            Node parent = node.parent;
+            boolean empty = true;
+            for (int j = 0; j < OCTREE_SIZE; j++) {
+                if (parent.children[j] == node)
+                    parent.children[j] = null;
+                else if (parent.children[j] != null)
+                    empty = false;
+            }
+            if (empty)
+                parent.children = null;
+            node = parent;
+        }
+    }
+
+    private void grow(int capacity) {
+        minX = Arrays.copyOf(minX, capacity);
+        minY = Arrays.copyOf(minY, capacity);
+        minZ = Arrays.copyOf(minZ, capacity);
+        maxX = Arrays.copyOf(maxX, capacity);
+        maxY = Arrays.copyOf(maxY, capacity);
+        maxZ = Arrays.copyOf(maxZ, capacity);
+        nodes = Arrays.copyOf(nodes, capacity);
+        slots = Arrays.copyOf(slots, capacity);
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= idCount || nodes[id] == null)
+            throw new IllegalArgumentException("No box with id " + id);
+    }
+
+    /**
+     * Depth first pair search, with a scratch list per level for the boxes carried down from above.
+     */
+    private class Search {
+        private final PairConsumer consumer;
+        private final int[][] carried = new int[MAX_DEPTH + 2][];
+        private final int[][] merged = new int[MAX_DEPTH + 2][];
+
+        private Search(PairConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        /**
+         * Searches the subtree of <tt>node</tt>, whose cell is [o, o + size], where <tt>above</tt> <br>
+         * holds the first <tt>aboveCount</tt> boxes from higher cells that reach into it, sorted on min x.
+         */
+        private void run(Node node, double ox, double oy, double oz, double size, int level, int[] above, int aboveCount) {
+            sortItems(node);
+            sweep(node.items, node.count);
+            sweep(node.items, node.count, above, aboveCount);
+
+            if (node.children == null)
+                return;
+
+            int[] down = scratch(merged, level, aboveCount + node.count);
+            int downCount = mergeDown(node, above, aboveCount, down);
+            double half = size / 2;
+            for (int j = 0; j < OCTREE_SIZE; j++) {
+                if (node.children[j] == null)
+                    continue;
+                double cx = ox + (j & 1) * half, cy = oy + (j >> 2 & 1) * half, cz = oz + (j >> 1 & 1) * half;
+                int[] into = scratch(carried, level + 1, downCount);
+                int n = filter(down, downCount, cx, cy, cz, half, into);
+                run(node.children[j], cx, cy, cz, half, level + 1, into, n);
+            }
+        }
+
+        /**
+         * Merges this node's boxes into the ones from above, keeping them sorted, returning how many there are.
+         */
+        private int mergeDown(Node node, int[] above, int aboveCount, int[] down) {
+            int i = 0, j = 0, k = 0;
+            while (i < aboveCount && j < node.count)
+                down[k++] = minX[above[i]] <= minX[node.items[j]] ? above[i++] : node.items[j++];
+            while (i < aboveCount)
+                down[k++] = above[i++];
+            while (j < node.count)
+                down[k++] = node.items[j++];
+            return k;
+        }
+
+        /**
+         * Copies the boxes reaching into the cell [c, c + size] to <tt>into</tt>, returning how many.
+         */
+        private int filter(int[] boxes, int count, double cx, double cy, double cz, double size, int[] into) {
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                int id = boxes[i];
+                if (minX[id] <= cx + size && maxX[id] >= cx && minY[id] <= cy + size && maxY[id] >= cy
+                        && minZ[id] <= cz + size && maxZ[id] >= cz)
+                    into[n++] = id;
+            }
+            return n;
+        }
+
+        private int[] scratch(int[][] lists, int level, int capacity) {
+            if (lists[level] == null || lists[level].length < capacity)
+                lists[level] = new int[Math.max(capacity, 16)];
+            return lists[level];
+        }
+
+        // All pairs within one sorted list.
+        private void sweep(int[] a, int n) {
+            for (int i = 0; i < n; i++) {
+                int b = a[i];
+                for (int k = i + 1; k < n && minX[a[k]] <= maxX[b]; k++)
+                    report(b, a[k]);
+            }
+        }
+
+        // All pairs between two sorted lists, every pair found from the box with the smaller min x.
+        private void sweep(int[] a, int na, int[] c, int nc) {
+            int i = 0, j = 0;
+            while (i < na && j < nc) {
+                if (minX[a[i]] <= minX[c[j]]) {
+                    int b = a[i++];
+                    for (int k = j; k < nc && minX[c[k]] <= maxX[b]; k++)
+                        report(b, c[k]);
+                } else {
+                    int b = c[j++];
+                    for (int k = i; k < na && minX[a[k]] <= maxX[b]; k++)
+                        report(a[k], b);
+                }
+            }
+        }
+
+        // x overlap is known from the sweep
+        private void report(int a, int b) {
+            if (minY[a] <= maxY[b] && minY[b] <= maxY[a] && minZ[a] <= maxZ[b] && minZ[b] <= maxZ[a]) {
+                if (a < b)
+                    consumer.accept(a, b);
+                else
+                    consumer.accept(b, a);
+            }
+        }
+    }
+
+    /**
+     * Insertion sort on min x, which is close to linear for boxes that barely moved since the last search.
+     */
+    private void sortItems(Node node) {
+        int[] items = node.items;
+        for (int i = 1; i < node.count; i++) {
+            int id = items[i];
+            double key = minX[id];
+            int j = i - 1;
+            while (j >= 0 && minX[items[j]] > key) {
+                items[j + 1] = items[j];
+                slots[items[j]] = j + 1;
+                j--;
+            }
+            items[j + 1] = id;
+            slots[id] = j + 1;
+        }
+    }
+
+    /**
+     * Parallel search: the top levels fork a task per child, below that every task searches sequentially.
+     */
+    private class SearchTask extends RecursiveAction {
+        private final PairConsumer consumer;
+        private final Node node;
+        private final double ox, oy, oz, size;
+        private final int level;
+        private final int[] above;
+        private final int aboveCount;
+
+        private SearchTask(PairConsumer consumer, Node node, double ox, double oy, double oz, double size,
+                           int level, int[] above, int aboveCount) {
+            this.consumer = consumer;
+            this.node = node;
+            this.ox = ox;
+            this.oy = oy;
+            this.oz = oz;
+            this.size = size;
+            this.level = level;
+            this.above = above;
+            this.aboveCount = aboveCount;
+        }
+
+        @Override
+        protected void compute() {
+            Search search = new Search(consumer);
+            if (level >= PARALLEL_DEPTH || node.children == null) {
+                search.run(node, ox, oy, oz, size, level, above, aboveCount);
+                return;
+            }
+
+            sortItems(node);
+            search.sweep(node.items, node.count);
+            search.sweep(node.items, node.count, above, aboveCount);
+
+            int[] down = new int[aboveCount + node.count];
+            int downCount = search.mergeDown(node, above, aboveCount, down);
+            double half = size / 2;
+            SearchTask[] tasks = new SearchTask[OCTREE_SIZE];
+            int n = 0;
+            for (int j = 0; j < OCTREE_SIZE; j++) {
+                if (node.children[j] == null)
+                    continue;
+                double cx = ox + (j & 1) * half, cy = oy + (j >> 2 & 1) * half, cz = oz + (j >> 1 & 1) * half;
+                int[] carried = new int[downCount];
+                int count = search.filter(down, downCount, cx, cy, cz, half, carried);
+                tasks[n++] = new SearchTask(consumer, node.children[j], cx, cy, cz, half, level + 1, carried, count);
+            }
+            invokeAll(Arrays.asList(tasks).subList(0, n));
+        }
+    }
+
+    private static class Node {
+        private final Node parent;
+        private int[] items = new int[0];
+        private int count = 0;
+        private Node[] children = null;
+
+        private Node(Node parent) {
+            this.parent = parent;
+        }
+    }
+}
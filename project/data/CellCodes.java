@@ -0,0 +1,70 @@
+package project.data;
+
+/** <tt>
+ * Batch computation of {@link OcTree} cell codes for arrays of points.           <br>
+ * Gives the exact same codes as <code>OcTree.getCellCode</code>, -1 for points    <br>
+ * out of bounds. When built with the <tt>vector</tt> profile and run with        <br>
+ * <tt>--add-modules jdk.incubator.vector</tt>, several points are handled per    <br>
+ * instruction; otherwise this falls back to a scalar loop.
+ * </tt>
+ */
+public final class CellCodes {
+
+    /**
+     * The vectorised loop, implemented by <tt>VectorCellCodes</tt> in the <tt>vector</tt> source root.
+     */
+    interface Kernel {
+        void compute(double[] xs, double[] ys, double[] zs, int n, double scale, int depth, long[] codes);
+    }
+
+    private static final Kernel VECTOR = loadVector();
+
+    private CellCodes() {}
+
+    /**
+     * Returns whether the vectorised path is used.
+     */
+    public static boolean isVectorized() {
+        return VECTOR != null;
+    }
+
+    /**
+     * Computes the cell codes of the first <tt>n</tt> points into <tt>codes</tt>.
+     */
+    public static void compute(double[] xs, double[] ys, double[] zs, int n, double scale, int depth, long[] codes) {
+        checkLengths(xs, ys, zs, n, codes);
+        if (VECTOR != null)
+            VECTOR.compute(xs, ys, zs, n, scale, depth, codes);
+        else
+            computeScalar(xs, ys, zs, 0, n, scale, depth, codes);
+    }
+
+    /**
+     * Computes the cell codes of the first <tt>n</tt> points into <tt>codes</tt>, always one point at a time.
+     */
+    public static void computeScalar(double[] xs, double[] ys, double[] zs, int n, double scale, int depth, long[] codes) {
+        checkLengths(xs, ys, zs, n, codes);
+        computeScalar(xs, ys, zs, 0, n, scale, depth, codes);
+    }
+
+    static void computeScalar(double[] xs, double[] ys, double[] zs, int from, int to, double scale, int depth, long[] codes) {
+        for (int i = from; i < to; i++)
+            codes[i] = OcTree.getCellCode(xs[i], ys[i], zs[i], scale, depth);
+    }
+
+    // Null when the module isn't there or the class wasn't compiled in.
+    private static Kernel loadVector() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+            return null;
+        try {
+            return (Kernel) Class.forName("project.data.VectorCellCodes").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static void checkLengths(double[] xs, double[] ys, double[] zs, int n, long[] codes) {
+        if (xs.length < n || ys.length < n || zs.length < n || codes.length < n)
+            throw new IllegalArgumentException("Arrays hold less than " + n + " points");
+    }
+}
@@ -0,0 +1,59 @@
+package project.data;
+
+import java.util.Arrays;
+
+/**
+ * Stable radix sort of cell codes, used to group points by cell for bulk inserts.
+ * The original positions are carried along, so points sharing a cell keep their input order.
+ */
+final class CellSort {
+
+    private static final int RADIX_BITS = 11;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    private CellSort() {}
+
+    /**
+     * Sorts the first <tt>n</tt> codes, which are non-negative and fit in <tt>bits</tt> bits, <br>
+     * in place and reorders <tt>indices</tt> along with them.
+     */
+    static void sort(long[] codes, int[] indices, int n, int bits) {
+        long[] codeBuffer = new long[n];
+        int[] indexBuffer = new int[n];
+        int[] counts = new int[RADIX];
+
+        long[] fromCodes = codes, toCodes = codeBuffer;
+        int[] fromIndices = indices, toIndices = indexBuffer;
+
+        for (int shift = 0; shift < bits; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++)
+                counts[(int) (fromCodes[i] >>> shift) & (RADIX - 1)]++;
+
+            for (int i = 0, sum = 0, c; i < RADIX; i++) {
+                c = counts[i];
+                counts[i] = sum;
+                sum += c;
+            }
+
+            for (int i = 0, slot; i < n; i++) {
+                slot = counts[(int) (fromCodes[i] >>> shift) & (RADIX - 1)]++;
+                toCodes[slot] = fromCodes[i];
+                toIndices[slot] = fromIndices[i];
+            }
+
+            long[] codeSwap = fromCodes;
+            fromCodes = toCodes;
+            toCodes = codeSwap;
+            int[] indexSwap = fromIndices;
+            fromIndices = toIndices;
+            toIndices = indexSwap;
+        }
+
+        // An odd amount of passes leaves the result in the buffers.
+        if (fromCodes != codes) {
+            System.arraycopy(fromCodes, 0, codes, 0, n);
+            System.arraycopy(fromIndices, 0, indices, 0, n);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package project.data;
+
+/** <tt>
+ * Fixed size array of complex numbers, stored interleaved as               <br>
+ * <tt>[re0, im0, re1, im1, ...]</tt> in a single <code>double[]</code>.   <br>
+ * Meant for tight signal processing loops where a <code>FMath.Complex</code> <br>
+ * per value would be millions of objects per second; nothing in here allocates. <br>
+ * The element-wise operations (add, subtract, scale) run over the raw array, <br>
+ * so the JIT can vectorise them; the others work pair by pair.
+ * </tt>
+ */
+public class ComplexArray {
+
+    public final double[] data;
+    private final int length;
+
+    /**
+     * Constructor for an array of <tt>length</tt> zeroes.
+     */
+    public ComplexArray(int length) {
+        this.data = new double[length << 1];
+        this.length = length;
+    }
+
+    /**
+     * Constructor wrapping an existing interleaved array, without copying it.
+     */
+    public ComplexArray(double[] data) {
+        if ((data.length & 1) != 0)
+            throw new IllegalArgumentException("Interleaved data needs an even length, got " + data.length);
+        this.data = data;
+        this.length = data.length >> 1;
+    }
+
+    /**
+     * Returns the amount of complex numbers in this array.
+     */
+    public int length() { return this.length; }
+
+    public double re(int i) { return data[i << 1]; }
+
+    public double im(int i) { return data[(i << 1) + 1]; }
+
+    public void set(int i, double real, double complex) {
+        data[i << 1] = real;
+        data[(i << 1) + 1] = complex;
+    }
+
+    public void set(int i, FMath.Complex value) {
+        set(i, value.real, value.complex);
+    }
+
+    /**
+     * Copies element i into dst, returning dst.
+     */
+    public FMath.Complex get(int i, FMath.Complex dst) {
+        return dst.set(data[i << 1], data[(i << 1) + 1]);
+    }
+
+    /**
+     * this += other
+     */
+    public ComplexArray add(ComplexArray other) {
+        return add(other, this);
+    }
+
+    /**
+     * dst = this + other, returning dst. dst may be this or other.
+     */
+    public ComplexArray add(ComplexArray other, ComplexArray dst) {
+        checkLength(other, dst);
+        double[] a = this.data, b = other.data, c = dst.data;
+        for (int i = 0; i < a.length; i++)
+            c[i] = a[i] + b[i];
+        return dst;
+    }
+
+    /**
+     * this -= other
+     */
+    public ComplexArray subtract(ComplexArray other) {
+        return subtract(other, this);
+    }
+
+    /**
+     * dst = this - other, returning dst. dst may be this or other.
+     */
+    public ComplexArray subtract(ComplexArray other, ComplexArray dst) {
+        checkLength(other, dst);
+        double[] a = this.data, b = other.data, c = dst.data;
+        for (int i = 0; i < a.length; i++)
+            c[i] = a[i] - b[i];
+        return dst;
+    }
+
+    /**
+     * this *= other, element-wise.
+     */
+    public ComplexArray multiply(ComplexArray other) {
+        return multiply(other, this);
+    }
+
+    /**
+     * dst = this * other element-wise, returning dst. dst may be this or other.
+     */
+    public ComplexArray multiply(ComplexArray other, ComplexArray dst) {
+        checkLength(other, dst);
+        double[] a = this.data, b = other.data, c = dst.data;
+        for (int i = 0; i < a.length; i += 2) {
+            double re = a[i] * b[i] - a[i + 1] * b[i + 1];
+            double im = a[i] * b[i + 1] + a[i + 1] * b[i];
+            c[i] = re;
+            c[i + 1] = im;
+        }
+        return dst;
+    }
+
+    /**
+     * this *= x
+     */
+    public ComplexArray scale(double x) {
+        for (int i = 0; i < data.length; i++)
+            data[i] *= x;
+        return this;
+    }
+
+    /**
+     * Replaces every element by its complex conjugate.
+     */
+    public ComplexArray conjugate() {
+        for (int i = 1; i < data.length; i += 2)
+            data[i] = -data[i];
+        return this;
+    }
+
+    /**
+     * Writes |z| of every element into out, returning out.
+     */
+    public double[] magnitude(double[] out) {
+        if (out.length < length)
+            throw new IllegalArgumentException("Output holds " + out.length + " values, " + length + " needed");
+        for (int i = 0; i < length; i++) {
+            double re = data[i << 1], im = data[(i << 1) + 1];
+            out[i] = Math.sqrt(re * re + im * im);
+        }
+        return out;
+    }
+
+    /**
+     * Copies all elements of other into this array.
+     */
+    public ComplexArray copyFrom(ComplexArray other) {
+        checkLength(other, this);
+        System.arraycopy(other.data, 0, data, 0, data.length);
+        return this;
+    }
+
+    private void checkLength(ComplexArray other, ComplexArray dst) {
+        if (other.length != length || dst.length != length)
+            throw new IllegalArgumentException("Array lengths differ (" + length + ", " + other.length + ", " + dst.length + ")");
+    }
+}
@@ -0,0 +1,260 @@
+package project.data;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** <tt>
+ * Thread safe version of the {@link OcTree}.                                   <br>
+ * Any amount of threads may insert and read at the same time.                  <br>
+ * Branches are grown without locks: child arrays and children are installed    <br>
+ * with a compare-and-set, and the thread that loses the race simply uses the   <br>
+ * branch the winner installed. Points are appended to a leaf under that leaf's <br>
+ * own lock, so only threads inserting into the very same cell wait on each     <br>
+ * other. Readers never lock; they see every point whose insert finished before <br>
+ * they started reading a leaf, and possibly some that finished later.
+ * </tt>
+ */
+public class ConcurrentOcTree {
+
+    private static final int OCTREE_SIZE = 8;
+    private static final int MAX_DEPTH = 5;
+
+    private static final VarHandle BRANCHES;
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Branch[].class);
+
+    static {
+        try {
+            BRANCHES = MethodHandles.lookup().findVarHandle(Branch.class, "branches", Branch[].class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Branch root = new Branch(null, 0);
+    private double scale = 1.0d;
+    private int depth = 1;
+
+    /**
+     * Constructor for a default ConcurrentOcTree, with a coordinate scale of 1.0 and a depth of 1.
+     */
+    public ConcurrentOcTree() {}
+
+    /**
+     * Constructor for a ConcurrentOcTree with a specified depth, clamped like <code>OcTree</code>'s.
+     */
+    public ConcurrentOcTree(int depth) {
+        this.depth = Math.max(Math.min(MAX_DEPTH, depth), 1);
+    }
+
+    /**
+     * Constructor for a ConcurrentOcTree with a specified depth and scale.
+     */
+    public ConcurrentOcTree(int depth, double scale) {
+        this(depth);
+        this.scale = scale;
+    }
+
+    /**
+     * Method for inserting 3 dimensional coordinates into the tree, from any thread. <br>
+     * The method returns the leaf node associated with the given coordinates.        <br>
+     * @Note: 0 ≤ [x, y, z] ≤ scale, otherwise nothing will be added and no branch will be returned.
+     */
+    public Branch insert(double x, double y, double z) {
+        Branch leaf = getLeaf(x, y, z);
+        if (leaf == null)
+            return null;
+
+        leaf.add(x, y, z);
+
+        return leaf;
+    }
+
+    /**
+     * Method for retrieving the leaf node of the given coordinates, growing branches if they don't exist.
+     * @Notice: Method returns null with coordinates out of bounds.
+     */
+    public Branch getLeaf(double x, double y, double z) {
+        return descend(x, y, z, true);
+    }
+
+    /**
+     * Method for looking up the leaf node of the given coordinates, without growing the tree. <br>
+     * Returns null when the coordinates are out of bounds or when no branch exists there yet.
+     */
+    public Branch findLeaf(double x, double y, double z) {
+        return descend(x, y, z, false);
+    }
+
+    private Branch descend(double x, double y, double z, boolean grow) {
+        x /= scale;
+        y /= scale;
+        z /= scale;
+        if (x < 0 || x > 1 || y < 0 || y > 1 || z < 0 || z > 1)
+            return null;
+
+        Branch leaf = this.root;
+
+        for (int i = 0, j; i < depth; i++) {
+            // Indexing, as in OcTree: i = |x| + 4|y| + 2|z|.
+            j = FMath.round(x) + FMath.round(y) * 4 + FMath.round(z) * 2;
+
+            Branch next = leaf.getBranch(j);
+            if (next == null) {
+                if (!grow)
+                    return null;
+                next = leaf.install(j, new Branch(leaf, i + 1));
+            }
+            leaf = next;
+
+            x = (2 * x - FMath.round(x));
+            y = (2 * y - FMath.round(y));
+            z = (2 * z - FMath.round(z));
+        }
+        return leaf;
+    }
+
+    /**
+     * Method for retrieving all the leaves in the tree, as they are at the time of the call.
+     */
+    public List<Branch> getLeaves() {
+        List<Branch> leaves = new ArrayList<>();
+        collectLeaves(this.root, leaves);
+        return leaves;
+    }
+
+    private void collectLeaves(Branch branch, List<Branch> leaves) {
+        if (branch.isLeaf())
+            leaves.add(branch);
+
+        Branch[] branches = branch.getBranches();
+        for (int i = 0; branches != null && i < OCTREE_SIZE; i++) {
+            Branch next = (Branch) SLOT.getAcquire(branches, i);
+            if (next != null)
+                collectLeaves(next, leaves);
+        }
+    }
+
+    /**
+     * Visits every point in the tree, leaf by leaf, without locking.
+     */
+    public void forEachPoint(PointConsumer consumer) {
+        forEachPoint(this.root, consumer);
+    }
+
+    private void forEachPoint(Branch branch, PointConsumer consumer) {
+        branch.forEachPoint(consumer);
+
+        Branch[] branches = branch.getBranches();
+        for (int i = 0; branches != null && i < OCTREE_SIZE; i++) {
+            Branch next = (Branch) SLOT.getAcquire(branches, i);
+            if (next != null)
+                forEachPoint(next, consumer);
+        }
+    }
+
+    /**
+     * Method which returns the depth of this tree.
+     */
+    public int getDepth() { return this.depth; }
+
+    public double getScale() { return this.scale; }
+
+    /**
+     * Branch class
+     */
+    public static class Branch {
+        private static final int INITIAL_CAPACITY = 4;
+
+        public final Branch parent;
+        public final int depth;
+
+        @SuppressWarnings("unused") // Accessed through the BRANCHES var handle.
+        private volatile Branch[] branches;
+
+        // Interleaved x, y, z coordinates; the first 'size' points are complete.
+        private volatile double[] points;
+        private volatile int size;
+
+        protected Branch(Branch parent, int depth) {
+            this.parent = parent;
+            this.depth = depth;
+        }
+
+        private Branch[] getBranches() {
+            return this.branches;
+        }
+
+        /**
+         * Returns the child branch with index <tt>j</tt>, or null if it doesn't exist (yet).
+         */
+        public Branch getBranch(int j) {
+            Branch[] branches = this.branches;
+            return branches == null ? null : (Branch) SLOT.getAcquire(branches, j);
+        }
+
+        /**
+         * Installs the given child at index <tt>j</tt>, unless another thread beat us to it. <br>
+         * Returns the child that ended up in the slot.
+         */
+        private Branch install(int j, Branch child) {
+            Branch[] branches = this.branches;
+            if (branches == null) {
+                Branch[] created = new Branch[OCTREE_SIZE];
+                Branch[] witness = (Branch[]) BRANCHES.compareAndExchange(this, null, created);
+                branches = witness == null ? created : witness;
+            }
+            Branch witness = (Branch) SLOT.compareAndExchange(branches, j, null, child);
+            return witness == null ? child : witness;
+        }
+
+        /**
+         * Appends a point to this branch. Appends to the same branch are serialised,
+         * appends to different branches run in parallel.
+         */
+        protected synchronized void add(double x, double y, double z) {
+            int n = this.size;
+            double[] points = this.points;
+            if (points == null) {
+                points = new double[INITIAL_CAPACITY * 3];
+            } else if (n * 3 == points.length) {
+                points = Arrays.copyOf(points, points.length << 1);
+            }
+            points[n * 3] = x;
+            points[n * 3 + 1] = y;
+            points[n * 3 + 2] = z;
+
+            // Publish the array before the size, so readers never see a size larger than their array.
+            this.points = points;
+            this.size = n + 1;
+        }
+
+        /**
+         * Returns the amount of points in this branch.
+         */
+        public int size() {
+            return this.size;
+        }
+
+        /**
+         * Visits every point in this branch, without locking.
+         */
+        public void forEachPoint(PointConsumer consumer) {
+            int n = this.size;
+            double[] points = this.points;
+            for (int i = 0; i < n; i++)
+                consumer.accept(points[i * 3], points[i * 3 + 1], points[i * 3 + 2]);
+        }
+
+        /**
+         * Returns whether this branch is a leaf or not.
+         * This is decided by whether it contains data,
+         * since branches don't.
+         */
+        public boolean isLeaf() {
+            return this.size > 0;
+        }
+    }
+}
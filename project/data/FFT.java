@@ -0,0 +1,226 @@
+package project.data;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** <tt>
+ * In-place fast Fourier transform over a {@link ComplexArray}.                     <br>
+ * A plan is made for one size, and caches everything that only depends on it:     <br>
+ * the twiddle factors and the bit reversal permutation. Powers of two run the     <br>
+ * iterative radix-2 transform; any other size goes through Bluestein's algorithm, <br>
+ * which turns it into a convolution of a power of two length.                     <br>
+ * Twiddles are read from <code>FMath</code>'s double sine table when the size     <br>
+ * divides its resolution, otherwise they're computed with <code>Math.sin</code>.  <br>
+ * Large transforms split the butterflies of every stage over the fork/join pool.
+ * @Note: A plan keeps scratch buffers for Bluestein sizes, so use one plan per thread.
+ * </tt>
+ */
+public class FFT {
+
+    // Butterflies per fork/join task, and the smallest size worth splitting at all.
+    private static final int PARALLEL_GRAIN = 1 << 12;
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    private final int size;
+
+    // Radix-2 plan of the power of two length the transform runs on, size itself or Bluestein's m.
+    private final int length;
+    private final double[] twiddles;
+    private final int[] reversed;
+    private boolean parallel = true;
+
+    // Bluestein only: the chirp exp(-πik²/n), the transformed conjugate chirp filter, and scratch space.
+    private final double[] chirp;
+    private final ComplexArray filter;
+    private final ComplexArray scratch;
+
+    /**
+     * Constructor for a transform of <tt>size</tt> complex values, size ≥ 1.
+     */
+    public FFT(int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("FFT size must be positive, got " + size);
+        this.size = size;
+
+        if (Integer.bitCount(size) == 1) {
+            this.length = size;
+            this.chirp = null;
+            this.filter = null;
+            this.scratch = null;
+        } else {
+            this.length = Integer.highestOneBit(2 * size - 1) << 1;
+            this.chirp = new double[size << 1];
+            this.scratch = new ComplexArray(length);
+            this.filter = new ComplexArray(length);
+        }
+
+        this.twiddles = new double[length];
+        for (int k = 0; k < length >> 1; k++) {
+            twiddles[k << 1] = cos(k, length);
+            twiddles[(k << 1) + 1] = -sin(k, length);
+        }
+
+        this.reversed = new int[length];
+        int bits = Integer.numberOfTrailingZeros(length);
+        for (int i = 0; i < length && bits > 0; i++)
+            reversed[i] = Integer.reverse(i) >>> (32 - bits);
+
+        if (chirp != null) {
+            // k² mod 2n keeps the angle exact for large k
+            for (int k = 0; k < size; k++) {
+                int m = (int) ((long) k * k % (2L * size));
+                chirp[k << 1] = cos(m, 2 * size);
+                chirp[(k << 1) + 1] = -sin(m, 2 * size);
+            }
+            filter.set(0, chirp[0], -chirp[1]);
+            for (int k = 1; k < size; k++) {
+                filter.set(k, chirp[k << 1], -chirp[(k << 1) + 1]);
+                filter.set(length - k, chirp[k << 1], -chirp[(k << 1) + 1]);
+            }
+            radix2(filter.data);
+        }
+    }
+
+    /**
+     * Returns the amount of complex values this plan transforms.
+     */
+    public int size() { return this.size; }
+
+    /**
+     * Enables or disables splitting large transforms over the fork/join pool, on by default.
+     */
+    public FFT setParallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
+
+    /**
+     * Forward transform, X[k] = Σ x[j]·exp(-2πijk/n), in place.
+     */
+    public void transform(ComplexArray data) {
+        if (data.length() != size)
+            throw new IllegalArgumentException("Plan is for " + size + " values, got " + data.length());
+
+        if (chirp == null)
+            radix2(data.data);
+        else
+            bluestein(data.data);
+    }
+
+    /**
+     * Inverse transform, including the 1/n scaling, in place.                   <br>
+     * Runs the forward transform on the conjugate: ifft(x) = conj(fft(conj(x))) / n.
+     */
+    public void inverse(ComplexArray data) {
+        data.conjugate();
+        transform(data);
+        data.conjugate().scale(1.0 / size);
+    }
+
+    private void bluestein(double[] x) {
+        // a = x · chirp, zero padded to m
+        double[] a = scratch.data;
+        for (int k = 0; k < size << 1; k += 2) {
+            a[k] = x[k] * chirp[k] - x[k + 1] * chirp[k + 1];
+            a[k + 1] = x[k] * chirp[k + 1] + x[k + 1] * chirp[k];
+        }
+        Arrays.fill(a, size << 1, a.length, 0);
+
+        // a ∗ filter, through the m point transforms
+        radix2(a);
+        scratch.multiply(filter);
+        scratch.conjugate();
+        radix2(a);
+        scratch.conjugate().scale(1.0 / length);
+
+        // X = chirp · (a ∗ filter)
+        for (int k = 0; k < size << 1; k += 2) {
+            x[k] = a[k] * chirp[k] - a[k + 1] * chirp[k + 1];
+            x[k + 1] = a[k] * chirp[k + 1] + a[k + 1] * chirp[k];
+        }
+    }
+
+    private void radix2(double[] x) {
+        for (int i = 0; i < length; i++) {
+            int j = reversed[i];
+            if (i < j) {
+                double re = x[i << 1], im = x[(i << 1) + 1];
+                x[i << 1] = x[j << 1];
+                x[(i << 1) + 1] = x[(j << 1) + 1];
+                x[j << 1] = re;
+                x[(j << 1) + 1] = im;
+            }
+        }
+
+        boolean split = parallel && length >= PARALLEL_THRESHOLD;
+        for (int half = 1; half < length; half <<= 1) {
+            if (split)
+                ForkJoinPool.commonPool().invoke(new Stage(x, half, 0, length >> 1));
+            else
+                butterflies(x, half, 0, length >> 1);
+        }
+    }
+
+    /**
+     * Runs butterflies [from, to) of the stage combining blocks of <tt>half</tt> values.  <br>
+     * Butterfly b pairs value i = (b / half)·2half + b % half with i + half.
+     */
+    private void butterflies(double[] x, int half, int from, int to) {
+        int stride = length / (half << 1);
+        int block = from / half, k = from % half;
+
+        for (int b = from; b < to; block++, k = 0) {
+            for (int i = block * (half << 1) + k, end = Math.min(half, k + to - b); k < end; k++, i++, b++) {
+                double wr = twiddles[k * stride << 1], wi = twiddles[(k * stride << 1) + 1];
+                int p = i << 1, q = (i + half) << 1;
+                double tr = x[q] * wr - x[q + 1] * wi;
+                double ti = x[q] * wi + x[q + 1] * wr;
+                x[q] = x[p] - tr;
+                x[q + 1] = x[p + 1] - ti;
+                x[p] += tr;
+                x[p + 1] += ti;
+            }
+        }
+    }
+
+    /**
+     * One stage of the radix-2 transform, split by butterfly range.
+     */
+    private class Stage extends RecursiveAction {
+        private final double[] x;
+        private final int half, from, to;
+
+        private Stage(double[] x, int half, int from, int to) {
+            this.x = x;
+            this.half = half;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_GRAIN) {
+                butterflies(x, half, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Stage(x, half, from, mid), new Stage(x, half, mid, to));
+        }
+    }
+
+    // cos and sin of 2πk/n, from the sine table when it has an entry for exactly that angle
+    private static double cos(int k, int n) {
+        int resolution = FMath.sine_resolution();
+        if (resolution % n == 0)
+            return FMath.sine_entry(k * (resolution / n) + (resolution >> 2));
+        return Math.cos(2 * Math.PI * k / n);
+    }
+
+    private static double sin(int k, int n) {
+        int resolution = FMath.sine_resolution();
+        if (resolution % n == 0)
+            return FMath.sine_entry(k * (resolution / n));
+        return Math.sin(2 * Math.PI * k / n);
+    }
+}
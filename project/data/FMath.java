@@ -7,14 +7,35 @@ public class FMath {
 
     private static final int resolution = 0x8000;
     private static final float[] sine_map = new float[resolution];
+    private static final double[] sine_map_d = new double[resolution];
 
     public static final float TWO_PI        = 6.28318531f;
     public static final float ONE_OVER_2PI  = 0.159154943f;
     public static final float F_PI          = 3.141592653f;
 
+    // Table steps per radian, kept in double so big angles still land between the right entries.
+    private static final double TABLE_SCALE = resolution / (Math.PI * 2);
+
+    // π/2 split in two (fdlibm's pio2_1 and pio2_1t), so x - kπ/2 stays exact for the polynomials.
+    private static final double PIO2_HI = 1.57079632673412561417e+00;
+    private static final double PIO2_LO = 6.07710050650619224932e-11;
+    private static final double TWO_OVER_PI = 2 / Math.PI;
+
+    /**
+     * Precision modes of the trig functions, from fastest to most accurate. <br>
+     * Maximum absolute errors against <code>Math.sin</code>, as checked by <tt>FMathTest</tt>:
+     * <ul>
+     *     <li>TABLE, truncating table lookup: ~2e-4</li>
+     *     <li>LERP, linearly interpolated table lookup: ~3e-8, float rounding</li>
+     *     <li>POLY, minimax polynomial on [-π/4, π/4]: ~3e-8, float rounding</li>
+     * </ul>
+     */
+    public enum Precision { TABLE, LERP, POLY }
+
     static {
         for (int i = 0; i < resolution; i++) {
-            sine_map[i] = (float) Math.sin(TWO_PI / resolution * i);
+            sine_map_d[i] = Math.sin(Math.PI * 2 / resolution * i);
+            sine_map[i] = (float) sine_map_d[i];
         }
     }
 
@@ -26,6 +47,151 @@ public class FMath {
         return sine_map[(int) ((float) resolution * ONE_OVER_2PI * (rads +  1.57079633)) & (resolution - 1)];
     }
 
+    /**
+     * Sine from the table, interpolating linearly between the two nearest entries.
+     */
+    public static float fsin_lerp(float rads) {
+        return (float) lerp(rads * TABLE_SCALE);
+    }
+
+    public static float fcos_lerp(float rads) {
+        return (float) lerp(rads * TABLE_SCALE + (resolution >> 2));
+    }
+
+    /**
+     * Sine from a minimax polynomial, no table involved.
+     */
+    public static float fsin_poly(float rads) {
+        return (float) dsin_poly(rads);
+    }
+
+    public static float fcos_poly(float rads) {
+        return (float) dcos_poly(rads);
+    }
+
+    /**
+     * Double precision sine from the table, interpolated. Max error ~5e-9.
+     */
+    public static double dsin(double rads) {
+        return lerp(rads * TABLE_SCALE);
+    }
+
+    public static double dcos(double rads) {
+        return lerp(rads * TABLE_SCALE + (resolution >> 2));
+    }
+
+    /**
+     * Double precision sine from the polynomial. Max error ~2e-16 for |x| < 1e5, beyond   <br>
+     * that the two part reduction starts losing bits and <code>Math.sin</code> is the way to go.
+     */
+    public static double dsin_poly(double rads) {
+        double k = Math.floor(rads * TWO_OVER_PI + 0.5);
+        double r = rads - k * PIO2_HI - k * PIO2_LO;
+        return quadrant((long) k, r);
+    }
+
+    public static double dcos_poly(double rads) {
+        double k = Math.floor(rads * TWO_OVER_PI + 0.5);
+        double r = rads - k * PIO2_HI - k * PIO2_LO;
+        return quadrant((long) k + 1, r);
+    }
+
+    /**
+     * Batch version of <code>fsin</code>, <tt>out[i] = fsin(in[i])</tt>.
+     */
+    public static void fsin(float[] in, float[] out) {
+        fsin(in, out, Precision.TABLE);
+    }
+
+    /**
+     * Batch sine with the given precision, <tt>out</tt> may be <tt>in</tt>.
+     */
+    public static void fsin(float[] in, float[] out, Precision precision) {
+        if (out.length < in.length)
+            throw new IllegalArgumentException("Output holds " + out.length + " values, " + in.length + " needed");
+
+        switch (precision) {
+            case TABLE:
+                for (int i = 0; i < in.length; i++)
+                    out[i] = fsin(in[i]);
+                break;
+            case LERP:
+                for (int i = 0; i < in.length; i++)
+                    out[i] = fsin_lerp(in[i]);
+                break;
+            case POLY:
+                for (int i = 0; i < in.length; i++)
+                    out[i] = fsin_poly(in[i]);
+                break;
+        }
+    }
+
+    /**
+     * Batch version of <code>fcos</code>, <tt>out[i] = fcos(in[i])</tt>.
+     */
+    public static void fcos(float[] in, float[] out) {
+        fcos(in, out, Precision.TABLE);
+    }
+
+    /**
+     * Batch cosine with the given precision, <tt>out</tt> may be <tt>in</tt>.
+     */
+    public static void fcos(float[] in, float[] out, Precision precision) {
+        if (out.length < in.length)
+            throw new IllegalArgumentException("Output holds " + out.length + " values, " + in.length + " needed");
+
+        switch (precision) {
+            case TABLE:
+                for (int i = 0; i < in.length; i++)
+                    out[i] = fcos(in[i]);
+                break;
+            case LERP:
+                for (int i = 0; i < in.length; i++)
+                    out[i] = fcos_lerp(in[i]);
+                break;
+            case POLY:
+                for (int i = 0; i < in.length; i++)
+                    out[i] = fcos_poly(in[i]);
+                break;
+        }
+    }
+
+    // t is the angle in table steps
+    private static double lerp(double t) {
+        double floor = Math.floor(t);
+        int i = (int) (long) floor & (resolution - 1);
+        double a = sine_map_d[i];
+        return a + (sine_map_d[(i + 1) & (resolution - 1)] - a) * (t - floor);
+    }
+
+    // sin(kπ/2 + r) for |r| ≤ π/4, Cephes' minimax coefficients.
+    // Both polynomials are evaluated and picked without branching, random quadrants would mispredict.
+    private static double quadrant(long k, double r) {
+        double z = r * r;
+        double sin = r + r * z * ((((((1.58962301576546568060E-10 * z - 2.50507477628578072866E-8) * z
+                + 2.75573136213857245213E-6) * z - 1.98412698295895385996E-4) * z
+                + 8.33333333332211858878E-3) * z - 1.66666666666666307295E-1));
+        double cos = 1 - 0.5 * z + z * z * ((((((-1.13585365213876817300E-11 * z + 2.08757008419747316778E-9) * z
+                - 2.75573141792967388112E-7) * z + 2.48015872888517045348E-5) * z
+                - 1.38888888888730564116E-3) * z + 4.16666666666665929218E-2));
+        double y = (k & 1) == 0 ? sin : cos;
+        return y * (1 - (k & 2));
+    }
+
+    /**
+     * Amount of entries in the sine tables, one full turn.
+     */
+    static int sine_resolution() {
+        return resolution;
+    }
+
+    /**
+     * Returns sin(2πi / resolution) from the double table.
+     */
+    static double sine_entry(int i) {
+        return sine_map_d[i & (resolution - 1)];
+    }
+
     public static double clamp(double x, double min, double max) {
         return Math.max(Math.min(x, max), min);
     }
@@ -59,21 +225,12 @@ public class FMath {
             this.complex = sin(angle);
         }
 
+        /**
+         * Returns this / other as a new Complex, see <code>divideInto</code>.           <br>
+         * (a + bi) / (c + di) = ((ac + bd) + (bc - ad)i) / (c² + d²)
+         */
         public FMath.Complex divide(FMath.Complex other) {
-            if (this.complex == 0 || other.complex == 0)
-                return new FMath.Complex(this.real / other.real, 0);
-
-            if (this.real == 0 || other.real == 0)
-                return new FMath.Complex(0, this.complex / other.complex);
-
-            FMath.Complex ret = new FMath.Complex(this.real * other.real - this.complex * other.complex,
-                    -this.real * other.complex - other.real * this.complex);
-            double divisor = other.real * other.real - other.complex * other.complex;
-
-            ret.real    /= divisor;
-            ret.complex /= divisor;
-
-            return ret;
+            return divideInto(other, new FMath.Complex(0, 0));
         }
 
         public FMath.Complex subtract(FMath.Complex other) {
@@ -114,6 +271,55 @@ public class FMath {
             return new FMath.Complex(-this.complex * x, this.real * x);
         }
 
+        /*
+         * In-place versions, writing the result into dst and returning it.
+         * dst may be this or other, so a.addInto(b, a) is a += b, without any garbage.
+         */
+
+        public FMath.Complex set(double real, double complex) {
+            this.real = real;
+            this.complex = complex;
+            return this;
+        }
+
+        public FMath.Complex set(FMath.Complex other) {
+            return set(other.real, other.complex);
+        }
+
+        public FMath.Complex addInto(FMath.Complex other, FMath.Complex dst) {
+            return dst.set(this.real + other.real, this.complex + other.complex);
+        }
+
+        public FMath.Complex subtractInto(FMath.Complex other, FMath.Complex dst) {
+            return dst.set(this.real - other.real, this.complex - other.complex);
+        }
+
+        public FMath.Complex multiplyInto(FMath.Complex other, FMath.Complex dst) {
+            return dst.set(this.real * other.real - this.complex * other.complex,
+                    this.real * other.complex + this.complex * other.real);
+        }
+
+        public FMath.Complex divideInto(FMath.Complex other, FMath.Complex dst) {
+            double divisor = other.real * other.real + other.complex * other.complex;
+            return dst.set((this.real * other.real + this.complex * other.complex) / divisor,
+                    (this.complex * other.real - this.real * other.complex) / divisor);
+        }
+
+        public FMath.Complex scaleInto(double x, FMath.Complex dst) {
+            return dst.set(this.real * x, this.complex * x);
+        }
+
+        public FMath.Complex conjugateInto(FMath.Complex dst) {
+            return dst.set(this.real, -this.complex);
+        }
+
+        /**
+         * Returns |z|, without the overflow protection of <code>Math.hypot</code>.
+         */
+        public double magnitude() {
+            return Math.sqrt(this.real * this.real + this.complex * this.complex);
+        }
+
         public double Re() { return this.real; }
 
         public double Im() { return this.complex; }
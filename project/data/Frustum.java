@@ -0,0 +1,89 @@
+package project.data;
+
+import org.joml.Matrix4f;
+
+/** <tt>
+ * View frustum as 6 planes, for culling against the spatial structures.        <br>
+ * The planes are taken straight from a (view) projection matrix, the way       <br>
+ * Gribb and Hartmann describe: every plane is the 4th row of the matrix plus   <br>
+ * or minus one of the others. A point is inside when it's on the positive      <br>
+ * side of all of them. No OpenGL involved, so it runs headless just as well.
+ * </tt>
+ */
+public class Frustum {
+
+    public static final int OUTSIDE = 0, INTERSECTS = 1, INSIDE = 2;
+
+    // a, b, c, d of the planes ax + by + cz + d ≥ 0: left, right, bottom, top, near, far
+    private final double[] planes = new double[24];
+
+    /**
+     * Constructor for the frustum of the given view projection matrix, e.g. <br>
+     * <code>new Matrix4f().setPerspective(...).lookAt(...)</code>.
+     */
+    public Frustum(Matrix4f m) {
+        set(m);
+    }
+
+    /**
+     * Re-extracts the planes from the given matrix, so one frustum can be reused every frame.
+     */
+    public Frustum set(Matrix4f m) {
+        // JOML's mCR accessors are column C, row R.
+        double r0x = m.m00(), r0y = m.m10(), r0z = m.m20(), r0w = m.m30();
+        double r1x = m.m01(), r1y = m.m11(), r1z = m.m21(), r1w = m.m31();
+        double r2x = m.m02(), r2y = m.m12(), r2z = m.m22(), r2w = m.m32();
+        double r3x = m.m03(), r3y = m.m13(), r3z = m.m23(), r3w = m.m33();
+
+        plane(0, r3x + r0x, r3y + r0y, r3z + r0z, r3w + r0w);
+        plane(1, r3x - r0x, r3y - r0y, r3z - r0z, r3w - r0w);
+        plane(2, r3x + r1x, r3y + r1y, r3z + r1z, r3w + r1w);
+        plane(3, r3x - r1x, r3y - r1y, r3z - r1z, r3w - r1w);
+        plane(4, r3x + r2x, r3y + r2y, r3z + r2z, r3w + r2w);
+        plane(5, r3x - r2x, r3y - r2y, r3z - r2z, r3w - r2w);
+        return this;
+    }
+
+    private void plane(int i, double a, double b, double c, double d) {
+        // Normalised, so the plane distances are actual distances.
+        double length = Math.sqrt(a * a + b * b + c * c);
+        planes[i << 2] = a / length;
+        planes[(i << 2) + 1] = b / length;
+        planes[(i << 2) + 2] = c / length;
+        planes[(i << 2) + 3] = d / length;
+    }
+
+    /**
+     * Returns whether the point [x, y, z] is inside the frustum, borders included.
+     */
+    public boolean contains(double x, double y, double z) {
+        for (int i = 0; i < 24; i += 4) {
+            if (planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3] < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Classifies the box [minX, maxX] × [minY, maxY] × [minZ, maxZ] as         <br>
+     * <tt>OUTSIDE</tt>, <tt>INSIDE</tt> or <tt>INTERSECTS</tt>. Only checks the <br>
+     * corners furthest along and against every plane's normal, so a box near   <br>
+     * an edge of the frustum may intersect where it's really outside.
+     */
+    public int classify(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        int result = INSIDE;
+        for (int i = 0; i < 24; i += 4) {
+            double a = planes[i], b = planes[i + 1], c = planes[i + 2], d = planes[i + 3];
+
+            // The corner furthest along the normal; if that one's behind the plane, the whole box is.
+            double far = a * (a >= 0 ? maxX : minX) + b * (b >= 0 ? maxY : minY) + c * (c >= 0 ? maxZ : minZ) + d;
+            if (far < 0)
+                return OUTSIDE;
+
+            double near = a * (a >= 0 ? minX : maxX) + b * (b >= 0 ? minY : maxY) + c * (c >= 0 ? minZ : maxZ) + d;
+            if (near < 0)
+                result = INTERSECTS;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,513 @@
+package project.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/** <tt>
+ * Bucketed k-d tree, for element vectors with more dimensions than {@link Tree} can take.   <br>
+ * Where a Tree branch has 2^D children, every branch here splits in two along one         <br>
+ * dimension, at the median of its points along the dimension they spread most in, and    <br>
+ * leaves hold up to a bucket of points. Memory thereby grows with the amount of elements <br>
+ * alone, whatever the dimension. Subtrees that get lopsided from inserts are rebuilt,     <br>
+ * keeping the height logarithmic even for sorted input.                                   <br>
+ * Unlike Tree, every inserted element is kept, also when several share a position.       <br>
+ * Vectors can be made with <code>new Tree.NVector(double...)</code>.
+ * </tt>
+ */
+public class KdTree<T> {
+
+    private static final int DEFAULT_BUCKET_SIZE = 16;
+
+    // A subtree is rebuilt when one side holds more than this share of its points.
+    private static final double BALANCE = 0.75d;
+
+    private final int dimensions;
+    private final int bucketSize;
+    private Node root;
+    private int size = 0;
+
+    // Insert path, reused between inserts.
+    private Node[] path = new Node[64];
+
+    public KdTree(int dimensions) {
+        this(dimensions, DEFAULT_BUCKET_SIZE);
+    }
+
+    /**
+     * Constructor for a tree over <tt>dimensions</tt> dimensions, with up to <tt>bucketSize</tt> points per leaf.
+     */
+    public KdTree(int dimensions, int bucketSize) {
+        if (dimensions < 1)
+            throw new IllegalArgumentException("A k-d tree needs at least 1 dimension, D=" + dimensions);
+        if (bucketSize < 1)
+            throw new IllegalArgumentException("Bucket size must be at least 1, got " + bucketSize);
+        this.dimensions = dimensions;
+        this.bucketSize = bucketSize;
+        this.root = new Node(bucketSize, dimensions);
+    }
+
+    /**
+     * Inserts the element at the given position.
+     */
+    public void insert(Tree.NVector vec, T element) {
+        double[] point = check(vec);
+
+        Node node = root;
+        int depth = 0;
+        while (!node.isLeaf()) {
+            if (depth == path.length)
+                path = Arrays.copyOf(path, depth << 1);
+            path[depth++] = node;
+            node.count++;
+            node = point[node.dimension] <= node.split ? node.left : node.right;
+        }
+        node.add(point, element, dimensions);
+        size++;
+
+        // A leaf of points all in one spot stays whole until a point lands elsewhere in it.
+        if (node.count > bucketSize && !(node.stacked && node.isAt(point, dimensions)))
+            splitLeaf(node);
+
+        // Rebuild the highest subtree on the path that got lopsided, which fixes everything below it as well.
+        for (int i = 0; i < depth; i++) {
+            Node branch = path[i];
+            if (Math.max(branch.left.count, branch.right.count) > BALANCE * branch.count + bucketSize) {
+                rebuild(branch);
+                break;
+            }
+        }
+        Arrays.fill(path, 0, depth, null);
+    }
+
+    public void insert(T element, double... coordinates) {
+        insert(new Tree.NVector(coordinates), element);
+    }
+
+    /**
+     * Inserts all elements at once, element i at vectors[i], and rebuilds the whole tree <br>
+     * balanced, which is quicker than inserting them one by one.
+     */
+    public void insertAll(T[] elements, Tree.NVector[] vectors) {
+        if (elements.length != vectors.length)
+            throw new IllegalArgumentException("Element and vector counts differ (" + elements.length + ", " + vectors.length + ")");
+
+        int n = size + elements.length;
+        double[] points = new double[n * dimensions];
+        Object[] items = new Object[n];
+        int count = collect(root, points, items, 0);
+        for (int i = 0; i < elements.length; i++, count++) {
+            System.arraycopy(check(vectors[i]), 0, points, count * dimensions, dimensions);
+            items[count] = elements[i];
+        }
+        root = build(points, items, n);
+        size = n;
+    }
+
+    /**
+     * Returns whether an element is stored at exactly the given position.
+     */
+    public boolean contains(Tree.NVector vec) {
+        double[] point = check(vec);
+        return contains(root, point);
+    }
+
+    private boolean contains(Node node, double[] point) {
+        while (!node.isLeaf()) {
+            // Points equal to the split value can be on both sides after a rebuild.
+            if (point[node.dimension] == node.split && contains(node.right, point))
+                return true;
+            node = point[node.dimension] <= node.split ? node.left : node.right;
+        }
+        for (int i = 0; i < node.count; i++) {
+            if (Arrays.equals(node.points, i * dimensions, (i + 1) * dimensions, point, 0, dimensions))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Visits every element within the box [min, max], borders included.
+     */
+    public void queryRange(Tree.NVector min, Tree.NVector max, Consumer<? super T> consumer) {
+        queryRange(root, check(min), check(max), consumer);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void queryRange(Node node, double[] min, double[] max, Consumer<? super T> consumer) {
+        if (node.isLeaf()) {
+            outer:
+            for (int i = 0; i < node.count; i++) {
+                for (int k = 0, o = i * dimensions; k < dimensions; k++) {
+                    if (node.points[o + k] < min[k] || node.points[o + k] > max[k])
+                        continue outer;
+                }
+                consumer.accept((T) node.elements[i]);
+            }
+            return;
+        }
+        if (min[node.dimension] <= node.split)
+            queryRange(node.left, min, max, consumer);
+        if (max[node.dimension] >= node.split)
+            queryRange(node.right, min, max, consumer);
+    }
+
+    /**
+     * Returns the element nearest to the query, or null when the tree is empty.
+     */
+    public T nearest(Tree.NVector query) {
+        return nearest(query, 0);
+    }
+
+    /**
+     * Returns an element at most <tt>1 + epsilon</tt> times as far from the query as the nearest one, <br>
+     * or null when the tree is empty. Larger epsilons prune more of the tree, which is where the     <br>
+     * speed comes from in many dimensions.
+     */
+    public T nearest(Tree.NVector query, double epsilon) {
+        List<T> result = nearest(query, 1, epsilon);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * Returns up to <tt>k</tt> elements nearest to the query, nearest first, where every one  <br>
+     * is at most <tt>1 + epsilon</tt> times as far as the true i-th nearest element.
+     */
+    public List<T> nearest(Tree.NVector query, int k, double epsilon) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be at least 1, got " + k);
+        if (epsilon < 0)
+            throw new IllegalArgumentException("Epsilon can't be negative, got " + epsilon);
+
+        Search search = new Search(check(query), k, (1 + epsilon) * (1 + epsilon));
+        search.visit(root, 0);
+        return search.result();
+    }
+
+    /**
+     * Returns the amount of elements in the tree.
+     */
+    public int size() { return this.size; }
+
+    public int getDimensions() { return this.dimensions; }
+
+    public int getBucketSize() { return this.bucketSize; }
+
+    /**
+     * Returns the amount of nodes, leaves included, which grows linearly with the element count.
+     */
+    public long getNodeCount() {
+        return countNodes(root);
+    }
+
+    private long countNodes(Node node) {
+        return node.isLeaf() ? 1 : 1 + countNodes(node.left) + countNodes(node.right);
+    }
+
+    /**
+     * Returns the length of the longest path from the root to a leaf.
+     */
+    public int getHeight() {
+        return height(root);
+    }
+
+    private int height(Node node) {
+        return node.isLeaf() ? 0 : 1 + Math.max(height(node.left), height(node.right));
+    }
+
+    private double[] check(Tree.NVector vec) {
+        if (vec.coordinates.length != this.dimensions)
+            throw new IllegalArgumentException(String.format("Vector has different dimensions than required, Dv=%d, D=%d", vec.coordinates.length, dimensions));
+        return vec.coordinates;
+    }
+
+    /**
+     * Turns an overflowing leaf into a branch with two leaves, in place.
+     */
+    private void splitLeaf(Node leaf) {
+        Node built = build(leaf.points, leaf.elements, leaf.count);
+        leaf.become(built);
+    }
+
+    /**
+     * Rebuilds the subtree of the given node balanced, in place.
+     */
+    private void rebuild(Node node) {
+        double[] points = new double[node.count * dimensions];
+        Object[] items = new Object[node.count];
+        int n = collect(node, points, items, 0);
+        node.become(build(points, items, n));
+    }
+
+    private int collect(Node node, double[] points, Object[] items, int at) {
+        if (!node.isLeaf())
+            return collect(node.right, points, items, collect(node.left, points, items, at));
+        System.arraycopy(node.points, 0, points, at * dimensions, node.count * dimensions);
+        System.arraycopy(node.elements, 0, items, at, node.count);
+        return at + node.count;
+    }
+
+    /**
+     * Builds a balanced subtree of the first <tt>n</tt> points.
+     */
+    private Node build(double[] points, Object[] items, int n) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        return build(points, items, order, 0, n);
+    }
+
+    private Node build(double[] points, Object[] items, int[] order, int from, int to) {
+        int n = to - from;
+        if (n <= bucketSize) {
+            Node leaf = new Node(bucketSize, dimensions);
+            for (int i = from; i < to; i++)
+                leaf.add(points, order[i] * dimensions, items[order[i]], dimensions);
+            return leaf;
+        }
+
+        // Split along the dimension the points spread most in.
+        int dimension = 0;
+        double spread = -1;
+        for (int k = 0; k < dimensions; k++) {
+            double low = Double.POSITIVE_INFINITY, high = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < to; i++) {
+                double value = points[order[i] * dimensions + k];
+                low = Math.min(low, value);
+                high = Math.max(high, value);
+            }
+            if (high - low > spread) {
+                spread = high - low;
+                dimension = k;
+            }
+        }
+
+        // All points in the same spot, nothing to split: one big leaf.
+        if (spread == 0) {
+            Node leaf = new Node(n, dimensions);
+            for (int i = from; i < to; i++)
+                leaf.add(points, order[i] * dimensions, items[order[i]], dimensions);
+            leaf.stacked = true;
+            return leaf;
+        }
+
+        int mid = from + n / 2;
+        select(points, order, from, to, mid, dimension);
+
+        Node node = new Node(0, 0);
+        node.dimension = dimension;
+        node.split = points[order[mid] * dimensions + dimension];
+        node.count = n;
+        node.left = build(points, items, order, from, mid);
+        node.right = build(points, items, order, mid, to);
+        return node;
+    }
+
+    /**
+     * Quickselect, putting the <tt>nth</tt> smallest point along the dimension at <tt>nth</tt> <br>
+     * with everything before it ≤ and everything after it ≥.
+     */
+    private void select(double[] points, int[] order, int from, int to, int nth, int dimension) {
+        int low = from, high = to - 1;
+        while (low < high) {
+            double pivot = points[order[(low + high) >>> 1] * dimensions + dimension];
+            int i = low, j = high;
+            while (i <= j) {
+                while (points[order[i] * dimensions + dimension] < pivot) i++;
+                while (points[order[j] * dimensions + dimension] > pivot) j--;
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i++] = order[j];
+                    order[j--] = swap;
+                }
+            }
+            if (nth <= j)
+                high = j;
+            else if (nth >= i)
+                low = i;
+            else
+                return;
+        }
+    }
+
+    /**
+     * Best first search for the k nearest, keeping a max-heap of the best so far.
+     */
+    private class Search {
+        private final double[] query, offsets;
+        private final double slack;
+        private final int k;
+        private final double[] distances;
+        private final Object[] items;
+        private int count = 0;
+
+        private Search(double[] query, int k, double slack) {
+            this.query = query;
+            this.offsets = new double[dimensions];
+            this.k = k;
+            this.slack = slack;
+            this.distances = new double[k];
+            this.items = new Object[k];
+        }
+
+        /**
+         * Visits a subtree, <tt>bound</tt> being the squared distance from the query to its cell, <br>
+         * kept up incrementally from the per dimension offsets to the splits passed on the way.
+         */
+        private void visit(Node node, double bound) {
+            if (node.isLeaf()) {
+                for (int i = 0; i < node.count; i++) {
+                    double distance = 0;
+                    for (int d = 0, o = i * dimensions; d < dimensions; d++) {
+                        double diff = node.points[o + d] - query[d];
+                        distance += diff * diff;
+                    }
+                    offer(distance, node.elements[i]);
+                }
+                return;
+            }
+
+            double diff = query[node.dimension] - node.split;
+            Node near = diff <= 0 ? node.left : node.right, far = diff <= 0 ? node.right : node.left;
+            visit(near, bound);
+
+            // Crossing the split, this dimension's offset becomes the distance to it.
+            double old = offsets[node.dimension];
+            double farBound = bound - old * old + diff * diff;
+            if (count < k || farBound * slack < distances[0]) {
+                offsets[node.dimension] = diff;
+                visit(far, farBound);
+                offsets[node.dimension] = old;
+            }
+        }
+
+        private void offer(double distance, Object item) {
+            if (count < k) {
+                // Sift up
+                int i = count++;
+                while (i > 0 && distances[(i - 1) >> 1] < distance) {
+                    distances[i] = distances[(i - 1) >> 1];
+                    items[i] = items[(i - 1) >> 1];
+                    i = (i - 1) >> 1;
+                }
+                distances[i] = distance;
+                items[i] = item;
+            } else if (distance < distances[0]) {
+                // Replace the furthest and sift down
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= k)
+                        break;
+                    if (child + 1 < k && distances[child + 1] > distances[child])
+                        child++;
+                    if (distances[child] <= distance)
+                        break;
+                    distances[i] = distances[child];
+                    items[i] = items[child];
+                    i = child;
+                }
+                distances[i] = distance;
+                items[i] = item;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<T> result() {
+            // Pop the heap, furthest first.
+            Object[] sorted = new Object[count];
+            for (int n = count; n > 0; n--) {
+                sorted[n - 1] = items[0];
+                double last = distances[n - 1];
+                Object lastItem = items[n - 1];
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= n - 1)
+                        break;
+                    if (child + 1 < n - 1 && distances[child + 1] > distances[child])
+                        child++;
+                    if (distances[child] <= last)
+                        break;
+                    distances[i] = distances[child];
+                    items[i] = items[child];
+                    i = child;
+                }
+                distances[i] = last;
+                items[i] = lastItem;
+            }
+
+            List<T> result = new ArrayList<>(count);
+            for (Object item : sorted)
+                result.add((T) item);
+            return result;
+        }
+    }
+
+    /**
+     * A leaf, holding its points flat in <tt>points</tt>, or a branch split at   <br>
+     * <tt>split</tt> along <tt>dimension</tt>, with the points ≤ split on the left.
+     */
+    private static class Node {
+        private double[] points;
+        private Object[] elements;
+
+        // Points in the subtree, for a leaf the points in it.
+        private int count = 0;
+
+        // Leaf over its bucket size with all points in one spot, which can't be split.
+        private boolean stacked = false;
+
+        private int dimension;
+        private double split;
+        private Node left, right;
+
+        private Node(int capacity, int dimensions) {
+            this.points = capacity == 0 ? null : new double[capacity * dimensions];
+            this.elements = capacity == 0 ? null : new Object[capacity];
+        }
+
+        private boolean isLeaf() {
+            return this.left == null;
+        }
+
+        /**
+         * Returns whether the first point in the leaf is at the given position.
+         */
+        private boolean isAt(double[] point, int dimensions) {
+            for (int k = 0; k < dimensions; k++) {
+                if (this.points[k] != point[k])
+                    return false;
+            }
+            return true;
+        }
+
+        private void add(double[] point, Object element, int dimensions) {
+            add(point, 0, element, dimensions);
+        }
+
+        private void add(double[] source, int offset, Object element, int dimensions) {
+            if (this.count == this.elements.length) {
+                this.points = Arrays.copyOf(this.points, (this.count << 1) * dimensions);
+                this.elements = Arrays.copyOf(this.elements, this.count << 1);
+            }
+            System.arraycopy(source, offset, this.points, this.count * dimensions, dimensions);
+            this.elements[this.count++] = element;
+        }
+
+        /**
+         * Takes over the contents of another node, so parents don't need updating.
+         */
+        private void become(Node other) {
+            this.points = other.points;
+            this.elements = other.elements;
+            this.count = other.count;
+            this.stacked = other.stacked;
+            this.dimension = other.dimension;
+            this.split = other.split;
+            this.left = other.left;
+            this.right = other.right;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package project.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** <tt>
+ * Pointerless version of the {@link OcTree}.                                   <br>
+ * Instead of a hierarchy of branches, every point is keyed by the code of      <br>
+ * the cell it lands in, and the points are kept in primitive arrays sorted by  <br>
+ * that code, see <code>OcTree.getCellCode</code>.                               <br>
+ * This means all points of a branch, at any level, are stored next to each     <br>
+ * other, which turns a subtree lookup into a single contiguous scan.           <br>
+ * Points are appended unsorted and merged into the sorted part on the first    <br>
+ * read after an insert, so batches of inserts stay cheap.
+ * </tt>
+ */
+public class LinearOcTree {
+
+    private static final int MAX_DEPTH = 5;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private double scale = 1.0d;
+    private int depth = 1;
+
+    private long[] codes = new long[INITIAL_CAPACITY];
+    private double[] xs = new double[INITIAL_CAPACITY];
+    private double[] ys = new double[INITIAL_CAPACITY];
+    private double[] zs = new double[INITIAL_CAPACITY];
+    private int size = 0;
+    private int sorted = 0;
+
+    /**
+     * Constructor for a default LinearOcTree, with a coordinate scale of 1.0 and a depth of 1.
+     */
+    public LinearOcTree() {}
+
+    /**
+     * Constructor for a LinearOcTree with a specified depth, clamped like <code>OcTree</code>'s.
+     */
+    public LinearOcTree(int depth) {
+        this.depth = Math.max(Math.min(MAX_DEPTH, depth), 1);
+    }
+
+    /**
+     * Constructor for a LinearOcTree with a specified depth and scale.
+     */
+    public LinearOcTree(int depth, double scale) {
+        this(depth);
+        this.scale = scale;
+    }
+
+    /**
+     * Method for inserting 3 dimensional coordinates into the tree.    <br>
+     * Returns the code of the leaf the point was added to.             <br>
+     * @Note: 0 ≤ [x, y, z] ≤ scale, otherwise nothing will be added and -1 is returned.
+     */
+    public long insert(double x, double y, double z) {
+        long code = OcTree.getCellCode(x, y, z, scale, depth);
+        if (code < 0)
+            return -1;
+
+        if (size == codes.length)
+            grow(size << 1);
+
+        codes[size] = code;
+        xs[size] = x;
+        ys[size] = y;
+        zs[size] = z;
+        size++;
+        return code;
+    }
+
+    /**
+     * Inserts the first <tt>n</tt> points of the given arrays, computing their codes in one batch. <br>
+     * Returns the amount of points added; points out of bounds are skipped.
+     */
+    public int insertAll(double[] xs, double[] ys, double[] zs, int n) {
+        long[] batch = new long[n];
+        CellCodes.compute(xs, ys, zs, n, scale, depth, batch);
+
+        if (size + n > codes.length)
+            grow(Math.max(size + n, size << 1));
+
+        int added = 0;
+        for (int i = 0; i < n; i++) {
+            if (batch[i] < 0)
+                continue;
+            codes[size] = batch[i];
+            this.xs[size] = xs[i];
+            this.ys[size] = ys[i];
+            this.zs[size] = zs[i];
+            size++;
+            added++;
+        }
+        return added;
+    }
+
+    /**
+     * Method for retrieving the leaf of the given coordinates.                   <br>
+     * Unlike <code>OcTree.getLeaf</code> this never grows anything; a cell without <br>
+     * points just returns an empty leaf.
+     * @Notice: Returns null with coordinates out of bounds.
+     */
+    public Leaf getLeaf(double x, double y, double z) {
+        long code = OcTree.getCellCode(x, y, z, scale, depth);
+        if (code < 0)
+            return null;
+        return getLeaf(code);
+    }
+
+    /**
+     * Method for retrieving the leaf with the given cell code.
+     */
+    public Leaf getLeaf(long code) {
+        flush();
+        int start = lowerBound(code);
+        return new Leaf(this, code, start, lowerBound(code + 1));
+    }
+
+    /**
+     * Method for retrieving all the leaves in the tree that contain points, in code order.
+     */
+    public List<Leaf> getLeaves() {
+        flush();
+        List<Leaf> leaves = new ArrayList<>();
+        for (int start = 0, end; start < size; start = end) {
+            end = start + 1;
+            while (end < size && codes[end] == codes[start])
+                end++;
+            leaves.add(new Leaf(this, codes[start], start, end));
+        }
+        return leaves;
+    }
+
+    /**
+     * Visits every point in the tree, in code order.
+     */
+    public void forEachPoint(PointConsumer consumer) {
+        flush();
+        for (int i = 0; i < size; i++)
+            consumer.accept(xs[i], ys[i], zs[i]);
+    }
+
+    /**
+     * Visits every point below a branch, as a single contiguous scan.               <br>
+     * A branch at level <tt>L</tt> (1 ≤ L ≤ depth) is identified by the first     <br>
+     * <tt>L</tt> indices of the descent, e.g. <code>code >>> 3 * (depth - L)</code> of any of its leaves.
+     */
+    public void forEachPoint(long prefix, int level, PointConsumer consumer) {
+        flush();
+        int shift = 3 * (depth - level);
+        for (int i = lowerBound(prefix << shift), end = lowerBound((prefix + 1) << shift); i < end; i++)
+            consumer.accept(xs[i], ys[i], zs[i]);
+    }
+
+    /**
+     * Returns the amount of points in the tree.
+     */
+    public int size() { return this.size; }
+
+    /**
+     * Method which returns the depth of this tree.
+     */
+    public int getDepth() { return this.depth; }
+
+    public double getScale() { return this.scale; }
+
+    /**
+     * Merges the points inserted since the last read into the sorted arrays, in place. <br>
+     * Only the new points are sorted and copied out, and merging from the back only moves <br>
+     * the sorted points with a higher code than the lowest new one.
+     */
+    private void flush() {
+        if (sorted == size)
+            return;
+
+        // Sort the unsorted tail by packing (code, index) into one long, keeping equal codes in insertion order.
+        int tail = size - sorted;
+        int indexBits = 63 - 3 * depth;
+        long[] keys = new long[tail];
+        for (int i = 0; i < tail; i++)
+            keys[i] = (codes[sorted + i] << indexBits) | i;
+        Arrays.sort(keys);
+
+        long indexMask = (1L << indexBits) - 1;
+        double[] tXs = new double[tail], tYs = new double[tail], tZs = new double[tail];
+        for (int b = 0; b < tail; b++) {
+            int src = sorted + (int) (keys[b] & indexMask);
+            tXs[b] = xs[src];
+            tYs[b] = ys[src];
+            tZs[b] = zs[src];
+        }
+
+        // Fill from the back, new points going after sorted ones with the same code.
+        for (int a = sorted - 1, b = tail - 1, k = size - 1; b >= 0; k--) {
+            long code = keys[b] >>> indexBits;
+            if (a >= 0 && codes[a] > code) {
+                codes[k] = codes[a];
+                xs[k] = xs[a];
+                ys[k] = ys[a];
+                zs[k] = zs[a];
+                a--;
+            } else {
+                codes[k] = code;
+                xs[k] = tXs[b];
+                ys[k] = tYs[b];
+                zs[k] = tZs[b];
+                b--;
+            }
+        }
+        sorted = size;
+    }
+
+    /**
+     * Returns the first index with a code ≥ the given code.
+     */
+    private int lowerBound(long code) {
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (codes[mid] < code)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private void grow(int capacity) {
+        codes = Arrays.copyOf(codes, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        zs = Arrays.copyOf(zs, capacity);
+    }
+
+    /**
+     * Leaf class, a view of the points sharing one cell code.         <br>
+     * The view points into the tree's arrays, so it is only valid     <br>
+     * until the next insert.
+     */
+    public static class Leaf {
+        public final long code;
+        private final LinearOcTree root;
+        private final int start, end;
+
+        protected Leaf(LinearOcTree root, long code, int start, int end) {
+            this.root = root;
+            this.code = code;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Returns the amount of points in this leaf.
+         */
+        public int size() { return this.end - this.start; }
+
+        public double getX(int i) { return root.xs[start + i]; }
+
+        public double getY(int i) { return root.ys[start + i]; }
+
+        public double getZ(int i) { return root.zs[start + i]; }
+
+        /**
+         * Visits every point in this leaf.
+         */
+        public void forEachPoint(PointConsumer consumer) {
+            for (int i = start; i < end; i++)
+                consumer.accept(root.xs[i], root.ys[i], root.zs[i]);
+        }
+
+        /**
+         * Returns whether this leaf contains points.
+         */
+        public boolean isLeaf() {
+            return this.end > this.start;
+        }
+    }
+}
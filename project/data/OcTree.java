@@ -5,10 +5,21 @@ package project.data;
  * File created by Luca Warmenhoven
  */
 
+import org.joml.Matrix4f;
 import org.joml.Vector3d;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /** <tt>
  * Class for the data structured called an 'OcTree'.                           <br>
@@ -18,14 +29,27 @@ import java.util.List;
  * The OcTree contains, like the word might suggest, eight nodes per branch.   <br>
  * To create the simplest form of an OcTree, just call the default constructor <br>
  * 'new OcTree()' to create an OcTree with depth 1 and scale 1.                <br>
- * For more information, read the comments above the contained methods.
+ * For more information, read the comments above the contained methods.      <br>
+ * Shares its point methods with the {@link SpatialHash} through {@link SpatialIndex}.
  * </tt>
  */
-public class OcTree {
+public class OcTree implements SpatialIndex<OcTree.Branch> {
 
     private static final int OCTREE_SIZE = 8;
     private static final int MAX_DEPTH = 5;
 
+    // Below this depth cells get narrower than a double can tell apart, so adaptive trees stop splitting.
+    private static final int MAX_ADAPTIVE_DEPTH = 52;
+
+    // Most branches kept around for reuse after being pruned.
+    private static final int MAX_FREE_BRANCHES = 1 << 12;
+
+    // Pruned branches only keep coordinate arrays up to this length, larger ones would just sit in the free list.
+    private static final int MAX_FREE_CAPACITY = 4 * Branch.INITIAL_CAPACITY;
+
+    // Subtrees with at least this many points are bulk loaded in their own task.
+    private static final int BULK_THRESHOLD = 1 << 12;
+
     /**
      * Indices follow the rule: <tt>i = |x| + 4|y| + 2|z| </tt>                 <br>
      * with <tt>0 <= |x, y, z| <= 1</tt>                                        <br>
@@ -37,18 +61,28 @@ public class OcTree {
     private final Branch root = new Branch(this, null, 0);
     private double scale = 1.0d;
     private int depth = 1;
+    private int leafCapacity = 0;
+    private boolean tracksMass = false;
+    private boolean readOnly = false;
+
+    // Pruned branches waiting to be reused, linked through their parent field.
+    private Branch freeBranches = null;
+    private int freeBranchCount = 0;
+
+    // Only there with -Dproject.data.metrics=true, see TreeMetrics.
+    private final TreeMetrics metrics = TreeMetrics.ENABLED ? new TreeMetrics("OcTree", this::getMaxNodeCount, this::walkShape) : null;
 
     /**
      * Constructor for a default OcTree, with a coordinate scale of 1.0 and a depth of 1. <br>
-     * This has a max node count of 2^(3 * 1) = 8.
+     * This has a max node count of 1 + 8 = 9, the root and its children.
      */
     public OcTree() {}
 
     /**
      * Constructor for an OcTree with a specified depth. <br>
      * This depth determines the maximum amount of nodes <br>
-     * N = 2^(3 • D)                                     <br>
-     * With a depth of say 3, this would mean N = 2^(3 • 3) = 512.
+     * N = 1 + 8 + 8^2 + ... + 8^D, the root included    <br>
+     * With a depth of say 3, this would mean N = 1 + 8 + 64 + 512 = 585.
      */
     public OcTree(int depth) {
         this.depth = Math.max(Math.min(MAX_DEPTH, depth), 1);
@@ -65,24 +99,540 @@ public class OcTree {
         this.scale = scale;
     }
 
+    /**
+     * Creates an adaptive OcTree, which doesn't descend to a fixed depth.                <br>
+     * Points go into the leaf their cell ends up in, and a leaf holding more than      <br>
+     * <tt>leafCapacity</tt> points is split into eight, as deep as double precision   <br>
+     * can resolve. Dense regions thereby get deep, fine cells while sparse regions     <br>
+     * stay shallow. Leaves that shrink to half the capacity or less are merged back   <br>
+     * by <code>compact()</code> and when removing points.
+     */
+    public static OcTree adaptive(double scale, int leafCapacity) {
+        if (leafCapacity < 1)
+            throw new IllegalArgumentException("Leaf capacity must be at least 1, got " + leafCapacity);
+
+        OcTree tree = new OcTree();
+        tree.scale = scale;
+        tree.depth = MAX_ADAPTIVE_DEPTH;
+        tree.leafCapacity = leafCapacity;
+        return tree;
+    }
+
     /**
      * Method for inserting 3 dimensional coordinates into the tree.           <br>
      * The method returns the leaf node associated with the given coordinates. <br>
      * @Note: 0 ≤ [x, y, z] ≤ scale, otherwise nothing will be added and no branch will be returned.
      */
     public Branch insert(double x, double y, double z) {
+        return insert(x, y, z, 1.0d);
+    }
+
+    /**
+     * Inserts a point with the given mass, which only matters when the tree tracks mass, <br>
+     * see <code>trackMass()</code>. Returns the leaf the point ended up in.
+     */
+    public Branch insert(double x, double y, double z, double mass) {
         Branch leaf = getLeaf(x, y, z);
         if (leaf == null)
             return null;
 
-        if (leaf.data == null)
-            leaf.data = new ArrayList<>();
+        leaf.add(x, y, z, mass);
+        if (tracksMass)
+            addMass(leaf, mass, x, y, z);
+        if (TreeMetrics.ENABLED)
+            metrics.inserted();
 
-        leaf.data.add(new Vector3d(x, y, z));
+        if (isAdaptive() && leaf.size > leafCapacity && leaf.depth < depth) {
+            split(leaf);
+            return getLeaf(x, y, z);
+        }
 
         return leaf;
     }
 
+    /**
+     * Moves the points of an overflowing leaf into new children, splitting those again while they overflow.
+     */
+    private void split(Branch leaf) {
+        leaf.branches = new Branch[OCTREE_SIZE];
+        for (int i = 0; i < leaf.size; i++) {
+            int j = getIndex(leaf.xs[i], leaf.ys[i], leaf.zs[i], leaf.depth);
+            if (leaf.branches[j] == null)
+                leaf.branches[j] = newBranch(leaf, leaf.depth + 1);
+            leaf.branches[j].add(leaf.xs[i], leaf.ys[i], leaf.zs[i], leaf.getMass(i));
+        }
+        leaf.xs = leaf.ys = leaf.zs = leaf.masses = null;
+        leaf.size = 0;
+
+        // The leaf's own aggregates stay as they are, it still holds the same points below it.
+        for (Branch branch : leaf.branches) {
+            if (branch != null && tracksMass)
+                aggregate(branch);
+        }
+
+        for (Branch branch : leaf.branches) {
+            if (branch != null && branch.size > leafCapacity && branch.depth < depth)
+                split(branch);
+        }
+    }
+
+    /**
+     * Returns the branch index the given point takes below a branch at the given level.
+     */
+    private int getIndex(double x, double y, double z, int level) {
+        x /= scale;
+        y /= scale;
+        z /= scale;
+        for (int i = 0; i < level; i++) {
+            x = (2 * x - FMath.round(x));
+            y = (2 * y - FMath.round(y));
+            z = (2 * z - FMath.round(z));
+        }
+        return FMath.round(x) + FMath.round(y) * 4 + FMath.round(z) * 2;
+    }
+
+    /**
+     * Merges the children of the given branch back into it, when they're all leaves <br>
+     * holding no more than half the leaf capacity together. Returns whether it did.
+     */
+    private boolean tryMerge(Branch branch) {
+        if (branch.branches == null)
+            return false;
+
+        int total = 0;
+        for (Branch child : branch.branches) {
+            if (child == null)
+                continue;
+            if (child.branches != null)
+                return false;
+            total += child.size;
+        }
+        if (total > leafCapacity / 2)
+            return false;
+
+        for (Branch child : branch.branches) {
+            if (child == null)
+                continue;
+            branch.ensureCapacity(branch.size + child.size);
+            for (int i = 0; i < child.size; i++)
+                branch.add(child.xs[i], child.ys[i], child.zs[i], child.getMass(i));
+            release(child);
+        }
+        branch.branches = null;
+        return true;
+    }
+
+    /**
+     * Merges every underflowing subtree of an adaptive tree back into a single leaf, <br>
+     * bottom up. Does nothing for trees with a fixed depth.
+     */
+    public void compact() {
+        checkWritable();
+        if (isAdaptive())
+            compact(this.root);
+    }
+
+    private void compact(Branch branch) {
+        for (int i = 0; i < OCTREE_SIZE && branch.branches != null; i++) {
+            if (branch.branches[i] != null)
+                compact(branch.branches[i]);
+        }
+        tryMerge(branch);
+    }
+
+    /**
+     * Returns a deep copy of this tree, sharing nothing with it, <br>
+     * so either can be changed without affecting the other.
+     */
+    public OcTree copy() {
+        OcTree copy = emptyCopy();
+        copyBranch(this.root, null, copy.root, copy, Set.of());
+        return copy;
+    }
+
+    /**
+     * Returns a read-only copy of this tree, see <code>freeze()</code>, which shares every subtree     <br>
+     * that hasn't changed since <tt>previous</tt> with it, so only the changed branches get copied. <br>
+     * <tt>previous</tt> must be null or an earlier snapshot of this tree, and <tt>changed</tt> must   <br>
+     * hold every branch of this tree that was changed since then, along with every branch above   <br>
+     * those. Removing points can make a branch take the place of another, so this only works     <br>
+     * for trees that were only inserted into since. Shared branches keep the parent and root      <br>
+     * of the snapshot they were first copied into.
+     */
+    public OcTree snapshot(OcTree previous, Set<Branch> changed) {
+        OcTree copy = emptyCopy();
+        copyBranch(this.root, previous == null ? null : previous.root, copy.root, copy, changed);
+        copy.readOnly = true;
+        return copy;
+    }
+
+    /**
+     * Makes this tree read-only: inserting, removing, moving, compacting and <code>getLeaf</code>, <br>
+     * which grows the tree, throw an {@link UnsupportedOperationException} from now on.         <br>
+     * Nothing stops changing the fields of the branches, so don't. Returns this tree.
+     */
+    public OcTree freeze() {
+        this.readOnly = true;
+        return this;
+    }
+
+    public boolean isReadOnly() { return this.readOnly; }
+
+    private void checkWritable() {
+        if (readOnly)
+            throw new UnsupportedOperationException("OcTree is read-only");
+    }
+
+    private OcTree emptyCopy() {
+        OcTree copy = new OcTree();
+        copy.scale = this.scale;
+        copy.depth = this.depth;
+        copy.leafCapacity = this.leafCapacity;
+        copy.tracksMass = this.tracksMass;
+        return copy;
+    }
+
+    /**
+     * Copies <tt>from</tt> into <tt>to</tt>, reusing the children of <tt>before</tt>, its counterpart in <br>
+     * an earlier snapshot, wherever the child of <tt>from</tt> at the same index isn't in <tt>changed</tt>.
+     */
+    private static void copyBranch(Branch from, Branch before, Branch to, OcTree tree, Set<Branch> changed) {
+        if (from.size > 0) {
+            to.xs = Arrays.copyOf(from.xs, from.size);
+            to.ys = Arrays.copyOf(from.ys, from.size);
+            to.zs = Arrays.copyOf(from.zs, from.size);
+            to.masses = from.masses == null ? null : Arrays.copyOf(from.masses, from.size);
+            to.size = from.size;
+        }
+        to.mass = from.mass;
+        to.massX = from.massX;
+        to.massY = from.massY;
+        to.massZ = from.massZ;
+        if (from.branches == null)
+            return;
+
+        to.branches = new Branch[OCTREE_SIZE];
+        for (int j = 0; j < OCTREE_SIZE; j++) {
+            Branch child = from.branches[j];
+            if (child == null)
+                continue;
+
+            Branch old = before == null || before.branches == null ? null : before.branches[j];
+            if (old != null && !changed.contains(child)) {
+                to.branches[j] = old;
+            } else {
+                to.branches[j] = new Branch(tree, to, child.depth);
+                copyBranch(child, old, to.branches[j], tree, changed);
+            }
+        }
+    }
+
+    /**
+     * Method for removing the point [x, y, z] from the tree, returning whether it was found. <br>
+     * Branches left without points or children are pruned, walking up the parent links,  <br>
+     * and kept around to be reused by later inserts. Adaptive trees also merge leaves     <br>
+     * back into their parent once they underflow.
+     */
+    public boolean remove(double x, double y, double z) {
+        checkWritable();
+        Branch leaf = findLeaf(x, y, z);
+        if (leaf == null)
+            return false;
+
+        int index = leaf.indexOf(x, y, z);
+        if (index < 0)
+            return false;
+
+        removeAt(leaf, index);
+        if (TreeMetrics.ENABLED)
+            metrics.removed();
+        return true;
+    }
+
+    /**
+     * Method for moving the point [oldX, oldY, oldZ] to [newX, newY, newZ].                      <br>
+     * When the point stays within its leaf it is updated in place, otherwise it's removed <br>
+     * and inserted again. Returns the leaf holding the point afterwards, or null when the <br>
+     * old point doesn't exist or the new coordinates are out of bounds, in which case     <br>
+     * nothing changes.
+     */
+    public Branch update(double oldX, double oldY, double oldZ, double newX, double newY, double newZ) {
+        Branch leaf = findLeaf(oldX, oldY, oldZ);
+        if (leaf == null)
+            return null;
+
+        int index = leaf.indexOf(oldX, oldY, oldZ);
+        if (index < 0)
+            return null;
+
+        return move(leaf, index, newX, newY, newZ);
+    }
+
+    /**
+     * Method for moving the <tt>index</tt>-th point of the given leaf to [x, y, z], <br>
+     * skipping the lookup <code>update</code> does. Returns the leaf holding the   <br>
+     * point afterwards, or null when [x, y, z] is out of bounds, in which case     <br>
+     * nothing changes.
+     */
+    public Branch move(Branch leaf, int index, double x, double y, double z) {
+        checkWritable();
+        if (index < 0 || index >= leaf.size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for leaf of size " + leaf.size);
+
+        double nx = x / scale, ny = y / scale, nz = z / scale;
+        if (nx < 0 || nx > 1 || ny < 0 || ny > 1 || nz < 0 || nz > 1)
+            return null;
+
+        // Still in the same cell, so there's nothing to restructure.
+        double mass = leaf.getMass(index);
+        if (findLeaf(x, y, z) == leaf) {
+            if (tracksMass) {
+                addMass(leaf, -mass, leaf.xs[index], leaf.ys[index], leaf.zs[index]);
+                addMass(leaf, mass, x, y, z);
+            }
+            leaf.xs[index] = x;
+            leaf.ys[index] = y;
+            leaf.zs[index] = z;
+            return leaf;
+        }
+
+        removeAt(leaf, index);
+        return insert(x, y, z, mass);
+    }
+
+    private void removeAt(Branch leaf, int index) {
+        if (tracksMass)
+            addMass(leaf, -leaf.getMass(index), leaf.xs[index], leaf.ys[index], leaf.zs[index]);
+        leaf.removeAt(index);
+
+        // Walk up, pruning branches that are left with nothing.
+        Branch branch = leaf;
+        while (branch.parent != null && branch.size == 0 && branch.branches == null) {
+            Branch parent = branch.parent;
+            parent.removeBranch(branch);
+            release(branch);
+            branch = parent;
+        }
+
+        if (!isAdaptive())
+            return;
+
+        // Then merge underflowing parents back into leaves, as far up as that goes.
+        for (branch = branch.branches == null ? branch.parent : branch; branch != null && tryMerge(branch); )
+            branch = branch.parent;
+    }
+
+    /**
+     * Returns a pruned branch for reuse if there is one, otherwise a new one.
+     */
+    private Branch newBranch(Branch parent, int depth) {
+        Branch branch = this.freeBranches;
+        if (branch == null) {
+            if (TreeMetrics.ENABLED)
+                metrics.branchAllocated();
+            return new Branch(this, parent, depth);
+        }
+
+        if (TreeMetrics.ENABLED)
+            metrics.branchReused();
+        this.freeBranches = branch.parent;
+        this.freeBranchCount--;
+        branch.parent = parent;
+        branch.depth = depth;
+        return branch;
+    }
+
+    /**
+     * Keeps a branch that's no longer part of the tree around for reuse.               <br>
+     * Small coordinate arrays are kept as well, since it's likely to become a leaf again; <br>
+     * large ones are dropped, so the free list doesn't hold on to a lot of memory.
+     */
+    private void release(Branch branch) {
+        if (this.freeBranchCount == MAX_FREE_BRANCHES)
+            return;
+
+        if (branch.xs != null && branch.xs.length > MAX_FREE_CAPACITY)
+            branch.xs = branch.ys = branch.zs = branch.masses = null;
+        else if (!tracksMass)
+            branch.masses = null;
+        branch.size = 0;
+        branch.branches = null;
+        branch.mass = branch.massX = branch.massY = branch.massZ = 0;
+        branch.parent = this.freeBranches;
+        this.freeBranches = branch;
+        this.freeBranchCount++;
+    }
+
+    /**
+     * Makes every branch carry the total mass and center of mass of the points below it, <br>
+     * kept up to date by every insert, removal and move, e.g. for {@link BarnesHut}.    <br>
+     * Points already in the tree, and points inserted without a mass, weigh 1.
+     */
+    public OcTree trackMass() {
+        if (!tracksMass) {
+            checkWritable();
+            tracksMass = true;
+            aggregate(this.root);
+        }
+        return this;
+    }
+
+    /**
+     * Returns whether the branches carry mass aggregates, see <code>trackMass()</code>.
+     */
+    public boolean tracksMass() { return this.tracksMass; }
+
+    // Adds a point's mass to the leaf and every branch above it.
+    private static void addMass(Branch leaf, double mass, double x, double y, double z) {
+        for (Branch branch = leaf; branch != null; branch = branch.parent) {
+            branch.mass += mass;
+            branch.massX += mass * x;
+            branch.massY += mass * y;
+            branch.massZ += mass * z;
+        }
+    }
+
+    // Recomputes the aggregates of a whole subtree, bottom up.
+    private void aggregate(Branch branch) {
+        if (branch.xs != null)
+            branch.ensureCapacity(branch.xs.length);
+        branch.mass = branch.massX = branch.massY = branch.massZ = 0;
+        for (int i = 0; i < branch.size; i++) {
+            double mass = branch.masses[i];
+            branch.mass += mass;
+            branch.massX += mass * branch.xs[i];
+            branch.massY += mass * branch.ys[i];
+            branch.massZ += mass * branch.zs[i];
+        }
+        for (int j = 0; j < OCTREE_SIZE && branch.branches != null; j++) {
+            Branch child = branch.branches[j];
+            if (child == null)
+                continue;
+            aggregate(child);
+            branch.mass += child.mass;
+            branch.massX += child.massX;
+            branch.massY += child.massY;
+            branch.massZ += child.massZ;
+        }
+    }
+
+    /**
+     * Method for inserting many points at once, point i being [xs[i], ys[i], zs[i]].            <br>
+     * The points are sorted by their cell code first, after which every subtree is built   <br>
+     * in one go rather than descending from the root for every point, and large subtrees   <br>
+     * are built in parallel on the common pool. Points end up in their leaves in the same  <br>
+     * order as when inserting them one by one. Points out of bounds are skipped.           <br>
+     * Returns the amount of points inserted.
+     */
+    public int insertAll(double[] xs, double[] ys, double[] zs) {
+        return insertAll(xs, ys, zs, null);
+    }
+
+    /**
+     * Bulk version of <code>insert(x, y, z, mass)</code>, see <code>insertAll(xs, ys, zs)</code>. <br>
+     * <tt>masses</tt> may be null, giving every point a mass of 1.
+     */
+    public int insertAll(double[] xs, double[] ys, double[] zs, double[] masses) {
+        checkWritable();
+        if (xs.length != ys.length || xs.length != zs.length || (masses != null && masses.length != xs.length))
+            throw new IllegalArgumentException("Coordinate arrays differ in length (" + xs.length + ", " + ys.length + ", " + zs.length + ")");
+
+        // Adaptive trees are too deep for cell codes, and decide where to split as points come in.
+        if (isAdaptive()) {
+            int n = 0;
+            for (int i = 0; i < xs.length; i++) {
+                if (insert(xs[i], ys[i], zs[i], masses == null ? 1.0d : masses[i]) != null)
+                    n++;
+            }
+            return n;
+        }
+
+        long[] codes = new long[xs.length];
+        int[] indices = new int[xs.length];
+        CellCodes.compute(xs, ys, zs, xs.length, scale, depth, codes);
+
+        // Drop the points out of bounds, compacting the codes in place.
+        int n = 0;
+        for (int i = 0; i < xs.length; i++) {
+            if (codes[i] < 0)
+                continue;
+            codes[n] = codes[i];
+            indices[n++] = i;
+        }
+        CellSort.sort(codes, indices, n, 3 * depth);
+
+        ForkJoinPool.commonPool().invoke(new BulkInsert(this.root, 0, 0, n, codes, indices, xs, ys, zs, masses));
+
+        // Cheaper to sum everything up once than to walk up from every point.
+        if (tracksMass)
+            aggregate(this.root);
+        if (TreeMetrics.ENABLED)
+            metrics.inserted(n);
+        return n;
+    }
+
+    /**
+     * Builds the subtree of one branch from a run of sorted codes that all lie below it.
+     */
+    private class BulkInsert extends RecursiveAction {
+        private final Branch branch;
+        private final int level, from, to;
+        private final long[] codes;
+        private final int[] indices;
+        private final double[] xs, ys, zs, masses;
+
+        private BulkInsert(Branch branch, int level, int from, int to, long[] codes, int[] indices,
+                           double[] xs, double[] ys, double[] zs, double[] masses) {
+            this.branch = branch;
+            this.level = level;
+            this.from = from;
+            this.to = to;
+            this.codes = codes;
+            this.indices = indices;
+            this.xs = xs;
+            this.ys = ys;
+            this.zs = zs;
+            this.masses = masses;
+        }
+
+        @Override
+        protected void compute() {
+            if (level == depth) {
+                branch.ensureCapacity(branch.size + to - from);
+                for (int i = from; i < to; i++)
+                    branch.add(xs[indices[i]], ys[indices[i]], zs[indices[i]], masses == null ? 1.0d : masses[indices[i]]);
+                return;
+            }
+
+            int shift = 3 * (depth - 1 - level);
+            List<BulkInsert> forked = new ArrayList<>();
+
+            for (int start = from, end; start < to; start = end) {
+                int j = (int) (codes[start] >>> shift) & (OCTREE_SIZE - 1);
+                for (end = start + 1; end < to && ((int) (codes[end] >>> shift) & (OCTREE_SIZE - 1)) == j; end++);
+
+                // Only this task touches this branch, so growing it needs no synchronisation.
+                if (branch.branches == null)
+                    branch.branches = new Branch[OCTREE_SIZE];
+                if (branch.branches[j] == null) {
+                    branch.branches[j] = new Branch(OcTree.this, branch, level + 1);
+                    if (TreeMetrics.ENABLED)
+                        metrics.branchAllocated();
+                }
+
+                BulkInsert task = new BulkInsert(branch.branches[j], level + 1, start, end, codes, indices, xs, ys, zs, masses);
+                if (end - start >= BULK_THRESHOLD) {
+                    task.fork();
+                    forked.add(task);
+                } else {
+                    task.compute();
+                }
+            }
+
+            for (BulkInsert task : forked)
+                task.join();
+        }
+    }
 
     /**
      * Method for retrieving the leaf node of this OcTree, given the specified coordinates.<br>
@@ -94,6 +644,68 @@ public class OcTree {
      *              or with coordinates out of bounds.
      */
     public Branch getLeaf(double x, double y, double z) {
+        checkWritable();
+        return descend(x, y, z, true);
+    }
+
+    /**
+     * Method for looking up the leaf node of the given coordinates, without growing the tree. <br>
+     * Returns null when the coordinates are out of bounds or when no branch exists there yet.
+     */
+    public Branch findLeaf(double x, double y, double z) {
+        return descend(x, y, z, false);
+    }
+
+    /**
+     * Bulk version of <code>findLeaf</code>, storing the leaf of every point in <tt>leaves</tt>. <br>
+     * The cell codes of the whole batch are computed up front, see {@link CellCodes},  <br>
+     * after which each lookup is a plain walk down the branches.                      <br>
+     * Returns the amount of points for which a leaf was found.
+     */
+    public int findLeaves(double[] xs, double[] ys, double[] zs, Branch[] leaves) {
+        if (xs.length != ys.length || xs.length != zs.length || leaves.length < xs.length)
+            throw new IllegalArgumentException("Array lengths differ (" + xs.length + ", " + ys.length + ", " + zs.length + ", " + leaves.length + ")");
+
+        int n = 0;
+        if (isAdaptive()) {
+            for (int i = 0; i < xs.length; i++) {
+                if ((leaves[i] = findLeaf(xs[i], ys[i], zs[i])) != null)
+                    n++;
+            }
+            return n;
+        }
+
+        long[] codes = new long[xs.length];
+        CellCodes.compute(xs, ys, zs, xs.length, scale, depth, codes);
+        for (int i = 0; i < xs.length; i++) {
+            Branch leaf = codes[i] < 0 ? null : this.root;
+            for (int level = 0; leaf != null && level < depth; level++)
+                leaf = leaf.branches == null ? null : leaf.branches[(int) (codes[i] >>> 3 * (depth - 1 - level)) & 7];
+            if ((leaves[i] = leaf) != null)
+                n++;
+        }
+        return n;
+    }
+
+    /**
+     * Returns whether the exact point [x, y, z] is stored in the tree.
+     */
+    public boolean contains(double x, double y, double z) {
+        Branch leaf = findLeaf(x, y, z);
+        return leaf != null && leaf.indexOf(x, y, z) >= 0;
+    }
+
+    private Branch descend(double x, double y, double z, boolean grow) {
+        if (!TreeMetrics.ENABLED)
+            return walk(x, y, z, grow);
+
+        long start = metrics.lookup();
+        Branch leaf = walk(x, y, z, grow);
+        metrics.lookedUp(start);
+        return leaf;
+    }
+
+    private Branch walk(double x, double y, double z, boolean grow) {
         x /= scale;
         y /= scale;
         z /= scale;
@@ -104,14 +716,22 @@ public class OcTree {
         Branch leaf = this.root;
 
         for (int i = 0, j; i < depth; i++) {
+            // Adaptive trees end wherever a branch hasn't been split.
+            if (leafCapacity > 0 && leaf.branches == null)
+                break;
+
             // Indexing, as described at the top of the class file.
             j = FMath.round(x) + FMath.round(y) * 4 + FMath.round(z) * 2;
 
-            if (leaf.branches == null)
-                leaf.branches = new Branch[OCTREE_SIZE];
+            if (leaf.branches == null || leaf.branches[j] == null) {
+                if (!grow)
+                    return null;
 
-            if (leaf.branches[j] == null)
-                leaf.branches[j] = new Branch(this, leaf, i + 1);
+                if (leaf.branches == null)
+                    leaf.branches = new Branch[OCTREE_SIZE];
+
+                leaf.branches[j] = newBranch(leaf, i + 1);
+            }
 
             // Branch down (maybe finally a leaf? :D )
             leaf = leaf.branches[j];
@@ -127,60 +747,695 @@ public class OcTree {
 
 
     /**
-     * Method which recursively searches through the tree to find all of its leaves. <br>
+     * Method which computes the cell code of the given coordinates, or -1 when they're out of bounds. <br>
+     * The code is built from the same descent as <code>getLeaf</code>, appending the 3 bit    <br>
+     * branch index <tt>i = |x| + 4|y| + 2|z|</tt> at every level, so the first level ends up  <br>
+     * in the highest bits and all cells of a branch have consecutive codes.
+     */
+    public static long getCellCode(double x, double y, double z, double scale, int depth) {
+        x /= scale;
+        y /= scale;
+        z /= scale;
+        if (x < 0 || x > 1 || y < 0 || y > 1 || z < 0 || z > 1)
+            return -1;
+
+        long code = 0;
+        for (int i = 0, rx, ry, rz; i < depth; i++) {
+            rx = FMath.round(x);
+            ry = FMath.round(y);
+            rz = FMath.round(z);
+            code = (code << 3) | (rx + ry * 4 + rz * 2);
+
+            x = (2 * x - rx);
+            y = (2 * y - ry);
+            z = (2 * z - rz);
+        }
+        return code;
+    }
+
+    /**
+     * Method which searches through the given branch to find all of its leaves. <br>
      * This then returns the result
      */
     public List<Branch> getLeaves(Branch branchToSearch) {
         List<Branch> resultingBranches = new ArrayList<>();
+        forEachLeaf(branchToSearch, resultingBranches::add);
+        return resultingBranches;
+    }
 
-        if (branchToSearch.isLeaf()) {
-            resultingBranches.add(branchToSearch);
-        } else {
-            // Oh yes, recursion >:)
-            for (int i = 0; i < OCTREE_SIZE && branchToSearch.branches != null; i++) {
-                if (branchToSearch.branches[i] != null) {
-                    resultingBranches.addAll(getLeaves(branchToSearch.branches[i]));
-                }
-            }
+    /**
+     * Visits all the leaves in the tree, in the same order as <code>getLeaves</code>. <br>
+     * The tree is walked with an explicit stack, so no intermediate lists are built.
+     */
+    public void forEachLeaf(Consumer<? super Branch> consumer) {
+        forEachLeaf(this.root, consumer);
+    }
+
+    public void forEachLeaf(Branch branch, Consumer<? super Branch> consumer) {
+        if (!TreeMetrics.ENABLED) {
+            new LeafSpliterator(branch, depth).forEachRemaining(consumer);
+            return;
         }
-        return resultingBranches;
+
+        long start = metrics.traversal();
+        new LeafSpliterator(branch, depth).forEachRemaining(consumer);
+        metrics.traversed(start, "forEachLeaf");
+    }
+
+    /**
+     * Returns an iterator over all the leaves in the tree.
+     */
+    public Iterator<Branch> leafIterator() {
+        return Spliterators.iterator(leafSpliterator());
+    }
+
+    /**
+     * Returns a spliterator over all the leaves in the tree, which splits by handing out <br>
+     * whole subtrees, so <code>leafStream().parallel()</code> spreads subtrees over cores.
+     */
+    public Spliterator<Branch> leafSpliterator() {
+        return new LeafSpliterator(this.root, depth);
+    }
+
+    /**
+     * Returns a stream of all the leaves in the tree. Call <code>parallel()</code> on it to scan in parallel.
+     */
+    public Stream<Branch> leafStream() {
+        return StreamSupport.stream(leafSpliterator(), false);
     }
 
     /**
      * Method for retrieving all the leaves in the tree.
      */
     public List<Branch> getLeaves() {
-        if (this.root.branches == null)
-            return new ArrayList<>();
-
+        // With an adaptive tree, the root itself can be the only leaf.
         return getLeaves(this.root);
     }
 
     /**
-     * Method which returns the depth of this tree.
+     * Method which visits every point inside the axis aligned box [min, max].            <br>
+     * Branches whose cell lies outside of the box are skipped as a whole, and branches <br>
+     * whose cell lies completely inside of it are visited without checking each point. <br>
+     * Unlike <code>getLeaf</code>, this never grows any branches.
+     */
+    public void queryRange(double minX, double minY, double minZ,
+                           double maxX, double maxY, double maxZ, PointConsumer consumer) {
+        if (!TreeMetrics.ENABLED) {
+            queryRange(this.root, 0, 0, 0, scale, minX, minY, minZ, maxX, maxY, maxZ, consumer);
+            return;
+        }
+
+        long start = metrics.traversal();
+        queryRange(this.root, 0, 0, 0, scale, minX, minY, minZ, maxX, maxY, maxZ, consumer);
+        metrics.traversed(start, "queryRange");
+    }
+
+    public void queryRange(Vector3d min, Vector3d max, PointConsumer consumer) {
+        queryRange(min.x, min.y, min.z, max.x, max.y, max.z, consumer);
+    }
+
+    private void queryRange(Branch branch, double ox, double oy, double oz, double size,
+                            double minX, double minY, double minZ,
+                            double maxX, double maxY, double maxZ, PointConsumer consumer) {
+        // No overlap at all, so nothing in here can match.
+        if (ox > maxX || oy > maxY || oz > maxZ || ox + size < minX || oy + size < minY || oz + size < minZ)
+            return;
+
+        // The whole cell is inside the box, so everything in here matches.
+        if (ox >= minX && oy >= minY && oz >= minZ && ox + size <= maxX && oy + size <= maxY && oz + size <= maxZ) {
+            forEachPoint(branch, consumer);
+            return;
+        }
+
+        for (int i = 0; i < branch.size; i++) {
+            double x = branch.xs[i], y = branch.ys[i], z = branch.zs[i];
+            if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ)
+                consumer.accept(x, y, z);
+        }
+
+        double half = size / 2;
+        for (int j = 0; j < OCTREE_SIZE && branch.branches != null; j++) {
+            if (branch.branches[j] != null) {
+                // Inverse of the indexing, i = |x| + 4|y| + 2|z|.
+                queryRange(branch.branches[j], ox + (j & 1) * half, oy + (j >> 2 & 1) * half, oz + (j >> 1 & 1) * half,
+                        half, minX, minY, minZ, maxX, maxY, maxZ, consumer);
+            }
+        }
+    }
+
+    /**
+     * Visits every point in the tree, leaf by leaf, without creating any vectors.
+     */
+    public void forEachPoint(PointConsumer consumer) {
+        forEachPoint(this.root, consumer);
+    }
+
+    private void forEachPoint(Branch branch, PointConsumer consumer) {
+        branch.forEachPoint(consumer);
+        for (int i = 0; i < OCTREE_SIZE && branch.branches != null; i++) {
+            if (branch.branches[i] != null)
+                forEachPoint(branch.branches[i], consumer);
+        }
+    }
+
+    /**
+     * Visits every point inside the view frustum of the given view projection matrix.
+     */
+    public void queryFrustum(Matrix4f viewProjection, PointConsumer consumer) {
+        queryFrustum(new Frustum(viewProjection), consumer);
+    }
+
+    /**
+     * Visits every point inside the frustum. Cells entirely outside are skipped     <br>
+     * without looking at anything below them, and cells entirely inside are visited <br>
+     * without testing their points.
+     */
+    public void queryFrustum(Frustum frustum, PointConsumer consumer) {
+        queryFrustum(this.root, 0, 0, 0, scale, frustum, consumer);
+    }
+
+    private void queryFrustum(Branch branch, double ox, double oy, double oz, double size, Frustum frustum, PointConsumer consumer) {
+        int side = frustum.classify(ox, oy, oz, ox + size, oy + size, oz + size);
+        if (side == Frustum.OUTSIDE)
+            return;
+        if (side == Frustum.INSIDE) {
+            forEachPoint(branch, consumer);
+            return;
+        }
+
+        for (int i = 0; i < branch.size; i++) {
+            if (frustum.contains(branch.xs[i], branch.ys[i], branch.zs[i]))
+                consumer.accept(branch.xs[i], branch.ys[i], branch.zs[i]);
+        }
+
+        double half = size / 2;
+        for (int j = 0; j < OCTREE_SIZE && branch.branches != null; j++) {
+            if (branch.branches[j] != null)
+                queryFrustum(branch.branches[j], ox + (j & 1) * half, oy + (j >> 2 & 1) * half, oz + (j >> 1 & 1) * half, half, frustum, consumer);
+        }
+    }
+
+    /**
+     * Visits every leaf whose cell is (partly) inside the view frustum of the given view projection matrix.
+     */
+    public void queryFrustumLeaves(Matrix4f viewProjection, Consumer<Branch> consumer) {
+        queryFrustumLeaves(new Frustum(viewProjection), consumer);
+    }
+
+    /**
+     * Visits every leaf whose cell is (partly) inside the frustum, e.g. for culling whole cells while drawing.
+     */
+    public void queryFrustumLeaves(Frustum frustum, Consumer<Branch> consumer) {
+        queryFrustumLeaves(this.root, 0, 0, 0, scale, frustum, consumer);
+    }
+
+    private void queryFrustumLeaves(Branch branch, double ox, double oy, double oz, double size, Frustum frustum, Consumer<Branch> consumer) {
+        int side = frustum.classify(ox, oy, oz, ox + size, oy + size, oz + size);
+        if (side == Frustum.OUTSIDE)
+            return;
+        if (side == Frustum.INSIDE) {
+            // Not through forEachLeaf, which would time every inside subtree as a traversal of its own.
+            new LeafSpliterator(branch, depth).forEachRemaining(consumer);
+            return;
+        }
+
+        if (branch.isLeaf())
+            consumer.accept(branch);
+
+        double half = size / 2;
+        for (int j = 0; j < OCTREE_SIZE && branch.branches != null; j++) {
+            if (branch.branches[j] != null)
+                queryFrustumLeaves(branch.branches[j], ox + (j & 1) * half, oy + (j >> 2 & 1) * half, oz + (j >> 1 & 1) * half, half, frustum, consumer);
+        }
+    }
+
+    /**
+     * Callback for the points hit by a ray, see <code>castRay</code>. <br>
+     * <tt>t</tt> is the position along the ray, <tt>origin + t · direction</tt> being the closest point to the hit. <br>
+     * Return false to stop the cast.
+     */
+    public interface RayConsumer {
+        boolean accept(Branch leaf, int index, double t);
+    }
+
+    /**
+     * Result of a <code>castRay</code> for the first hit, reusable between casts.
+     */
+    public static class RayHit {
+        public Branch leaf;
+        public int index = -1;
+        public double t = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Casts the ray <tt>origin + t · direction</tt>, t ≥ 0, and finds the point       <br>
+     * within <tt>radius</tt> of it with the smallest t, e.g. for mouse picking with the <br>
+     * ray JOML's <code>Matrix4f.unprojectRay</code> gives for the mouse position.       <br>
+     * Walks the cells front to back, and stops once no cell left can hold a closer hit. <br>
+     * Returns whether anything was hit, the hit itself is stored in <tt>hit</tt>.
+     * @throws IllegalArgumentException when the direction is zero or not finite.
+     */
+    public boolean castRay(double ox, double oy, double oz, double dx, double dy, double dz, double radius, RayHit hit) {
+        checkDirection(dx, dy, dz);
+        hit.leaf = null;
+        hit.index = -1;
+        hit.t = Double.POSITIVE_INFINITY;
+        castRay(this.root, 0, 0, 0, scale, ox, oy, oz, dx, dy, dz, radius, hit, null);
+        return hit.leaf != null;
+    }
+
+    /**
+     * Casts the ray <tt>origin + t · direction</tt>, t ≥ 0, and visits every point within <br>
+     * <tt>radius</tt> of it. Cells are visited front to back, but the hits within a cell, <br>
+     * and in overlapping cells near the ray, aren't ordered by t.
+     * @throws IllegalArgumentException when the direction is zero or not finite.
+     */
+    public void castRay(double ox, double oy, double oz, double dx, double dy, double dz, double radius, RayConsumer consumer) {
+        checkDirection(dx, dy, dz);
+        castRay(this.root, 0, 0, 0, scale, ox, oy, oz, dx, dy, dz, radius, null, consumer);
+    }
+
+    // Returns false once the consumer wants to stop.
+    private boolean castRay(Branch branch, double bx, double by, double bz, double size,
+                            double ox, double oy, double oz, double dx, double dy, double dz,
+                            double radius, RayHit hit, RayConsumer consumer) {
+        // The cell, grown by the radius, is all a hit in here can be in.
+        double enter = rayEnter(bx - radius, by - radius, bz - radius, bx + size + radius, by + size + radius, bz + size + radius,
+                ox, oy, oz, dx, dy, dz);
+        if (enter == Double.POSITIVE_INFINITY || (hit != null && enter > hit.t))
+            return true;
+
+        double length2 = dx * dx + dy * dy + dz * dz;
+        for (int i = 0; i < branch.size; i++) {
+            double px = branch.xs[i] - ox, py = branch.ys[i] - oy, pz = branch.zs[i] - oz;
+            double t = (px * dx + py * dy + pz * dz) / length2;
+            if (t < 0)
+                continue;
+
+            double qx = px - t * dx, qy = py - t * dy, qz = pz - t * dz;
+            if (qx * qx + qy * qy + qz * qz > radius * radius)
+                continue;
+
+            if (hit != null) {
+                if (t < hit.t) {
+                    hit.leaf = branch;
+                    hit.index = i;
+                    hit.t = t;
+                }
+            } else if (!consumer.accept(branch, i, t))
+                return false;
+        }
+
+        if (branch.branches == null)
+            return true;
+
+        // Flipping the index bits of the axes the ray goes down along makes 0..7 a front to back order.
+        int flip = (dx < 0 ? 1 : 0) | (dy < 0 ? 4 : 0) | (dz < 0 ? 2 : 0);
+        double half = size / 2;
+        for (int k = 0; k < OCTREE_SIZE; k++) {
+            int j = k ^ flip;
+            if (branch.branches[j] != null
+                    && !castRay(branch.branches[j], bx + (j & 1) * half, by + (j >> 2 & 1) * half, bz + (j >> 1 & 1) * half, half,
+                                ox, oy, oz, dx, dy, dz, radius, hit, consumer))
+                return false;
+        }
+        return true;
+    }
+
+    // A zero direction would make every t 0 / 0.
+    private static void checkDirection(double dx, double dy, double dz) {
+        double length2 = dx * dx + dy * dy + dz * dz;
+        if (!(length2 > 0) || length2 == Double.POSITIVE_INFINITY)
+            throw new IllegalArgumentException("Ray direction must be non-zero and finite, got [" + dx + ", " + dy + ", " + dz + "]");
+    }
+
+    /**
+     * Returns the t ≥ 0 at which the ray enters the box, or positive infinity if it misses it.
+     */
+    private static double rayEnter(double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+                                   double ox, double oy, double oz, double dx, double dy, double dz) {
+        double near = 0, far = Double.POSITIVE_INFINITY;
+
+        if (dx == 0) {
+            if (ox < minX || ox > maxX)
+                return Double.POSITIVE_INFINITY;
+        } else {
+            double t1 = (minX - ox) / dx, t2 = (maxX - ox) / dx;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+
+        if (dy == 0) {
+            if (oy < minY || oy > maxY)
+                return Double.POSITIVE_INFINITY;
+        } else {
+            double t1 = (minY - oy) / dy, t2 = (maxY - oy) / dy;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+
+        if (dz == 0) {
+            if (oz < minZ || oz > maxZ)
+                return Double.POSITIVE_INFINITY;
+        } else {
+            double t1 = (minZ - oz) / dz, t2 = (maxZ - oz) / dz;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+
+        return near <= far ? near : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Method which returns the depth of this tree, or the maximum depth of an adaptive tree.
      */
     public int getDepth() { return this.depth; }
 
-    public int getMaxNodeCount() {
-        return OCTREE_SIZE << depth; // (1 << dimensions) << depth = 2^(dimensions * depth).
+    /**
+     * Returns whether this tree splits leaves on capacity, rather than having a fixed depth.
+     */
+    public boolean isAdaptive() { return this.leafCapacity > 0; }
+
+    /**
+     * Returns the amount of points a leaf of an adaptive tree holds before it's split, or 0.
+     */
+    public int getLeafCapacity() { return this.leafCapacity; }
+
+    public double getScale() { return this.scale; }
+
+    /**
+     * Method which returns the root branch, which covers [0, scale] on every axis.
+     */
+    public Branch getRoot() { return this.root; }
+
+    /**
+     * Returns the most branches the tree can have, the root included like <code>getNodeCount</code>: <br>
+     * <tt>1 + 8 + 8^2 + ... + 8^depth</tt>, or <tt>Long.MAX_VALUE</tt> when that doesn't fit.
+     */
+    public long getMaxNodeCount() {
+        long count = 0, level = 1;
+        for (int i = 0; i <= depth; i++) {
+            count += level;
+            if (i < depth && level > (Long.MAX_VALUE - count) / OCTREE_SIZE)
+                return Long.MAX_VALUE;
+            level *= OCTREE_SIZE;
+        }
+        return count;
+    }
+
+    /**
+     * Counts the branches that currently exist in the tree, the root included.
+     */
+    public long getNodeCount() {
+        return countNodes(this.root);
+    }
+
+    private static long countNodes(Branch branch) {
+        long count = 1;
+        for (int j = 0; j < OCTREE_SIZE && branch.branches != null; j++) {
+            if (branch.branches[j] != null)
+                count += countNodes(branch.branches[j]);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the metrics of this tree, or null unless the JVM runs with <code>-Dproject.data.metrics=true</code>.
+     */
+    public TreeMetrics getMetrics() { return this.metrics; }
+
+    private void walkShape(long[] nodes, long[] occupancy) {
+        walkShape(this.root, 0, nodes, occupancy);
+    }
+
+    // Reads every field once, so a tree changing meanwhile can't trip it up.
+    private void walkShape(Branch branch, int level, long[] nodes, long[] occupancy) {
+        nodes[level]++;
+        Branch[] children = branch.branches;
+        if (children == null || level >= depth || level + 1 >= TreeMetrics.MAX_LEVELS) {
+            occupancy[TreeMetrics.bucket(branch.size)]++;
+            return;
+        }
+        for (Branch child : children) {
+            if (child != null)
+                walkShape(child, level + 1, nodes, occupancy);
+        }
+    }
+
+    /**
+     * Depth first walk over the leaves below a branch, keeping the branches still to visit <br>
+     * on a stack. The top of the stack is visited first, so splitting hands out its top half.
+     */
+    private static class LeafSpliterator implements Spliterator<Branch> {
+        private final int depth;
+        private Branch[] stack;
+        private int size;
+
+        LeafSpliterator(Branch branch, int depth) {
+            this.depth = depth;
+            this.stack = new Branch[Math.max(depth, 1) * (OCTREE_SIZE - 1) + 1];
+            this.stack[this.size++] = branch;
+        }
+
+        private LeafSpliterator(Branch[] stack, int size, int depth) {
+            this.depth = depth;
+            this.stack = stack;
+            this.size = size;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Branch> action) {
+            while (size > 0) {
+                Branch branch = stack[--size];
+                stack[size] = null;
+                if (branch.isLeaf()) {
+                    action.accept(branch);
+                    return true;
+                }
+                pushChildren(branch);
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Branch> action) {
+            while (size > 0) {
+                Branch branch = stack[--size];
+                stack[size] = null;
+                if (branch.isLeaf())
+                    action.accept(branch);
+                else
+                    pushChildren(branch);
+            }
+        }
+
+        private void pushChildren(Branch branch) {
+            // Pushed in reverse, so the children are visited in index order.
+            for (int i = OCTREE_SIZE - 1; i >= 0 && branch.branches != null; i--) {
+                if (branch.branches[i] != null) {
+                    if (size == stack.length)
+                        stack = Arrays.copyOf(stack, size << 1);
+                    stack[size++] = branch.branches[i];
+                }
+            }
+        }
+
+        @Override
+        public Spliterator<Branch> trySplit() {
+            // A single subtree can't be handed out, so open it up first.
+            while (size == 1 && !stack[0].isLeaf() && stack[0].branches != null) {
+                Branch branch = stack[0];
+                stack[--size] = null;
+                pushChildren(branch);
+            }
+            if (size < 2)
+                return null;
+
+            int half = size >>> 1;
+            // Everything above the top of the stack is null, so this copies exactly the top half.
+            Branch[] prefix = Arrays.copyOfRange(stack, half, half + stack.length);
+            Arrays.fill(stack, half, size, null);
+
+            LeafSpliterator split = new LeafSpliterator(prefix, size - half, depth);
+            size = half;
+            return split;
+        }
+
+        @Override
+        public long estimateSize() {
+            // Upper bound of 8 leaves per level below every pending branch.
+            long estimate = 0;
+            for (int i = 0; i < size && estimate >= 0; i++)
+                estimate += 1L << (3 * Math.min(Math.max(depth - stack[i].depth, 0), 20));
+            return estimate < 0 ? Long.MAX_VALUE : estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | NONNULL;
+        }
     }
 
     /**
      * Branch class
      */
     public static class Branch {
-        public List<Vector3d> data = null;
+        private static final int INITIAL_CAPACITY = 4;
+
+        /**
+         * Coordinates of the points in this branch, stored as separate arrays <br>
+         * so adding a point doesn't allocate. Only the first <tt>size</tt>    <br>
+         * entries are in use.
+         */
+        public double[] xs = null, ys = null, zs = null;
+        public int size = 0;
         public Branch[] branches = null;
         public Branch parent;
         public OcTree root;
         public int depth;
 
+        /**
+         * Masses of the points in this branch, only there when the tree tracks mass.
+         */
+        public double[] masses = null;
+
+        /**
+         * Total mass of all points below this branch and the mass weighted sums    <br>
+         * of their coordinates, so the center of mass is <tt>massX / mass</tt> etc. <br>
+         * Only kept when the tree tracks mass.
+         */
+        public double mass = 0, massX = 0, massY = 0, massZ = 0;
+
         protected Branch(OcTree root, Branch parent, int depth) {
             this.parent = parent;
             this.depth = depth;
             this.root = root;
         }
 
+        /**
+         * Adds a point to this branch, growing the coordinate arrays when they're full.
+         */
+        protected void add(double x, double y, double z) {
+            add(x, y, z, 1.0d);
+        }
+
+        /**
+         * Adds a point with a mass to this branch; the mass is dropped when the tree doesn't track mass. <br>
+         * Leaves the aggregates alone, those are up to the tree.
+         */
+        protected void add(double x, double y, double z, double mass) {
+            if (this.xs == null)
+                ensureCapacity(INITIAL_CAPACITY);
+            else if (this.size == this.xs.length)
+                ensureCapacity(this.size << 1);
+            else if (this.masses == null && this.root.tracksMass)
+                ensureCapacity(this.xs.length);
+
+            this.xs[this.size] = x;
+            this.ys[this.size] = y;
+            this.zs[this.size] = z;
+            if (this.masses != null)
+                this.masses[this.size] = mass;
+            this.size++;
+        }
+
+        /**
+         * Returns the mass of the <tt>index</tt>-th point, 1 when the tree doesn't track mass.
+         */
+        public double getMass(int index) {
+            return this.masses == null ? 1.0d : this.masses[index];
+        }
+
+        public double getCenterX() { return this.massX / this.mass; }
+
+        public double getCenterY() { return this.massY / this.mass; }
+
+        public double getCenterZ() { return this.massZ / this.mass; }
+
+        /**
+         * Returns the index of the point [x, y, z] in this branch, or -1 if it's not in here.
+         */
+        public int indexOf(double x, double y, double z) {
+            for (int i = 0; i < this.size; i++) {
+                if (this.xs[i] == x && this.ys[i] == y && this.zs[i] == z)
+                    return i;
+            }
+            return -1;
+        }
+
+        /**
+         * Removes the <tt>index</tt>-th point, keeping the others in order.
+         */
+        protected void removeAt(int index) {
+            int tail = this.size - index - 1;
+            System.arraycopy(this.xs, index + 1, this.xs, index, tail);
+            System.arraycopy(this.ys, index + 1, this.ys, index, tail);
+            System.arraycopy(this.zs, index + 1, this.zs, index, tail);
+            if (this.masses != null)
+                System.arraycopy(this.masses, index + 1, this.masses, index, tail);
+            this.size--;
+        }
+
+        /**
+         * Detaches the given child, dropping the child array once it's empty.
+         */
+        protected void removeBranch(Branch child) {
+            boolean empty = true;
+            for (int j = 0; j < OCTREE_SIZE; j++) {
+                if (this.branches[j] == child)
+                    this.branches[j] = null;
+                else if (this.branches[j] != null)
+                    empty = false;
+            }
+            if (empty)
+                this.branches = null;
+        }
+
+        /**
+         * Makes sure the coordinate arrays can hold at least <tt>capacity</tt> points.
+         */
+        protected void ensureCapacity(int capacity) {
+            if (this.xs == null) {
+                this.xs = new double[capacity];
+                this.ys = new double[capacity];
+                this.zs = new double[capacity];
+            } else if (capacity > this.xs.length) {
+                this.xs = Arrays.copyOf(this.xs, capacity);
+                this.ys = Arrays.copyOf(this.ys, capacity);
+                this.zs = Arrays.copyOf(this.zs, capacity);
+            }
+
+            if (this.root.tracksMass) {
+                if (this.masses == null) {
+                    // Points added before the tree tracked mass weigh 1.
+                    this.masses = new double[this.xs.length];
+                    Arrays.fill(this.masses, 0, this.size, 1.0d);
+                } else if (this.masses.length < this.xs.length) {
+                    this.masses = Arrays.copyOf(this.masses, this.xs.length);
+                }
+            }
+        }
+
+        /**
+         * Visits every point in this branch.
+         */
+        public void forEachPoint(PointConsumer consumer) {
+            for (int i = 0; i < this.size; i++)
+                consumer.accept(this.xs[i], this.ys[i], this.zs[i]);
+        }
+
+        /**
+         * Returns the points in this branch as vectors.                  <br>
+         * This creates a new vector for every point, so prefer           <br>
+         * <code>forEachPoint</code> or the coordinate arrays in hot code.
+         */
+        public List<Vector3d> getPoints() {
+            List<Vector3d> points = new ArrayList<>(this.size);
+            for (int i = 0; i < this.size; i++)
+                points.add(new Vector3d(this.xs[i], this.ys[i], this.zs[i]));
+            return points;
+        }
+
         /** Checks whether the branch is the first in the series.
          *  An OcTreeBranch can both be a first branch and a leaf at the same time
          *  with [Depth = 1].
@@ -194,7 +1449,7 @@ public class OcTree {
          * that doesn't contain any data.
          **/
         public boolean isEmptyBranch() {
-            return this.data == null;
+            return this.size == 0;
         }
 
         /**
@@ -203,7 +1458,7 @@ public class OcTree {
          * since branches don't.
          */
         public boolean isLeaf() {
-            return this.data != null && this.data.size() > 0;
+            return this.size > 0;
         }
     }
 }
@@ -0,0 +1,283 @@
+package project.data;
+
+import java.util.Arrays;
+
+/** <tt>
+ * Nearest neighbour and radius searches on an {@link OcTree}.                   <br>
+ * Both searches are best-first: branches are queued by the distance from the   <br>
+ * query point to their cell, which follows from the tree's scale and halves at <br>
+ * every level, and cells further away than what has been found so far are      <br>
+ * never opened. The queue and result buffers are kept between searches, so a  <br>
+ * search only allocates when it needs more room than any search before it.    <br>
+ * A search object is therefore not thread safe; use one per thread.
+ * </tt>
+ */
+public class OcTreeSearch {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final OcTree tree;
+
+    // Min-heap of branches to visit, keyed on the squared distance to their cell.
+    private OcTree.Branch[] nodes = new OcTree.Branch[INITIAL_CAPACITY];
+    private double[] nodeDistances = new double[INITIAL_CAPACITY];
+    private double[] nodeXs = new double[INITIAL_CAPACITY], nodeYs = new double[INITIAL_CAPACITY], nodeZs = new double[INITIAL_CAPACITY];
+    private double[] nodeSizes = new double[INITIAL_CAPACITY];
+    private int nodeCount;
+
+    // Max-heap of the best points found so far, keyed on their squared distance. Sorted once a search is done.
+    private double[] distances = new double[INITIAL_CAPACITY];
+    private double[] xs = new double[INITIAL_CAPACITY], ys = new double[INITIAL_CAPACITY], zs = new double[INITIAL_CAPACITY];
+    private int count;
+
+    public OcTreeSearch(OcTree tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * Method which finds the <tt>k</tt> points closest to [x, y, z].                <br>
+     * Returns the amount of points found, which is less than <tt>k</tt> when the    <br>
+     * tree doesn't hold that many. The points can then be read, closest first,     <br>
+     * through <code>getX(i)</code>, <code>getY(i)</code>, <code>getZ(i)</code> and <code>getDistance(i)</code>.
+     */
+    public int nearest(double x, double y, double z, int k) {
+        if (!TreeMetrics.ENABLED)
+            return findNearest(x, y, z, k);
+
+        TreeMetrics metrics = tree.getMetrics();
+        long start = metrics.traversal();
+        int found = findNearest(x, y, z, k);
+        metrics.traversed(start, "nearest");
+        return found;
+    }
+
+    private int findNearest(double x, double y, double z, int k) {
+        count = 0;
+        if (k <= 0)
+            return 0;
+        if (distances.length < k)
+            growResults(k);
+
+        nodeCount = 0;
+        OcTree.Branch root = tree.getRoot();
+        push(root, cellDistance(x, y, z, 0, 0, 0, tree.getScale()), 0, 0, 0, tree.getScale());
+
+        while (nodeCount > 0) {
+            // Everything left in the queue is further away than the worst point we kept.
+            if (count == k && nodeDistances[0] >= distances[0])
+                break;
+
+            OcTree.Branch branch = nodes[0];
+            double ox = nodeXs[0], oy = nodeYs[0], oz = nodeZs[0], half = nodeSizes[0] / 2;
+            pop();
+
+            for (int i = 0; i < branch.size; i++) {
+                double dx = branch.xs[i] - x, dy = branch.ys[i] - y, dz = branch.zs[i] - z;
+                double distance = dx * dx + dy * dy + dz * dz;
+                if (count < k)
+                    offer(distance, branch.xs[i], branch.ys[i], branch.zs[i]);
+                else if (distance < distances[0])
+                    replaceWorst(distance, branch.xs[i], branch.ys[i], branch.zs[i]);
+            }
+
+            for (int j = 0; j < 8 && branch.branches != null; j++) {
+                if (branch.branches[j] == null)
+                    continue;
+
+                // Inverse of the indexing, i = |x| + 4|y| + 2|z|.
+                double cx = ox + (j & 1) * half, cy = oy + (j >> 2 & 1) * half, cz = oz + (j >> 1 & 1) * half;
+                double distance = cellDistance(x, y, z, cx, cy, cz, half);
+                if (count < k || distance < distances[0])
+                    push(branch.branches[j], distance, cx, cy, cz, half);
+            }
+        }
+        nodeCount = 0;
+        sortResults();
+        return count;
+    }
+
+    /**
+     * Method which visits every point within distance <tt>r</tt> of [x, y, z], <br>
+     * closest branches first. Returns the amount of points visited.
+     */
+    public int withinRadius(double x, double y, double z, double r, PointConsumer consumer) {
+        if (!TreeMetrics.ENABLED)
+            return findWithinRadius(x, y, z, r, consumer);
+
+        TreeMetrics metrics = tree.getMetrics();
+        long start = metrics.traversal();
+        int found = findWithinRadius(x, y, z, r, consumer);
+        metrics.traversed(start, "withinRadius");
+        return found;
+    }
+
+    private int findWithinRadius(double x, double y, double z, double r, PointConsumer consumer) {
+        double bound = r * r;
+        int found = 0;
+
+        nodeCount = 0;
+        double rootDistance = cellDistance(x, y, z, 0, 0, 0, tree.getScale());
+        if (rootDistance <= bound)
+            push(tree.getRoot(), rootDistance, 0, 0, 0, tree.getScale());
+
+        while (nodeCount > 0) {
+            OcTree.Branch branch = nodes[0];
+            double ox = nodeXs[0], oy = nodeYs[0], oz = nodeZs[0], half = nodeSizes[0] / 2;
+            pop();
+
+            for (int i = 0; i < branch.size; i++) {
+                double dx = branch.xs[i] - x, dy = branch.ys[i] - y, dz = branch.zs[i] - z;
+                if (dx * dx + dy * dy + dz * dz <= bound) {
+                    consumer.accept(branch.xs[i], branch.ys[i], branch.zs[i]);
+                    found++;
+                }
+            }
+
+            for (int j = 0; j < 8 && branch.branches != null; j++) {
+                if (branch.branches[j] == null)
+                    continue;
+
+                double cx = ox + (j & 1) * half, cy = oy + (j >> 2 & 1) * half, cz = oz + (j >> 1 & 1) * half;
+                double distance = cellDistance(x, y, z, cx, cy, cz, half);
+                if (distance <= bound)
+                    push(branch.branches[j], distance, cx, cy, cz, half);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the amount of points found by the last <code>nearest</code> search.
+     */
+    public int size() { return this.count; }
+
+    public double getX(int i) { return this.xs[i]; }
+
+    public double getY(int i) { return this.ys[i]; }
+
+    public double getZ(int i) { return this.zs[i]; }
+
+    /**
+     * Returns the distance from the query point to the i-th closest point.
+     */
+    public double getDistance(int i) { return Math.sqrt(this.distances[i]); }
+
+    /**
+     * Squared distance from [x, y, z] to the cell with origin [ox, oy, oz] and the given size.
+     */
+    private static double cellDistance(double x, double y, double z, double ox, double oy, double oz, double size) {
+        double dx = Math.max(Math.max(ox - x, x - (ox + size)), 0);
+        double dy = Math.max(Math.max(oy - y, y - (oy + size)), 0);
+        double dz = Math.max(Math.max(oz - z, z - (oz + size)), 0);
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private void push(OcTree.Branch branch, double distance, double ox, double oy, double oz, double size) {
+        if (nodeCount == nodes.length)
+            growNodes(nodeCount << 1);
+
+        int i = nodeCount++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (nodeDistances[parent] <= distance)
+                break;
+            moveNode(parent, i);
+            i = parent;
+        }
+        setNode(i, branch, distance, ox, oy, oz, size);
+    }
+
+    private void pop() {
+        int last = --nodeCount;
+        OcTree.Branch branch = nodes[last];
+        double distance = nodeDistances[last];
+        double ox = nodeXs[last], oy = nodeYs[last], oz = nodeZs[last], size = nodeSizes[last];
+        nodes[last] = null;
+        if (last == 0)
+            return;
+
+        int i = 0;
+        for (int child; (child = 2 * i + 1) < last; i = child) {
+            if (child + 1 < last && nodeDistances[child + 1] < nodeDistances[child])
+                child++;
+            if (distance <= nodeDistances[child])
+                break;
+            moveNode(child, i);
+        }
+        setNode(i, branch, distance, ox, oy, oz, size);
+    }
+
+    private void moveNode(int from, int to) {
+        setNode(to, nodes[from], nodeDistances[from], nodeXs[from], nodeYs[from], nodeZs[from], nodeSizes[from]);
+    }
+
+    private void setNode(int i, OcTree.Branch branch, double distance, double ox, double oy, double oz, double size) {
+        nodes[i] = branch;
+        nodeDistances[i] = distance;
+        nodeXs[i] = ox;
+        nodeYs[i] = oy;
+        nodeZs[i] = oz;
+        nodeSizes[i] = size;
+    }
+
+    private void offer(double distance, double x, double y, double z) {
+        int i = count++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (distances[parent] >= distance)
+                break;
+            setResult(i, distances[parent], xs[parent], ys[parent], zs[parent]);
+            i = parent;
+        }
+        setResult(i, distance, x, y, z);
+    }
+
+    private void replaceWorst(double distance, double x, double y, double z) {
+        siftDown(0, count, distance, x, y, z);
+    }
+
+    private void siftDown(int i, int size, double distance, double x, double y, double z) {
+        for (int child; (child = 2 * i + 1) < size; i = child) {
+            if (child + 1 < size && distances[child + 1] > distances[child])
+                child++;
+            if (distance >= distances[child])
+                break;
+            setResult(i, distances[child], xs[child], ys[child], zs[child]);
+        }
+        setResult(i, distance, x, y, z);
+    }
+
+    private void setResult(int i, double distance, double x, double y, double z) {
+        distances[i] = distance;
+        xs[i] = x;
+        ys[i] = y;
+        zs[i] = z;
+    }
+
+    /**
+     * Heap sort of the result max-heap, leaving the closest point at index 0.
+     */
+    private void sortResults() {
+        for (int end = count - 1; end > 0; end--) {
+            double distance = distances[end], x = xs[end], y = ys[end], z = zs[end];
+            setResult(end, distances[0], xs[0], ys[0], zs[0]);
+            siftDown(0, end, distance, x, y, z);
+        }
+    }
+
+    private void growNodes(int capacity) {
+        nodes = Arrays.copyOf(nodes, capacity);
+        nodeDistances = Arrays.copyOf(nodeDistances, capacity);
+        nodeXs = Arrays.copyOf(nodeXs, capacity);
+        nodeYs = Arrays.copyOf(nodeYs, capacity);
+        nodeZs = Arrays.copyOf(nodeZs, capacity);
+        nodeSizes = Arrays.copyOf(nodeSizes, capacity);
+    }
+
+    private void growResults(int capacity) {
+        distances = new double[capacity];
+        xs = new double[capacity];
+        ys = new double[capacity];
+        zs = new double[capacity];
+    }
+}
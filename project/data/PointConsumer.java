@@ -0,0 +1,11 @@
+package project.data;
+
+/**
+ * Callback which receives 3 dimensional points one at a time,
+ * so they can be visited without creating a vector object for every point.
+ */
+@FunctionalInterface
+public interface PointConsumer {
+
+    void accept(double x, double y, double z);
+}
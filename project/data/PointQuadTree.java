@@ -0,0 +1,312 @@
+package project.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** <tt>
+ * 2 dimensional point tree, for when the generic {@link QuadTree} is too slow. <br>
+ * Takes its coordinates as plain doubles, so there are no varargs arrays or     <br>
+ * NVectors to allocate, and every leaf holds any amount of entries in           <br>
+ * primitive arrays instead of a single element. Every entry is a point with    <br>
+ * an <tt>int</tt> value, e.g. an index into the caller's own arrays.            <br>
+ * Like the <code>OcTree</code>, a leaf is always at the full depth.
+ * </tt>
+ */
+public class PointQuadTree {
+
+    private static final int QUADTREE_SIZE = 4;
+    private static final int MAX_DEPTH = 24;
+
+    /**
+     * Indices follow the rule: <tt>i = |x| + 2|y| </tt>                        <br>
+     * with <tt>0 <= |x, y| <= 1</tt>                                          <br>
+     * So the branch at position <tt>[0.7, 0.2]</tt> has index <tt>1 + 2(0) = 1</tt>.
+     */
+    private final Branch root = new Branch(this, null, 0);
+    private double scale = 1.0d;
+    private int depth = 1;
+    private int size = 0;
+
+    /**
+     * Callback for the entries in the tree.
+     */
+    public interface EntryConsumer {
+        void accept(double x, double y, int value);
+    }
+
+    /**
+     * Constructor for a default PointQuadTree, with a coordinate scale of 1.0 and a depth of 1.
+     */
+    public PointQuadTree() {}
+
+    /**
+     * Constructor for a PointQuadTree with a specified depth, clamped to [1, 24]. <br>
+     * Every level halves the cells, so a leaf is <tt>scale / 2^depth</tt> wide.
+     */
+    public PointQuadTree(int depth) {
+        this.depth = Math.max(Math.min(MAX_DEPTH, depth), 1);
+    }
+
+    /**
+     * Constructor for a PointQuadTree with a specified depth and scale.
+     */
+    public PointQuadTree(int depth, double scale) {
+        this(depth);
+        this.scale = scale;
+    }
+
+    /**
+     * Inserts the entry [x, y] → value, next to any entries already in its cell. <br>
+     * Returns the leaf it was added to.
+     * @Note: 0 ≤ [x, y] ≤ scale, otherwise nothing will be added and null is returned.
+     */
+    public Branch insert(double x, double y, int value) {
+        Branch leaf = descend(x, y, true);
+        if (leaf == null)
+            return null;
+        leaf.add(x, y, value);
+        size++;
+        return leaf;
+    }
+
+    /**
+     * Method for retrieving the leaf of the given coordinates, growing branches on the way.
+     * @Notice: Returns null with coordinates out of bounds.
+     */
+    public Branch getLeaf(double x, double y) {
+        return descend(x, y, true);
+    }
+
+    /**
+     * Method for looking up the leaf of the given coordinates, without growing the tree. <br>
+     * Returns null when the coordinates are out of bounds or the cell has never been used.
+     */
+    public Branch findLeaf(double x, double y) {
+        return descend(x, y, false);
+    }
+
+    /**
+     * Returns whether an entry at exactly [x, y] is stored in the tree.
+     */
+    public boolean contains(double x, double y) {
+        Branch leaf = findLeaf(x, y);
+        return leaf != null && leaf.indexOf(x, y) >= 0;
+    }
+
+    /**
+     * Removes one entry at exactly [x, y] with the given value, pruning emptied branches. <br>
+     * Returns whether anything was removed.
+     */
+    public boolean remove(double x, double y, int value) {
+        Branch leaf = findLeaf(x, y);
+        if (leaf == null)
+            return false;
+
+        for (int i = 0; i < leaf.size; i++) {
+            if (leaf.xs[i] == x && leaf.ys[i] == y && leaf.values[i] == value) {
+                leaf.removeAt(i);
+                size--;
+                for (Branch branch = leaf; branch.parent != null && branch.size == 0 && branch.branches == null; branch = branch.parent)
+                    branch.parent.removeBranch(branch);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Branch descend(double x, double y, boolean grow) {
+        x /= scale;
+        y /= scale;
+        // Written so NaN fails as well.
+        if (!(x >= 0 && x <= 1 && y >= 0 && y <= 1))
+            return null;
+
+        Branch leaf = this.root;
+        for (int i = 0; i < depth; i++) {
+            int rx = (int) (x + 0.5), ry = (int) (y + 0.5);
+            int j = rx + 2 * ry;
+
+            if (leaf.branches == null || leaf.branches[j] == null) {
+                if (!grow)
+                    return null;
+                if (leaf.branches == null)
+                    leaf.branches = new Branch[QUADTREE_SIZE];
+                leaf.branches[j] = new Branch(this, leaf, i + 1);
+            }
+            leaf = leaf.branches[j];
+
+            x = 2 * x - rx;
+            y = 2 * y - ry;
+        }
+        return leaf;
+    }
+
+    /**
+     * Visits every entry within the box [minX, maxX] × [minY, maxY].
+     */
+    public void queryRange(double minX, double minY, double maxX, double maxY, EntryConsumer consumer) {
+        queryRange(this.root, 0, 0, scale, minX, minY, maxX, maxY, consumer);
+    }
+
+    private void queryRange(Branch branch, double ox, double oy, double size,
+                            double minX, double minY, double maxX, double maxY, EntryConsumer consumer) {
+        // No overlap at all, so nothing in here can match.
+        if (ox > maxX || oy > maxY || ox + size < minX || oy + size < minY)
+            return;
+
+        // The whole cell is inside the box, so everything in here matches.
+        if (ox >= minX && oy >= minY && ox + size <= maxX && oy + size <= maxY) {
+            forEachEntry(branch, consumer);
+            return;
+        }
+
+        for (int i = 0; i < branch.size; i++) {
+            double x = branch.xs[i], y = branch.ys[i];
+            if (x >= minX && x <= maxX && y >= minY && y <= maxY)
+                consumer.accept(x, y, branch.values[i]);
+        }
+
+        double half = size / 2;
+        for (int j = 0; j < QUADTREE_SIZE && branch.branches != null; j++) {
+            if (branch.branches[j] != null)
+                queryRange(branch.branches[j], ox + (j & 1) * half, oy + (j >> 1) * half, half, minX, minY, maxX, maxY, consumer);
+        }
+    }
+
+    /**
+     * Visits every entry in the tree, leaf by leaf.
+     */
+    public void forEachEntry(EntryConsumer consumer) {
+        forEachEntry(this.root, consumer);
+    }
+
+    /**
+     * Visits every entry below the given branch.
+     */
+    public void forEachEntry(Branch branch, EntryConsumer consumer) {
+        branch.forEachEntry(consumer);
+        for (int j = 0; j < QUADTREE_SIZE && branch.branches != null; j++) {
+            if (branch.branches[j] != null)
+                forEachEntry(branch.branches[j], consumer);
+        }
+    }
+
+    /**
+     * Returns all leaves holding entries.
+     */
+    public List<Branch> getLeaves() {
+        List<Branch> leaves = new ArrayList<>();
+        collectLeaves(this.root, leaves);
+        return leaves;
+    }
+
+    private void collectLeaves(Branch branch, List<Branch> leaves) {
+        if (branch.isLeaf())
+            leaves.add(branch);
+        for (int j = 0; j < QUADTREE_SIZE && branch.branches != null; j++) {
+            if (branch.branches[j] != null)
+                collectLeaves(branch.branches[j], leaves);
+        }
+    }
+
+    /**
+     * Returns the amount of entries in the tree.
+     */
+    public int size() { return this.size; }
+
+    public int getDepth() { return this.depth; }
+
+    public double getScale() { return this.scale; }
+
+    public Branch getRoot() { return this.root; }
+
+    public static class Branch {
+        private static final int INITIAL_CAPACITY = 4;
+
+        /**
+         * The entries in this branch, only the first <tt>size</tt> are in use.
+         */
+        public double[] xs = null, ys = null;
+        public int[] values = null;
+        public int size = 0;
+        public Branch[] branches = null;
+        public Branch parent;
+        public PointQuadTree root;
+        public int depth;
+
+        protected Branch(PointQuadTree root, Branch parent, int depth) {
+            this.root = root;
+            this.parent = parent;
+            this.depth = depth;
+        }
+
+        protected void add(double x, double y, int value) {
+            if (this.xs == null) {
+                this.xs = new double[INITIAL_CAPACITY];
+                this.ys = new double[INITIAL_CAPACITY];
+                this.values = new int[INITIAL_CAPACITY];
+            } else if (this.size == this.xs.length) {
+                this.xs = Arrays.copyOf(this.xs, this.size << 1);
+                this.ys = Arrays.copyOf(this.ys, this.size << 1);
+                this.values = Arrays.copyOf(this.values, this.size << 1);
+            }
+
+            this.xs[this.size] = x;
+            this.ys[this.size] = y;
+            this.values[this.size] = value;
+            this.size++;
+        }
+
+        /**
+         * Returns the index of the first entry at [x, y] in this branch, or -1 if there's none.
+         */
+        public int indexOf(double x, double y) {
+            for (int i = 0; i < this.size; i++) {
+                if (this.xs[i] == x && this.ys[i] == y)
+                    return i;
+            }
+            return -1;
+        }
+
+        protected void removeAt(int index) {
+            int tail = this.size - index - 1;
+            System.arraycopy(this.xs, index + 1, this.xs, index, tail);
+            System.arraycopy(this.ys, index + 1, this.ys, index, tail);
+            System.arraycopy(this.values, index + 1, this.values, index, tail);
+            this.size--;
+        }
+
+        protected void removeBranch(Branch child) {
+            boolean empty = true;
+            for (int j = 0; j < QUADTREE_SIZE; j++) {
+                if (this.branches[j] == child)
+                    this.branches[j] = null;
+                else if (this.branches[j] != null)
+                    empty = false;
+            }
+            if (empty)
+                this.branches = null;
+        }
+
+        /**
+         * Visits every entry in this branch.
+         */
+        public void forEachEntry(EntryConsumer consumer) {
+            for (int i = 0; i < this.size; i++)
+                consumer.accept(this.xs[i], this.ys[i], this.values[i]);
+        }
+
+        public boolean isFirstBranch() {
+            return this.parent == null;
+        }
+
+        public boolean isEmptyBranch() {
+            return this.size == 0;
+        }
+
+        public boolean isLeaf() {
+            return this.size > 0;
+        }
+    }
+}
@@ -10,6 +10,10 @@ public class QuadTree<T> extends Tree<T> {
         super(2, depth, scale);
     }
 
+    public QuadTree(int depth, double scale, boolean sparse) {
+        super(2, depth, scale, sparse);
+    }
+
     public QuadTree() {
         super(2, 1, 1);
     }
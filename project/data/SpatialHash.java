@@ -0,0 +1,547 @@
+package project.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/** <tt>
+ * Flat hashed grid of 3 dimensional points, as an alternative to the {@link OcTree}.    <br>
+ * Space is cut into cubes of <tt>cellSize</tt>, and every cube holding points is a     <br>
+ * {@link Cell} in an open addressing table keyed by its packed cell coordinates, so    <br>
+ * finding a leaf is a hash and a probe or two instead of a walk down the levels. No   <br>
+ * boxed keys or entry objects are involved. There are no bounds besides 2^20 cells    <br>
+ * each way from the origin, negative coordinates included.                            <br>
+ * Works best for evenly spread points that move a lot; with strongly clustered points <br>
+ * the tree adapts better. Both implement {@link SpatialIndex}.
+ * </tt>
+ */
+public class SpatialHash implements SpatialIndex<SpatialHash.Cell> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Cell coordinates get 21 bits each in the key.
+    private static final int CELL_BITS = 21;
+    private static final long CELL_MASK = (1L << CELL_BITS) - 1;
+    private static final double CELL_LIMIT = 1 << (CELL_BITS - 1);
+
+    // Most emptied cells kept around for reuse.
+    private static final int MAX_FREE_CELLS = 1 << 12;
+
+    private final double cellSize, inverseCellSize;
+
+    /**
+     * Slots of the table, linearly probed. A slot is free when its cell is null, <br>
+     * and the table is kept at most half full.
+     */
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private Cell[] cells = new Cell[INITIAL_CAPACITY];
+    private int shift = 64 - Integer.numberOfTrailingZeros(INITIAL_CAPACITY);
+    private int cellCount = 0;
+    private int size = 0;
+
+    // Cells made by getLeaf that haven't had a point yet, which are left out everywhere else.
+    private int emptyCellCount = 0;
+
+    // Emptied cells waiting to be reused, linked through their next field.
+    private Cell freeCells = null;
+    private int freeCellCount = 0;
+
+    /**
+     * Constructor for a grid of cubes with the given edge length.
+     */
+    public SpatialHash(double cellSize) {
+        if (!(cellSize > 0))
+            throw new IllegalArgumentException("Cell size must be positive, got " + cellSize);
+        this.cellSize = cellSize;
+        this.inverseCellSize = 1 / cellSize;
+    }
+
+    /**
+     * Inserts the point [x, y, z], next to any points already in its cell. <br>
+     * Returns the cell it was added to, or null when it's out of range.
+     */
+    @Override
+    public Cell insert(double x, double y, double z) {
+        Cell cell = getLeaf(x, y, z);
+        if (cell == null)
+            return null;
+        add(cell, x, y, z);
+        return cell;
+    }
+
+    /**
+     * Inserts every point [xs[i], ys[i], zs[i]], returning the amount that was in range.
+     */
+    public int insertAll(double[] xs, double[] ys, double[] zs) {
+        if (xs.length != ys.length || xs.length != zs.length)
+            throw new IllegalArgumentException("Coordinate arrays differ in length (" + xs.length + ", " + ys.length + ", " + zs.length + ")");
+
+        int n = 0;
+        for (int i = 0; i < xs.length; i++) {
+            if (insert(xs[i], ys[i], zs[i]) != null)
+                n++;
+        }
+        return n;
+    }
+
+    /**
+     * Removes the point [x, y, z], dropping its cell once it's empty. Returns whether it was found.
+     */
+    @Override
+    public boolean remove(double x, double y, double z) {
+        Cell cell = findLeaf(x, y, z);
+        if (cell == null)
+            return false;
+
+        int index = cell.indexOf(x, y, z);
+        if (index < 0)
+            return false;
+
+        removeAt(cell, index);
+        return true;
+    }
+
+    /**
+     * Moves the point [oldX, oldY, oldZ] to [newX, newY, newZ], in place when it stays in its cell. <br>
+     * Returns the cell holding the point afterwards, or null when the old point doesn't exist <br>
+     * or the new coordinates are out of range, in which case nothing changes.
+     */
+    @Override
+    public Cell update(double oldX, double oldY, double oldZ, double newX, double newY, double newZ) {
+        Cell cell = findLeaf(oldX, oldY, oldZ);
+        if (cell == null)
+            return null;
+
+        int index = cell.indexOf(oldX, oldY, oldZ);
+        if (index < 0)
+            return null;
+
+        return move(cell, index, newX, newY, newZ);
+    }
+
+    /**
+     * Moves the <tt>index</tt>-th point of the given cell to [x, y, z], skipping the lookup <br>
+     * <code>update</code> does. Returns the cell holding the point afterwards, or null     <br>
+     * when [x, y, z] is out of range, in which case nothing changes.
+     */
+    public Cell move(Cell cell, int index, double x, double y, double z) {
+        if (index < 0 || index >= cell.size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for cell of size " + cell.size);
+
+        long key = key(x, y, z);
+        if (key < 0)
+            return null;
+
+        if (key == cell.key) {
+            cell.xs[index] = x;
+            cell.ys[index] = y;
+            cell.zs[index] = z;
+            return cell;
+        }
+
+        // Claim the new cell first, the old one might be recycled for it otherwise.
+        Cell target = getCell(key, true);
+        add(target, x, y, z);
+        removeAt(cell, index);
+        return target;
+    }
+
+    private void add(Cell cell, double x, double y, double z) {
+        if (cell.size == 0)
+            emptyCellCount--;
+        cell.add(x, y, z);
+        size++;
+    }
+
+    private void removeAt(Cell cell, int index) {
+        cell.removeAt(index);
+        size--;
+        if (cell.size == 0)
+            release(cell);
+    }
+
+    /**
+     * Returns the cell of the given coordinates, creating it if needed, or null when they're out of range. <br>
+     * A cell created here stays invisible to the lookups, iterators and <code>getCellCount</code> <br>
+     * until a point is inserted into it.
+     */
+    @Override
+    public Cell getLeaf(double x, double y, double z) {
+        long key = key(x, y, z);
+        return key < 0 ? null : getCell(key, true);
+    }
+
+    /**
+     * Returns the cell of the given coordinates, or null when it holds no points or they're out of range.
+     */
+    @Override
+    public Cell findLeaf(double x, double y, double z) {
+        long key = key(x, y, z);
+        return key < 0 ? null : getCell(key, false);
+    }
+
+    /**
+     * Returns the cell with the given cell coordinates, e.g. a neighbour of <br>
+     * <code>cell</code> at <code>[cell.x + 1, cell.y, cell.z]</code>, or null.
+     */
+    public Cell findCell(int x, int y, int z) {
+        if (x < -CELL_LIMIT || x >= CELL_LIMIT || y < -CELL_LIMIT || y >= CELL_LIMIT || z < -CELL_LIMIT || z >= CELL_LIMIT)
+            return null;
+        return getCell(pack(x, y, z), false);
+    }
+
+    @Override
+    public boolean contains(double x, double y, double z) {
+        Cell cell = findLeaf(x, y, z);
+        return cell != null && cell.indexOf(x, y, z) >= 0;
+    }
+
+    /**
+     * Returns the packed cell coordinates of the given point, or -1 when it's out of range.
+     */
+    private long key(double x, double y, double z) {
+        double fx = Math.floor(x * inverseCellSize), fy = Math.floor(y * inverseCellSize), fz = Math.floor(z * inverseCellSize);
+        // Written so NaN fails as well.
+        if (!(fx >= -CELL_LIMIT && fx < CELL_LIMIT && fy >= -CELL_LIMIT && fy < CELL_LIMIT && fz >= -CELL_LIMIT && fz < CELL_LIMIT))
+            return -1;
+        return pack((int) fx, (int) fy, (int) fz);
+    }
+
+    private static long pack(int x, int y, int z) {
+        return (x & CELL_MASK) << (2 * CELL_BITS) | (y & CELL_MASK) << CELL_BITS | (z & CELL_MASK);
+    }
+
+    private int slot(long key) {
+        // Fibonacci hashing, the top bits of the product are well mixed.
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /**
+     * Returns the cell of the given key, creating it when growing. Without growing, <br>
+     * cells without points are treated as missing.
+     */
+    private Cell getCell(long key, boolean grow) {
+        int mask = cells.length - 1;
+        int i = slot(key);
+        for (Cell cell; (cell = cells[i]) != null; i = (i + 1) & mask) {
+            if (keys[i] == key)
+                return grow || cell.size > 0 ? cell : null;
+        }
+        if (!grow)
+            return null;
+
+        Cell cell = newCell(key);
+        keys[i] = key;
+        cells[i] = cell;
+        emptyCellCount++;
+        if (++cellCount > cells.length >> 1)
+            resize(cells.length << 1);
+        return cell;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Cell[] oldCells = cells;
+        keys = new long[capacity];
+        cells = new Cell[capacity];
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldCells.length; j++) {
+            if (oldCells[j] == null)
+                continue;
+            int i = slot(oldKeys[j]);
+            while (cells[i] != null)
+                i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            cells[i] = oldCells[j];
+        }
+    }
+
+    /**
+     * Takes an emptied cell out of the table, shifting the probe chain behind it back so no tombstone is needed.
+     */
+    private void release(Cell cell) {
+        int mask = cells.length - 1;
+        int i = slot(cell.key);
+        while (cells[i] != cell)
+            i = (i + 1) & mask;
+
+        for (int j = (i + 1) & mask; cells[j] != null; j = (j + 1) & mask) {
+            // An entry can fill the gap when its home slot isn't within (i, j].
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                cells[i] = cells[j];
+                i = j;
+            }
+        }
+        cells[i] = null;
+        cellCount--;
+
+        if (freeCellCount < MAX_FREE_CELLS) {
+            cell.next = freeCells;
+            freeCells = cell;
+            freeCellCount++;
+        }
+    }
+
+    private Cell newCell(long key) {
+        Cell cell = freeCells;
+        if (cell == null)
+            return new Cell(key);
+
+        freeCells = cell.next;
+        freeCellCount--;
+        cell.next = null;
+        cell.setKey(key);
+        return cell;
+    }
+
+    /**
+     * Visits every point inside the box [min, max], borders included. Small boxes look up <br>
+     * the cells they cover one by one, big ones scan the table instead.
+     */
+    @Override
+    public void queryRange(double minX, double minY, double minZ,
+                           double maxX, double maxY, double maxZ, PointConsumer consumer) {
+        if (minX > maxX || minY > maxY || minZ > maxZ)
+            return;
+
+        double x0 = clampCell(minX), y0 = clampCell(minY), z0 = clampCell(minZ);
+        double x1 = clampCell(maxX), y1 = clampCell(maxY), z1 = clampCell(maxZ);
+        double covered = (x1 - x0 + 1) * (y1 - y0 + 1) * (z1 - z0 + 1);
+
+        if (covered > getCellCount()) {
+            for (Cell cell : cells) {
+                if (cell != null && cell.size > 0 && cell.x >= x0 && cell.x <= x1 && cell.y >= y0 && cell.y <= y1 && cell.z >= z0 && cell.z <= z1)
+                    cell.forEachPoint(minX, minY, minZ, maxX, maxY, maxZ, consumer);
+            }
+            return;
+        }
+
+        for (int x = (int) x0; x <= x1; x++) {
+            for (int y = (int) y0; y <= y1; y++) {
+                for (int z = (int) z0; z <= z1; z++) {
+                    Cell cell = getCell(pack(x, y, z), false);
+                    if (cell != null)
+                        cell.forEachPoint(minX, minY, minZ, maxX, maxY, maxZ, consumer);
+                }
+            }
+        }
+    }
+
+    private double clampCell(double value) {
+        return Math.max(-CELL_LIMIT, Math.min(CELL_LIMIT - 1, Math.floor(value * inverseCellSize)));
+    }
+
+    @Override
+    public void forEachPoint(PointConsumer consumer) {
+        for (Cell cell : cells) {
+            if (cell != null)
+                cell.forEachPoint(consumer);
+        }
+    }
+
+    @Override
+    public void forEachLeaf(Consumer<? super Cell> consumer) {
+        for (Cell cell : cells) {
+            if (cell != null && cell.size > 0)
+                consumer.accept(cell);
+        }
+    }
+
+    @Override
+    public Iterator<Cell> leafIterator() {
+        return Spliterators.iterator(leafSpliterator());
+    }
+
+    /**
+     * Returns a spliterator over all cells, which splits by handing out halves of the table.
+     */
+    public Spliterator<Cell> leafSpliterator() {
+        return new CellSpliterator(cells, 0, cells.length, getCellCount());
+    }
+
+    @Override
+    public Stream<Cell> leafStream() {
+        return StreamSupport.stream(leafSpliterator(), false);
+    }
+
+    @Override
+    public List<Cell> getLeaves() {
+        List<Cell> leaves = new ArrayList<>(getCellCount());
+        forEachLeaf(leaves::add);
+        return leaves;
+    }
+
+    /**
+     * Returns the amount of points in the grid.
+     */
+    public int size() { return this.size; }
+
+    /**
+     * Returns the amount of cells holding points.
+     */
+    public int getCellCount() { return this.cellCount - this.emptyCellCount; }
+
+    public double getCellSize() { return this.cellSize; }
+
+    /**
+     * Returns the amount of slots in the table, at least twice the cell count.
+     */
+    public int getCapacity() { return this.cells.length; }
+
+    private static class CellSpliterator implements Spliterator<Cell> {
+        private final Cell[] cells;
+        private int from;
+        private final int to;
+        private final long estimate;
+
+        private CellSpliterator(Cell[] cells, int from, int to, long estimate) {
+            this.cells = cells;
+            this.from = from;
+            this.to = to;
+            this.estimate = estimate;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Cell> action) {
+            while (from < to) {
+                Cell cell = cells[from++];
+                if (cell != null && cell.size > 0) {
+                    action.accept(cell);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Cell> action) {
+            for (; from < to; from++) {
+                Cell cell = cells[from];
+                if (cell != null && cell.size > 0)
+                    action.accept(cell);
+            }
+        }
+
+        @Override
+        public Spliterator<Cell> trySplit() {
+            int mid = (from + to) >>> 1;
+            if (mid - from < 64)
+                return null;
+            CellSpliterator split = new CellSpliterator(cells, from, mid, estimate >>> 1);
+            from = mid;
+            return split;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Math.max(estimate, 1);
+        }
+
+        @Override
+        public int characteristics() {
+            return DISTINCT | NONNULL;
+        }
+    }
+
+    /**
+     * Cell class, a leaf of the grid covering <code>[x, y, z] * cellSize</code> up to the next cell.
+     */
+    public static class Cell {
+        private static final int INITIAL_CAPACITY = 4;
+
+        /**
+         * Coordinates of the points in this cell, only the first <tt>size</tt> entries are in use.
+         */
+        public double[] xs = null, ys = null, zs = null;
+        public int size = 0;
+
+        /**
+         * The cell coordinates, <tt>floor(point / cellSize)</tt>.
+         */
+        public int x, y, z;
+
+        private long key;
+        private Cell next;
+
+        private Cell(long key) {
+            setKey(key);
+        }
+
+        private void setKey(long key) {
+            this.key = key;
+            // Sign extend the 21 bit coordinates back.
+            this.x = (int) (key << (64 - 3 * CELL_BITS) >> (64 - CELL_BITS));
+            this.y = (int) (key << (64 - 2 * CELL_BITS) >> (64 - CELL_BITS));
+            this.z = (int) (key << (64 - CELL_BITS) >> (64 - CELL_BITS));
+        }
+
+        private void add(double x, double y, double z) {
+            if (this.xs == null) {
+                this.xs = new double[INITIAL_CAPACITY];
+                this.ys = new double[INITIAL_CAPACITY];
+                this.zs = new double[INITIAL_CAPACITY];
+            } else if (this.size == this.xs.length) {
+                this.xs = Arrays.copyOf(this.xs, this.size << 1);
+                this.ys = Arrays.copyOf(this.ys, this.size << 1);
+                this.zs = Arrays.copyOf(this.zs, this.size << 1);
+            }
+
+            this.xs[this.size] = x;
+            this.ys[this.size] = y;
+            this.zs[this.size] = z;
+            this.size++;
+        }
+
+        /**
+         * Removes the <tt>index</tt>-th point by moving the last one into its place.
+         */
+        private void removeAt(int index) {
+            int last = --this.size;
+            this.xs[index] = this.xs[last];
+            this.ys[index] = this.ys[last];
+            this.zs[index] = this.zs[last];
+        }
+
+        /**
+         * Returns the index of the point [x, y, z] in this cell, or -1 if it's not in here.
+         */
+        public int indexOf(double x, double y, double z) {
+            for (int i = 0; i < this.size; i++) {
+                if (this.xs[i] == x && this.ys[i] == y && this.zs[i] == z)
+                    return i;
+            }
+            return -1;
+        }
+
+        /**
+         * Visits every point in this cell.
+         */
+        public void forEachPoint(PointConsumer consumer) {
+            for (int i = 0; i < this.size; i++)
+                consumer.accept(this.xs[i], this.ys[i], this.zs[i]);
+        }
+
+        private void forEachPoint(double minX, double minY, double minZ,
+                                  double maxX, double maxY, double maxZ, PointConsumer consumer) {
+            for (int i = 0; i < this.size; i++) {
+                double x = this.xs[i], y = this.ys[i], z = this.zs[i];
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ)
+                    consumer.accept(x, y, z);
+            }
+        }
+
+        public boolean isLeaf() {
+            return this.size > 0;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package project.data;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/** <tt>
+ * The point index contract shared by {@link OcTree} and {@link SpatialHash}, so callers  <br>
+ * can be written once and pick the structure per dataset. Points are stored in leaves   <br>
+ * of type <tt>L</tt>, each holding the points of one cell in its <tt>xs</tt>, <tt>ys</tt> <br>
+ * and <tt>zs</tt> arrays. Methods returning a leaf return null when the point is outside  <br>
+ * of what the index covers, in which case nothing changes.
+ * </tt>
+ */
+public interface SpatialIndex<L> {
+
+    /**
+     * Inserts the point [x, y, z], returning the leaf it was added to.
+     */
+    L insert(double x, double y, double z);
+
+    /**
+     * Removes the point [x, y, z], returning whether it was found.
+     */
+    boolean remove(double x, double y, double z);
+
+    /**
+     * Moves the point [oldX, oldY, oldZ] to [newX, newY, newZ], returning the leaf holding it afterwards.
+     */
+    L update(double oldX, double oldY, double oldZ, double newX, double newY, double newZ);
+
+    /**
+     * Returns the leaf of the given coordinates, creating it if needed.
+     */
+    L getLeaf(double x, double y, double z);
+
+    /**
+     * Returns the leaf of the given coordinates, or null when there's none.
+     */
+    L findLeaf(double x, double y, double z);
+
+    /**
+     * Returns whether the exact point [x, y, z] is stored.
+     */
+    boolean contains(double x, double y, double z);
+
+    /**
+     * Visits every leaf holding points.
+     */
+    void forEachLeaf(Consumer<? super L> consumer);
+
+    Iterator<L> leafIterator();
+
+    /**
+     * Returns a stream of all leaves, which can be made parallel.
+     */
+    Stream<L> leafStream();
+
+    List<L> getLeaves();
+
+    /**
+     * Visits every point within the box [min, max], borders included.
+     */
+    void queryRange(double minX, double minY, double minZ,
+                    double maxX, double maxY, double maxZ, PointConsumer consumer);
+
+    /**
+     * Visits every point.
+     */
+    void forEachPoint(PointConsumer consumer);
+}
@@ -2,7 +2,15 @@ package project.data;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Created on 13/04/2023 at 17:14
@@ -10,17 +18,53 @@ import java.util.List;
  */
 public abstract class Tree<T> {
 
+    // Rough HotSpot object sizes (64-bit, compressed oops), used for the heap estimate.
+    private static final int OBJECT_HEADER      = 12;
+    private static final int ARRAY_HEADER       = 16;
+    private static final int REFERENCE          = 4;
+    private static final int BRANCH_SIZE        = align(OBJECT_HEADER + 4 * REFERENCE + Integer.BYTES);
+    private static final int SPARSE_BRANCH_SIZE = align(BRANCH_SIZE + Long.BYTES);
+
+    // Subtrees with at least this many elements are bulk loaded in their own task.
+    private static final int BULK_THRESHOLD = 1 << 12;
+
+    // Most branches kept around for reuse after being pruned.
+    private static final int MAX_FREE_BRANCHES = 1 << 12;
+
     private final double scale;
     private final int nodeSize;
     private final int dimensions;
     private final int depth;
-    protected Branch<T> root = new Branch<>(this, null, 0);
+    private final boolean sparse;
+    protected Branch<T> root;
+
+    // Pruned branches waiting to be reused, linked through their parent field.
+    private Branch<T> freeBranches = null;
+    private int freeBranchCount = 0;
+
+    // Only there with -Dproject.data.metrics=true, see TreeMetrics.
+    private final TreeMetrics metrics = TreeMetrics.ENABLED ? new TreeMetrics("Tree", this::getMaxNodeCount, this::walkShape) : null;
 
     public Tree(int dimensions, int depth, double scale) {
-        this.nodeSize = (1 << dimensions) << depth;
+        this(dimensions, depth, scale, false);
+    }
+
+    /**
+     * Constructor for a tree with a chosen child layout.                            <br>
+     * A dense branch holds an array of exactly 2^D child slots.                    <br>
+     * A sparse branch only holds the children that exist, packed in index order,  <br>
+     * and finds them through a bitmask. This is the better choice when most       <br>
+     * branches only have a few of their 2^D children, but it is limited to D ≤ 6.
+     */
+    public Tree(int dimensions, int depth, double scale, boolean sparse) {
+        if (sparse && dimensions > 6)
+            throw new IllegalArgumentException("Sparse branches support at most 6 dimensions, D=" + dimensions);
+        this.nodeSize = 1 << dimensions;
         this.dimensions = dimensions;
         this.scale = scale;
         this.depth = depth;
+        this.sparse = sparse;
+        this.root = createBranch(null, 0);
     }
 
     /**
@@ -36,6 +80,8 @@ public abstract class Tree<T> {
             return null;
 
         leaf.data = element;
+        if (TreeMetrics.ENABLED)
+            metrics.inserted();
 
         return leaf;
     }
@@ -44,6 +90,153 @@ public abstract class Tree<T> {
         return this.insert(new NVector(this, coordinates), element);
     }
 
+    /**
+     * Method for removing the element stored at the given coordinates, returning it, <br>
+     * or null when there was none. Branches left without an element or children are  <br>
+     * pruned, walking up the parent links, and kept around to be reused by later inserts.
+     */
+    public T remove(NVector vec) {
+        Branch<T> leaf = findLeaf(vec);
+        if (leaf == null || leaf.data == null)
+            return null;
+
+        T element = leaf.data;
+        removeAt(leaf);
+        if (TreeMetrics.ENABLED)
+            metrics.removed();
+        return element;
+    }
+
+    /**
+     * Method for moving the element stored at <tt>oldPos</tt> to <tt>newPos</tt>.          <br>
+     * Returns the leaf holding the element afterwards, or null when there was no element <br>
+     * at <tt>oldPos</tt>. Like <code>insert</code>, this replaces whatever was stored at <tt>newPos</tt>.
+     */
+    public Branch<T> update(NVector oldPos, NVector newPos) {
+        Branch<T> leaf = findLeaf(oldPos);
+        if (leaf == null || leaf.data == null)
+            return null;
+
+        return move(leaf, newPos);
+    }
+
+    /**
+     * Method for moving the element of the given leaf to <tt>newPos</tt>, skipping the <br>
+     * lookup <code>update</code> does. Returns the leaf holding the element afterwards.
+     */
+    public Branch<T> move(Branch<T> leaf, NVector newPos) {
+        if (newPos.coordinates.length != this.dimensions)
+            throw new IllegalArgumentException(String.format("Vector has different dimensions than required, Dv=%d, D=%d", newPos.coordinates.length, dimensions));
+
+        // Still in the same cell, so there's nothing to do.
+        Branch<T> target = findLeaf(newPos);
+        if (target == leaf)
+            return leaf;
+
+        // Grow the target first, so an out of bounds position leaves the tree untouched.
+        if (target == null)
+            target = getLeaf(newPos);
+
+        target.data = leaf.data;
+        removeAt(leaf);
+        return target;
+    }
+
+    private void removeAt(Branch<T> leaf) {
+        leaf.data = null;
+
+        // Walk up, pruning branches that are left with nothing.
+        Branch<T> branch = leaf;
+        while (branch.parent != null && branch.data == null && branch.branches == null) {
+            Branch<T> parent = branch.parent;
+            parent.removeBranch(branch);
+            release(branch);
+            branch = parent;
+        }
+    }
+
+    /**
+     * Returns a pruned branch for reuse if there is one, otherwise a new one.
+     */
+    private Branch<T> newBranch(Branch<T> parent, int depth) {
+        Branch<T> branch = this.freeBranches;
+        if (branch == null) {
+            if (TreeMetrics.ENABLED)
+                metrics.branchAllocated();
+            return createBranch(parent, depth);
+        }
+
+        if (TreeMetrics.ENABLED)
+            metrics.branchReused();
+        this.freeBranches = branch.parent;
+        this.freeBranchCount--;
+        branch.parent = parent;
+        branch.depth = depth;
+        return branch;
+    }
+
+    /**
+     * Returns a new branch in the layout of this tree.
+     */
+    private Branch<T> createBranch(Branch<T> parent, int depth) {
+        return sparse ? new SparseBranch<T>(this, parent, depth) : new Branch<T>(this, parent, depth);
+    }
+
+    /**
+     * Keeps a branch that's no longer part of the tree around for reuse.
+     */
+    private void release(Branch<T> branch) {
+        if (this.freeBranchCount == MAX_FREE_BRANCHES)
+            return;
+
+        branch.clear();
+        branch.parent = this.freeBranches;
+        this.freeBranches = branch;
+        this.freeBranchCount++;
+    }
+
+    /**
+     * Method for inserting many elements at once, <tt>elements[i]</tt> at <tt>vectors[i]</tt>.  <br>
+     * The elements are sorted by the code of their cell first, after which every subtree   <br>
+     * is built in one go, and large subtrees are built in parallel on the common pool.     <br>
+     * The result is the same as inserting them one by one in order, so when several        <br>
+     * elements share a leaf, the last one wins.
+     */
+    public void insertAll(T[] elements, NVector[] vectors) {
+        if (elements.length != vectors.length)
+            throw new IllegalArgumentException("Element count does not equal vector count (" + elements.length + " != " + vectors.length + ")");
+
+        for (NVector vec : vectors) {
+            if (vec.coordinates.length != this.dimensions)
+                throw new IllegalArgumentException(String.format("Vector has different dimensions than required, Dv=%d, D=%d", vec.coordinates.length, dimensions));
+            for (int i = 0; i < dimensions; i++) {
+                double x = vec.coordinates[i] / scale;
+                if (x < 0 || x > 1)
+                    throw new IllegalArgumentException("Vector value " + vec.coordinates[i] + " out of bounds. Must be between 0 and " +  scale);
+            }
+        }
+
+        // Codes don't fit in a long, so there's nothing to sort on.
+        if (dimensions * depth > Long.SIZE - 1) {
+            for (int i = 0; i < elements.length; i++)
+                insert(vectors[i], elements[i]);
+            return;
+        }
+
+        int n = elements.length;
+        long[] codes = new long[n];
+        int[] indices = new int[n];
+        for (int i = 0; i < n; i++) {
+            codes[i] = getCellCode(vectors[i].coordinates);
+            indices[i] = i;
+        }
+        CellSort.sort(codes, indices, n, dimensions * depth);
+
+        ForkJoinPool.commonPool().invoke(new BulkInsert(this.root, 0, 0, n, codes, indices, elements));
+        if (TreeMetrics.ENABLED)
+            metrics.inserted(n);
+    }
+
 
     /**
      * Method for retrieving the leaf node of this OcTree, given the specified coordinates.<br>
@@ -55,55 +248,177 @@ public abstract class Tree<T> {
      *              or with coordinates out of bounds.
      */
     public Branch<T> getLeaf(NVector vec) {
-        int i, j, k;
-
-        for (i = 0; i < dimensions; i++) {
-            vec.coordinates[i] /= scale;
-            if (vec.coordinates[i] < 0 || vec.coordinates[i] > 1) {
+        for (int i = 0; i < dimensions; i++) {
+            double x = vec.coordinates[i] / scale;
+            if (x < 0 || x > 1) {
                 throw new IllegalArgumentException("Vector value " + vec.coordinates[i] + " out of bounds. Must be between 0 and " +  scale);
             }
         }
+        return descend(vec.coordinates, true);
+    }
+
+    /**
+     * Method for looking up the leaf node of the given coordinates, without growing the tree. <br>
+     * Returns null when the coordinates are out of bounds or when no branch exists there yet. <br>
+     * The given vector is left untouched.
+     */
+    public Branch<T> findLeaf(NVector vec) {
+        if (vec.coordinates.length != this.dimensions)
+            throw new IllegalArgumentException(String.format("Vector has different dimensions than required, Dv=%d, D=%d", vec.coordinates.length, dimensions));
+
+        for (int i = 0; i < dimensions; i++) {
+            double x = vec.coordinates[i] / scale;
+            if (x < 0 || x > 1)
+                return null;
+        }
+        return descend(vec.coordinates, false);
+    }
+
+    /**
+     * Returns whether an element is stored in the leaf of the given coordinates.
+     */
+    public boolean contains(NVector vec) {
+        Branch<T> leaf = findLeaf(vec);
+        return leaf != null && leaf.isLeaf();
+    }
+
+    /**
+     * Walks from the root to the leaf of the given (in bounds) coordinates,         <br>
+     * growing missing branches if asked to, or returning null when one is missing. <br>
+     * The coordinates are never written to.
+     */
+    private Branch<T> descend(double[] coordinates, boolean grow) {
+        if (!TreeMetrics.ENABLED)
+            return walk(coordinates, grow);
+
+        long start = metrics.lookup();
+        Branch<T> leaf = walk(coordinates, grow);
+        metrics.lookedUp(start);
+        return leaf;
+    }
+
+    private Branch<T> walk(double[] coordinates, boolean grow) {
+        // Too many levels to fit the path into a long, so descend on a copy instead.
+        if (dimensions * depth > Long.SIZE - 1)
+            return descendCopy(coordinates.clone(), grow);
+
+        long code = getCellCode(coordinates);
+        Branch<T> leaf = this.root;
+
+        for (int i = 0; i < depth; i++) {
+            int j = (int) (code >>> ((depth - 1 - i) * dimensions)) & (nodeSize - 1);
+
+            Branch<T> next = leaf.getBranch(j);
+            if (next == null) {
+                if (!grow)
+                    return null;
+                next = newBranch(leaf, i + 1);
+                leaf.setBranch(j, next);
+            }
+
+            // Branch down (maybe finally a leaf? :D )
+            leaf = next;
+        }
+        return leaf;
+    }
+
+    /**
+     * Packs the branch index of every level into a long, <tt>dimensions</tt> bits per level,  <br>
+     * with the first level in the highest bits, so all cells of a branch have consecutive codes. <br>
+     * Only valid when <tt>dimensions • depth ≤ 63</tt>.
+     */
+    private long getCellCode(double[] coordinates) {
+        long code = 0;
+        for (int k = 0; k < dimensions; k++) {
+            double x = coordinates[k] / scale;
+            for (int i = 0, r; i < depth; i++) {
+                // Same descent as the indexing in descendCopy, one dimension at a time.
+                r = FMath.round(x);
+                code |= (long) r << ((depth - 1 - i) * dimensions + k);
+                x = (2 * x - r);
+            }
+        }
+        return code;
+    }
+
+    private Branch<T> descendCopy(double[] coordinates, boolean grow) {
+        int i, j, k;
+
+        for (i = 0; i < dimensions; i++)
+            coordinates[i] /= scale;
 
         Branch<T> leaf = this.root;
 
         for (i = 0; i < depth; i++) {
             // Indexing, as described at the top of the class file.
             for (j = 0, k = 0; k < dimensions; k++) {
-                j += FMath.round(vec.coordinates[k]) * (1 << k);
-                vec.coordinates[k] = (2 * vec.coordinates[k] - FMath.round(vec.coordinates[k]));
+                j += FMath.round(coordinates[k]) * (1 << k);
+                coordinates[k] = (2 * coordinates[k] - FMath.round(coordinates[k]));
             }
 
-            if (leaf.branches == null)
-                leaf.branches = (Branch<T>[]) new Branch[nodeSize];
-
-            if (leaf.branches[j] == null)
-                leaf.branches[j] = new Branch<T>(this, leaf, i + 1);
+            Branch<T> next = leaf.getBranch(j);
+            if (next == null) {
+                if (!grow)
+                    return null;
+                next = newBranch(leaf, i + 1);
+                leaf.setBranch(j, next);
+            }
 
-            // Branch down (maybe finally a leaf? :D )
-            leaf = leaf.branches[j];
+            leaf = next;
         }
         return leaf;
     }
 
 
     /**
-     * Method which recursively searches through the tree to find all of its leaves. <br>
+     * Method which searches through the given branch to find all of its leaves. <br>
      * This then returns the result
      */
     public List<Branch<T>> getLeaves(Branch<T> branchToSearch) {
         List<Branch<T>> resultingBranches = new ArrayList<>();
+        forEachLeaf(branchToSearch, resultingBranches::add);
+        return resultingBranches;
+    }
 
-        if (branchToSearch.isLeaf()) {
-            resultingBranches.add(branchToSearch);
-        } else {
-            // Oh yes, recursion >:)
-            for (int i = 0; i < nodeSize && branchToSearch.branches != null; i++) {
-                if (branchToSearch.branches[i] != null) {
-                    resultingBranches.addAll(getLeaves(branchToSearch.branches[i]));
-                }
-            }
+    /**
+     * Visits all the leaves in the tree, in the same order as <code>getLeaves</code>. <br>
+     * The tree is walked with an explicit stack, so no intermediate lists are built.
+     */
+    public void forEachLeaf(Consumer<? super Branch<T>> consumer) {
+        forEachLeaf(this.root, consumer);
+    }
+
+    public void forEachLeaf(Branch<T> branch, Consumer<? super Branch<T>> consumer) {
+        if (!TreeMetrics.ENABLED) {
+            new LeafSpliterator<>(branch, depth, dimensions).forEachRemaining(consumer);
+            return;
         }
-        return resultingBranches;
+
+        long start = metrics.traversal();
+        new LeafSpliterator<>(branch, depth, dimensions).forEachRemaining(consumer);
+        metrics.traversed(start, "forEachLeaf");
+    }
+
+    /**
+     * Returns an iterator over all the leaves in the tree.
+     */
+    public Iterator<Branch<T>> leafIterator() {
+        return Spliterators.iterator(leafSpliterator());
+    }
+
+    /**
+     * Returns a spliterator over all the leaves in the tree, which splits by handing out <br>
+     * whole subtrees, so <code>leafStream().parallel()</code> spreads subtrees over cores.
+     */
+    public Spliterator<Branch<T>> leafSpliterator() {
+        return new LeafSpliterator<>(this.root, depth, dimensions);
+    }
+
+    /**
+     * Returns a stream of all the leaves in the tree. Call <code>parallel()</code> on it to scan in parallel.
+     */
+    public Stream<Branch<T>> leafStream() {
+        return StreamSupport.stream(leafSpliterator(), false);
     }
 
     /**
@@ -116,13 +431,308 @@ public abstract class Tree<T> {
         return getLeaves(this.root);
     }
 
+    /**
+     * Method which visits the elements of every leaf whose cell overlaps the box [min, max].   <br>
+     * Leaves don't remember the exact coordinates of their element, so matching happens at  <br>
+     * the resolution of the leaf cells. Branches outside of the box are skipped as a whole, <br>
+     * and unlike <code>getLeaf</code>, this never grows any branches.
+     */
+    public void queryRange(NVector min, NVector max, Consumer<? super T> consumer) {
+        if (min.coordinates.length != this.dimensions || max.coordinates.length != this.dimensions)
+            throw new IllegalArgumentException(String.format("Vector has different dimensions than required, Dv=%d, D=%d",
+                    min.coordinates.length != this.dimensions ? min.coordinates.length : max.coordinates.length, dimensions));
+
+        // Cell origins of the branch currently visited at every level, relative to the scale.
+        double[] origins = new double[dimensions * (depth + 1)];
+        if (!TreeMetrics.ENABLED) {
+            queryRange(this.root, 0, 1.0, min.coordinates, max.coordinates, origins, consumer);
+            return;
+        }
+
+        long start = metrics.traversal();
+        queryRange(this.root, 0, 1.0, min.coordinates, max.coordinates, origins, consumer);
+        metrics.traversed(start, "queryRange");
+    }
+
+    private void queryRange(Branch<T> branch, int level, double size, double[] min, double[] max,
+                            double[] origins, Consumer<? super T> consumer) {
+        int offset = level * dimensions;
+        for (int k = 0; k < dimensions; k++) {
+            double low = origins[offset + k] * scale;
+            if (low > max[k] || low + size * scale < min[k])
+                return;
+        }
+
+        if (branch.isLeaf()) {
+            consumer.accept(branch.data);
+            return;
+        }
+        if (branch.branches == null || level == depth)
+            return;
+
+        double half = size / 2;
+        for (int j = 0; j < nodeSize; j++) {
+            Branch<T> next = branch.getBranch(j);
+            if (next == null)
+                continue;
+
+            for (int k = 0; k < dimensions; k++)
+                origins[offset + dimensions + k] = origins[offset + k] + ((j >> k) & 1) * half;
+
+            queryRange(next, level + 1, half, min, max, origins, consumer);
+        }
+    }
+
     /**
      * Method which returns the depth of this tree.
      */
     public int getDepth() { return this.depth; }
 
-    public int getMaxNodeCount() {
-        return this.nodeSize; // (1 << dimensions) << depth = 2^(dimensions * depth).
+    /**
+     * Returns the most branches the tree can have, the root included like <code>getNodeCount</code>: <br>
+     * <tt>1 + 2^D + 2^2D + ... + 2^(D • depth)</tt>, or <tt>Long.MAX_VALUE</tt> when that doesn't fit.
+     */
+    public long getMaxNodeCount() {
+        long count = 0, level = 1;
+        for (int i = 0; i <= depth; i++) {
+            count += level;
+            if (i < depth && level > (Long.MAX_VALUE - count) / nodeSize)
+                return Long.MAX_VALUE;
+            level *= nodeSize;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the metrics of this tree, or null unless the JVM runs with <code>-Dproject.data.metrics=true</code>.
+     */
+    public TreeMetrics getMetrics() { return this.metrics; }
+
+    /**
+     * Returns whether the branches of this tree use the sparse, bitmask indexed layout.
+     */
+    public boolean isSparse() { return this.sparse; }
+
+    /**
+     * Method which counts the branches that currently exist in the tree, the root included.
+     */
+    public long getNodeCount() {
+        return countNodes(this.root);
+    }
+
+    private long countNodes(Branch<T> branch) {
+        long count = 1;
+        for (int i = 0; branch.branches != null && i < branch.branches.length; i++) {
+            if (branch.branches[i] != null)
+                count += countNodes(branch.branches[i]);
+        }
+        return count;
+    }
+
+    /**
+     * Method which estimates the heap taken up by the branches of this tree, in bytes.  <br>
+     * This counts the branch objects and their child arrays, not the stored elements. <br>
+     * The sizes assume a 64-bit HotSpot VM with compressed oops, so treat it as an    <br>
+     * estimate to compare layouts with, rather than an exact measurement.
+     */
+    public long estimateHeapSize() {
+        return estimateHeapSize(this.root);
+    }
+
+    private long estimateHeapSize(Branch<T> branch) {
+        long bytes = sparse ? SPARSE_BRANCH_SIZE : BRANCH_SIZE;
+        if (branch.branches != null) {
+            bytes += align(ARRAY_HEADER + (long) REFERENCE * branch.branches.length);
+            for (Branch<T> child : branch.branches) {
+                if (child != null)
+                    bytes += estimateHeapSize(child);
+            }
+        }
+        return bytes;
+    }
+
+    private void walkShape(long[] nodes, long[] occupancy) {
+        walkShape(this.root, 0, nodes, occupancy);
+    }
+
+    // Reads every field once, so a tree changing meanwhile can't trip it up.
+    private void walkShape(Branch<T> branch, int level, long[] nodes, long[] occupancy) {
+        nodes[level]++;
+        Branch<T>[] children = branch.branches;
+        if (children == null) {
+            // A leaf holds its one element, only an emptied root holds nothing.
+            occupancy[TreeMetrics.bucket(branch.data != null ? 1 : 0)]++;
+            return;
+        }
+
+        int count = 0;
+        for (Branch<T> child : children) {
+            if (child == null)
+                continue;
+            count++;
+            if (level < depth && level + 1 < TreeMetrics.MAX_LEVELS)
+                walkShape(child, level + 1, nodes, occupancy);
+        }
+        occupancy[TreeMetrics.bucket(count)]++;
+    }
+
+    private static int align(long bytes) {
+        return (int) ((bytes + 7) & ~7L);
+    }
+
+    /**
+     * Builds the subtree of one branch from a run of sorted codes that all lie below it.
+     */
+    private class BulkInsert extends RecursiveAction {
+        private final Branch<T> branch;
+        private final int level, from, to;
+        private final long[] codes;
+        private final int[] indices;
+        private final T[] elements;
+
+        private BulkInsert(Branch<T> branch, int level, int from, int to, long[] codes, int[] indices, T[] elements) {
+            this.branch = branch;
+            this.level = level;
+            this.from = from;
+            this.to = to;
+            this.codes = codes;
+            this.indices = indices;
+            this.elements = elements;
+        }
+
+        @Override
+        protected void compute() {
+            if (level == depth) {
+                // Sorting is stable, so the last element of the run is the last one given.
+                branch.data = elements[indices[to - 1]];
+                return;
+            }
+
+            int shift = (depth - 1 - level) * dimensions;
+            List<BulkInsert> forked = new ArrayList<>();
+
+            for (int start = from, end; start < to; start = end) {
+                int j = (int) (codes[start] >>> shift) & (nodeSize - 1);
+                for (end = start + 1; end < to && ((int) (codes[end] >>> shift) & (nodeSize - 1)) == j; end++);
+
+                // Only this task touches this branch, so growing it needs no synchronisation.
+                Branch<T> next = branch.getBranch(j);
+                if (next == null) {
+                    next = createBranch(branch, level + 1);
+                    branch.setBranch(j, next);
+                    if (TreeMetrics.ENABLED)
+                        metrics.branchAllocated();
+                }
+
+                BulkInsert task = new BulkInsert(next, level + 1, start, end, codes, indices, elements);
+                if (end - start >= BULK_THRESHOLD) {
+                    task.fork();
+                    forked.add(task);
+                } else {
+                    task.compute();
+                }
+            }
+
+            for (BulkInsert task : forked)
+                task.join();
+        }
+    }
+
+    /**
+     * Depth first walk over the leaves below a branch, keeping the branches still to visit <br>
+     * on a stack. The top of the stack is visited first, so splitting hands out its top half.
+     */
+    private static class LeafSpliterator<T> implements Spliterator<Branch<T>> {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private final int depth, dimensions;
+        private Branch<T>[] stack;
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        LeafSpliterator(Branch<T> branch, int depth, int dimensions) {
+            this((Branch<T>[]) new Branch[INITIAL_CAPACITY], 0, depth, dimensions);
+            this.stack[this.size++] = branch;
+        }
+
+        private LeafSpliterator(Branch<T>[] stack, int size, int depth, int dimensions) {
+            this.depth = depth;
+            this.dimensions = dimensions;
+            this.stack = stack;
+            this.size = size;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Branch<T>> action) {
+            while (size > 0) {
+                Branch<T> branch = stack[--size];
+                stack[size] = null;
+                if (branch.isLeaf()) {
+                    action.accept(branch);
+                    return true;
+                }
+                pushChildren(branch);
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Branch<T>> action) {
+            while (size > 0) {
+                Branch<T> branch = stack[--size];
+                stack[size] = null;
+                if (branch.isLeaf())
+                    action.accept(branch);
+                else
+                    pushChildren(branch);
+            }
+        }
+
+        private void pushChildren(Branch<T> branch) {
+            // Pushed in reverse, so the children are visited in index order.
+            for (int i = branch.branches == null ? -1 : branch.branches.length - 1; i >= 0; i--) {
+                if (branch.branches[i] != null) {
+                    if (size == stack.length)
+                        stack = Arrays.copyOf(stack, size << 1);
+                    stack[size++] = branch.branches[i];
+                }
+            }
+        }
+
+        @Override
+        public Spliterator<Branch<T>> trySplit() {
+            // A single subtree can't be handed out, so open it up first.
+            while (size == 1 && !stack[0].isLeaf() && stack[0].branches != null) {
+                Branch<T> branch = stack[0];
+                stack[--size] = null;
+                pushChildren(branch);
+            }
+            if (size < 2)
+                return null;
+
+            int half = size >>> 1;
+            // Everything above the top of the stack is null, so this copies exactly the top half.
+            Branch<T>[] prefix = Arrays.copyOfRange(stack, half, half + stack.length);
+            Arrays.fill(stack, half, size, null);
+
+            LeafSpliterator<T> split = new LeafSpliterator<>(prefix, size - half, depth, dimensions);
+            size = half;
+            return split;
+        }
+
+        @Override
+        public long estimateSize() {
+            // Upper bound of 2^D leaves per level below every pending branch.
+            long estimate = 0;
+            for (int i = 0; i < size && estimate >= 0; i++)
+                estimate += 1L << Math.min(dimensions * Math.max(depth - stack[i].depth, 0), 60);
+            return estimate < 0 ? Long.MAX_VALUE : estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | NONNULL;
+        }
     }
 
     public static class NVector {
@@ -140,6 +750,14 @@ public abstract class Tree<T> {
             this.root = root;
         }
 
+        /**
+         * Constructor for a vector that doesn't belong to any Tree, e.g. for a {@link KdTree}.
+         */
+        public NVector(double... coordinates) {
+            this.coordinates = coordinates;
+            this.root = null;
+        }
+
         @Override
         public String toString() {
             return Arrays.toString(coordinates);
@@ -147,7 +765,7 @@ public abstract class Tree<T> {
     }
 
     /**
-     * Branch class
+     * Branch class, holding an array of exactly 2^D child slots.
      */
     public static class Branch<T> {
         public T data = null;
@@ -162,6 +780,46 @@ public abstract class Tree<T> {
             this.root = root;
         }
 
+        /**
+         * Returns the child branch with index <tt>j</tt>, or null if it doesn't exist.
+         */
+        public Branch<T> getBranch(int j) {
+            return this.branches == null ? null : this.branches[j];
+        }
+
+        /**
+         * Sets the child branch with index <tt>j</tt>, growing the child array when necessary.
+         */
+        @SuppressWarnings("unchecked")
+        protected void setBranch(int j, Branch<T> branch) {
+            if (this.branches == null)
+                this.branches = (Branch<T>[]) new Branch[this.root.nodeSize];
+            this.branches[j] = branch;
+        }
+
+        /**
+         * Detaches the given child, dropping the child array once it's empty.
+         */
+        protected void removeBranch(Branch<T> child) {
+            boolean empty = true;
+            for (int j = 0; j < this.branches.length; j++) {
+                if (this.branches[j] == child)
+                    this.branches[j] = null;
+                else if (this.branches[j] != null)
+                    empty = false;
+            }
+            if (empty)
+                this.branches = null;
+        }
+
+        /**
+         * Drops the element and children, before the branch is reused.
+         */
+        protected void clear() {
+            this.data = null;
+            this.branches = null;
+        }
+
         /** Checks whether the branch is the first in the series.
          *  A TreeBranch can both be a first branch and a leaf at the same time
          *  with [Depth = 1].
@@ -187,4 +845,79 @@ public abstract class Tree<T> {
             return this.data != null;
         }
     }
+
+    /**
+     * Branch of a sparse tree, which only holds the children that exist, packed in index order.
+     */
+    public static class SparseBranch<T> extends Branch<T> {
+
+        /**
+         * Occupied child indices.                                                   <br>
+         * Bit <tt>j</tt> is set when child <tt>j</tt> exists, and it is stored at <br>
+         * <tt>branches[bitCount(mask & ((1 << j) - 1))]</tt>.
+         */
+        public long mask;
+
+        protected SparseBranch(Tree<T> root, Branch<T> parent, int depth) {
+            super(root, parent, depth);
+        }
+
+        @Override
+        public Branch<T> getBranch(int j) {
+            if ((this.mask & (1L << j)) == 0)
+                return null;
+            return this.branches[Long.bitCount(this.mask & ((1L << j) - 1))];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void setBranch(int j, Branch<T> branch) {
+            int slot = Long.bitCount(this.mask & ((1L << j) - 1));
+            if ((this.mask & (1L << j)) != 0) {
+                this.branches[slot] = branch;
+                return;
+            }
+
+            // Sparse branches only ever hold their existing children, so make room for one more.
+            int size = Long.bitCount(this.mask);
+            Branch<T>[] grown = (Branch<T>[]) new Branch[size + 1];
+            if (size > 0) {
+                System.arraycopy(this.branches, 0, grown, 0, slot);
+                System.arraycopy(this.branches, slot, grown, slot + 1, size - slot);
+            }
+            grown[slot] = branch;
+            this.branches = grown;
+            this.mask |= 1L << j;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void removeBranch(Branch<T> child) {
+            int slot = 0;
+            while (this.branches[slot] != child)
+                slot++;
+
+            // Clear the bit of the slot-th child and close the gap it leaves.
+            long bit = this.mask;
+            for (int i = 0; i < slot; i++)
+                bit &= bit - 1;
+            this.mask &= ~Long.lowestOneBit(bit);
+
+            int size = this.branches.length - 1;
+            if (size == 0) {
+                this.branches = null;
+                return;
+            }
+            Branch<T>[] shrunk = (Branch<T>[]) new Branch[size];
+            System.arraycopy(this.branches, 0, shrunk, 0, slot);
+            System.arraycopy(this.branches, slot + 1, shrunk, slot, size - slot);
+            this.branches = shrunk;
+        }
+
+        @Override
+        protected void clear() {
+            super.clear();
+            this.mask = 0;
+        }
+    }
 }
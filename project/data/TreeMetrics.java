@@ -0,0 +1,448 @@
+package project.data;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/** <tt>
+ * Operation counters, lookup and traversal latencies and shape statistics of one {@link OcTree} <br>
+ * or {@link Tree}. Off unless the JVM runs with <code>-Dproject.data.metrics=true</code>. Every  <br>
+ * hook in the trees sits behind the static final <code>ENABLED</code>, so when it's off the JIT   <br>
+ * drops them and the trees don't even get a metrics object.                                       <br>
+ * Counters are {@link LongAdder}s, so concurrent trees don't contend on them. Lookups, walks from <br>
+ * the root to one leaf, are only timed for one in <tt>project.data.metrics.sampling</tt> of them  <br>
+ * (64 by default). Traversals, range queries, leaf walks and nearest neighbour searches, take     <br>
+ * long enough to time every one. Both go into log-linear histograms with 4 buckets per power of   <br>
+ * two. Node counts per depth and the occupancy histogram are walked when asked for; while the    <br>
+ * tree is being changed meanwhile they're an estimate, but the walk is safe.                      <br>
+ * A tree's metrics can be published over JMX with <code>register(name)</code>, which also emits   <br>
+ * a JFR <tt>project.data.TreeShape</tt> event for it every 10 seconds during a recording. Sampled <br>
+ * lookups and traversals are recorded as <tt>project.data.TreeLookup</tt> and                     <br>
+ * <tt>project.data.TreeTraversal</tt> events.
+ * </tt>
+ */
+public final class TreeMetrics implements TreeMetricsMXBean {
+
+    public static final boolean ENABLED = Boolean.getBoolean("project.data.metrics");
+
+    private static final int SAMPLING = Integer.highestOneBit(Math.max(1, Integer.getInteger("project.data.metrics.sampling", 64)));
+    private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    // Levels the shape walk goes down at most, deeper than any tree can be.
+    static final int MAX_LEVELS = 64;
+    static final int OCCUPANCY_BUCKETS = 33;
+    private static final int LATENCY_BUCKETS = 256;
+
+    private static final Set<TreeMetrics> REGISTERED = ConcurrentHashMap.newKeySet();
+
+    static {
+        if (ENABLED)
+            FlightRecorder.addPeriodicEvent(ShapeEvent.class, TreeMetrics::emitShapes);
+    }
+
+    /**
+     * Walks the tree, adding every branch to <tt>nodes[depth]</tt> and counting the entries <br>
+     * of every node into the occupancy buckets, see <code>bucket</code>.
+     */
+    interface Walker {
+        void walk(long[] nodes, long[] occupancy);
+    }
+
+    private final String structure;
+    private final LongSupplier maxNodeCount;
+    private final Walker walker;
+    private volatile ObjectName name;
+
+    private final LongAdder inserts = new LongAdder();
+    private final LongAdder removals = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder branchAllocations = new LongAdder();
+    private final LongAdder branchReuses = new LongAdder();
+    private final LongAdder traversals = new LongAdder();
+    private final Latencies lookupLatencies = new Latencies();
+    private final Latencies traversalLatencies = new Latencies();
+
+    TreeMetrics(String structure, LongSupplier maxNodeCount, Walker walker) {
+        this.structure = structure;
+        this.maxNodeCount = maxNodeCount;
+        this.walker = walker;
+    }
+
+    // Hooks for the trees, only called when ENABLED.
+
+    void inserted() { inserts.increment(); }
+
+    void inserted(long count) { inserts.add(count); }
+
+    void removed() { removals.increment(); }
+
+    void branchAllocated() { branchAllocations.increment(); }
+
+    void branchReused() { branchReuses.increment(); }
+
+    /**
+     * Starts a lookup, returning the time to pass to <code>lookedUp</code> when this one is sampled.
+     */
+    long lookup() {
+        return (ThreadLocalRandom.current().nextInt() & (SAMPLING - 1)) == 0 ? System.nanoTime() : NOT_SAMPLED;
+    }
+
+    void lookedUp(long start) {
+        lookups.increment();
+        if (start == NOT_SAMPLED)
+            return;
+
+        long time = System.nanoTime() - start;
+        lookupLatencies.record(time);
+
+        LookupEvent event = new LookupEvent();
+        if (event.shouldCommit()) {
+            event.structure = structure;
+            event.time = time;
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts a traversal, returning the time to pass to <code>traversed</code>.
+     */
+    long traversal() {
+        return System.nanoTime();
+    }
+
+    void traversed(long start, String operation) {
+        long time = System.nanoTime() - start;
+        traversals.increment();
+        traversalLatencies.record(time);
+
+        TraversalEvent event = new TraversalEvent();
+        if (event.shouldCommit()) {
+            event.structure = structure;
+            event.operation = operation;
+            event.time = time;
+            event.commit();
+        }
+    }
+
+    /**
+     * Publishes these metrics as an MXBean under <tt>project.data:type=structure,name=name</tt>, <br>
+     * and emits periodic JFR shape events for the tree. This keeps the tree reachable until   <br>
+     * <code>unregister()</code> is called.
+     */
+    public TreeMetrics register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("project.data:type=" + structure + ",name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.name = objectName;
+            REGISTERED.add(this);
+            return this;
+        } catch (JMException e) {
+            throw new IllegalStateException("Couldn't register the metrics of " + structure + " '" + name + "'", e);
+        }
+    }
+
+    public void unregister() {
+        ObjectName objectName = this.name;
+        if (objectName == null)
+            return;
+        REGISTERED.remove(this);
+        this.name = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Couldn't unregister " + objectName, e);
+        }
+    }
+
+    @Override
+    public String getStructure() { return structure; }
+
+    @Override
+    public long getInserts() { return inserts.sum(); }
+
+    @Override
+    public long getRemovals() { return removals.sum(); }
+
+    @Override
+    public long getLookups() { return lookups.sum(); }
+
+    @Override
+    public long getBranchAllocations() { return branchAllocations.sum(); }
+
+    @Override
+    public long getBranchReuses() { return branchReuses.sum(); }
+
+    @Override
+    public long[] getNodeCountPerDepth() {
+        long[] nodes = new long[MAX_LEVELS];
+        walker.walk(nodes, new long[OCCUPANCY_BUCKETS]);
+        return trim(nodes);
+    }
+
+    @Override
+    public long getNodeCount() {
+        return Arrays.stream(getNodeCountPerDepth()).sum();
+    }
+
+    @Override
+    public long getMaxNodeCount() { return maxNodeCount.getAsLong(); }
+
+    @Override
+    public long[] getOccupancyHistogram() {
+        long[] occupancy = new long[OCCUPANCY_BUCKETS];
+        walker.walk(new long[MAX_LEVELS], occupancy);
+        return trim(occupancy);
+    }
+
+    @Override
+    public long getLatencySamples() { return lookupLatencies.samples(); }
+
+    @Override
+    public int getSampling() { return SAMPLING; }
+
+    @Override
+    public long getLatencyP50Nanos() { return getLatencyPercentile(0.5); }
+
+    @Override
+    public long getLatencyP90Nanos() { return getLatencyPercentile(0.9); }
+
+    @Override
+    public long getLatencyP99Nanos() { return getLatencyPercentile(0.99); }
+
+    @Override
+    public long getLatencyP999Nanos() { return getLatencyPercentile(0.999); }
+
+    @Override
+    public long getLatencyMaxNanos() { return lookupLatencies.max.get(); }
+
+    /**
+     * Returns the sampled lookup latency at the given quantile in nanoseconds, rounded up to <br>
+     * the top of its histogram bucket, so within 25% of the real value. 0 without samples.
+     */
+    public long getLatencyPercentile(double quantile) {
+        return lookupLatencies.percentile(quantile);
+    }
+
+    @Override
+    public long getTraversals() { return traversals.sum(); }
+
+    @Override
+    public long getTraversalP50Nanos() { return getTraversalPercentile(0.5); }
+
+    @Override
+    public long getTraversalP90Nanos() { return getTraversalPercentile(0.9); }
+
+    @Override
+    public long getTraversalP99Nanos() { return getTraversalPercentile(0.99); }
+
+    @Override
+    public long getTraversalMaxNanos() { return traversalLatencies.max.get(); }
+
+    /**
+     * Returns the traversal latency at the given quantile, like <code>getLatencyPercentile</code>.
+     */
+    public long getTraversalPercentile(double quantile) {
+        return traversalLatencies.percentile(quantile);
+    }
+
+    @Override
+    public void reset() {
+        inserts.reset();
+        removals.reset();
+        lookups.reset();
+        branchAllocations.reset();
+        branchReuses.reset();
+        traversals.reset();
+        lookupLatencies.reset();
+        traversalLatencies.reset();
+    }
+
+    /**
+     * Occupancy bucket of a node holding <tt>entries</tt> entries: 0 for none, otherwise <tt>floor(log2(entries)) + 1</tt>.
+     */
+    static int bucket(int entries) {
+        return 32 - Integer.numberOfLeadingZeros(entries);
+    }
+
+    // Values below 4 get a bucket each, above that every power of two is split in 4.
+    private static int latencyBucket(long nanos) {
+        if (nanos < 4)
+            return (int) Math.max(nanos, 0);
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        return 4 * (exponent - 1) + (int) ((nanos >>> (exponent - 2)) & 3);
+    }
+
+    private static long latencyBucketTop(int bucket) {
+        if (bucket < 4)
+            return bucket;
+        int exponent = bucket / 4 + 1;
+        long width = 1L << (exponent - 2);
+        return (4 + bucket % 4) * width + width - 1;
+    }
+
+    /**
+     * Log-linear latency histogram, safe to record into from several threads.
+     */
+    static final class Latencies {
+        private final AtomicLongArray counts = new AtomicLongArray(LATENCY_BUCKETS);
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            counts.incrementAndGet(latencyBucket(nanos));
+            max.accumulate(nanos);
+        }
+
+        long samples() {
+            long samples = 0;
+            for (int i = 0; i < LATENCY_BUCKETS; i++)
+                samples += counts.get(i);
+            return samples;
+        }
+
+        long percentile(double quantile) {
+            long[] snapshot = new long[LATENCY_BUCKETS];
+            long total = 0;
+            for (int i = 0; i < LATENCY_BUCKETS; i++)
+                total += snapshot[i] = counts.get(i);
+            if (total == 0)
+                return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            for (int i = 0; i < LATENCY_BUCKETS; i++) {
+                if ((rank -= snapshot[i]) <= 0)
+                    return Math.min(latencyBucketTop(i), max.get());
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < LATENCY_BUCKETS; i++)
+                counts.set(i, 0);
+            max.reset();
+        }
+    }
+
+    private static long[] trim(long[] values) {
+        int length = values.length;
+        while (length > 1 && values[length - 1] == 0)
+            length--;
+        return Arrays.copyOf(values, length);
+    }
+
+    private static void emitShapes() {
+        for (TreeMetrics metrics : REGISTERED) {
+            ObjectName objectName = metrics.name;
+            if (objectName == null)
+                continue;
+
+            long[] nodes = new long[MAX_LEVELS], occupancy = new long[OCCUPANCY_BUCKETS];
+            metrics.walker.walk(nodes, occupancy);
+
+            ShapeEvent event = new ShapeEvent();
+            event.structure = metrics.structure;
+            event.name = objectName.getKeyProperty("name");
+            event.nodes = Arrays.stream(nodes).sum();
+            event.maxNodes = metrics.getMaxNodeCount();
+            event.depth = trim(nodes).length - 1;
+            event.emptyNodes = occupancy[0];
+            event.inserts = metrics.getInserts();
+            event.lookups = metrics.getLookups();
+            event.p99 = metrics.getLatencyP99Nanos();
+            event.traversals = metrics.getTraversals();
+            event.traversalP99 = metrics.getTraversalP99Nanos();
+            event.commit();
+        }
+    }
+
+    @Name("project.data.TreeLookup")
+    @Label("Tree Lookup")
+    @Category({ "Project", "Data Structures" })
+    @Description("A sampled walk from the root of a tree down to a leaf")
+    @StackTrace(false)
+    static class LookupEvent extends Event {
+        @Label("Structure")
+        String structure;
+
+        @Label("Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long time;
+    }
+
+    @Name("project.data.TreeTraversal")
+    @Label("Tree Traversal")
+    @Category({ "Project", "Data Structures" })
+    @Description("A range query, leaf walk or nearest neighbour search over a tree")
+    @StackTrace(false)
+    static class TraversalEvent extends Event {
+        @Label("Structure")
+        String structure;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long time;
+    }
+
+    @Name("project.data.TreeShape")
+    @Label("Tree Shape")
+    @Category({ "Project", "Data Structures" })
+    @Description("Size and counters of a registered tree")
+    @Period("10 s")
+    @StackTrace(false)
+    static class ShapeEvent extends Event {
+        @Label("Structure")
+        String structure;
+
+        @Label("Name")
+        String name;
+
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Max Nodes")
+        long maxNodes;
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Empty Nodes")
+        long emptyNodes;
+
+        @Label("Inserts")
+        long inserts;
+
+        @Label("Lookups")
+        long lookups;
+
+        @Label("Lookup P99")
+        @Timespan(Timespan.NANOSECONDS)
+        long p99;
+
+        @Label("Traversals")
+        long traversals;
+
+        @Label("Traversal P99")
+        @Timespan(Timespan.NANOSECONDS)
+        long traversalP99;
+    }
+}
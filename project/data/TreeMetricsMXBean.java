@@ -0,0 +1,75 @@
+package project.data;
+
+/**
+ * Management interface of {@link TreeMetrics}, as registered with the platform MBean server
+ * under <tt>project.data:type=OcTree|Tree,name=...</tt>. Counters run from the creation of
+ * the tree or the last <code>reset()</code>; the shape attributes are walked on every read.
+ */
+public interface TreeMetricsMXBean {
+
+    String getStructure();
+
+    long getInserts();
+
+    long getRemovals();
+
+    /**
+     * Walks from the root to a leaf, for inserts and lookups alike.
+     */
+    long getLookups();
+
+    /**
+     * Branches created with <code>new</code>, as opposed to reused ones.
+     */
+    long getBranchAllocations();
+
+    long getBranchReuses();
+
+    /**
+     * Branches at every depth, the root being depth 0.
+     */
+    long[] getNodeCountPerDepth();
+
+    long getNodeCount();
+
+    long getMaxNodeCount();
+
+    /**
+     * Bucket 0 counts nodes holding nothing, bucket i > 0 nodes holding [2^(i-1), 2^i) entries. <br>
+     * Entries are the points of an OcTree leaf, or the children of a Tree branch; a Tree leaf <br>
+     * holds its element, so it lands in bucket 1, unless it's an empty root.
+     */
+    long[] getOccupancyHistogram();
+
+    /**
+     * Lookups timed, one in every <code>getSampling()</code> on average.
+     */
+    long getLatencySamples();
+
+    int getSampling();
+
+    long getLatencyP50Nanos();
+
+    long getLatencyP90Nanos();
+
+    long getLatencyP99Nanos();
+
+    long getLatencyP999Nanos();
+
+    long getLatencyMaxNanos();
+
+    /**
+     * Range queries, leaf walks and nearest neighbour searches, every one of them timed.
+     */
+    long getTraversals();
+
+    long getTraversalP50Nanos();
+
+    long getTraversalP90Nanos();
+
+    long getTraversalP99Nanos();
+
+    long getTraversalMaxNanos();
+
+    void reset();
+}
@@ -0,0 +1,251 @@
+package project.io;
+
+import project.data.FMath;
+import project.data.PointConsumer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** <tt>
+ * Read only {@link project.data.OcTree} answering queries straight from a file  <br>
+ * written by {@link OcTreeFile}, which is memory mapped rather than loaded.     <br>
+ * Opening is near instant whatever the size of the tree, no branch objects are  <br>
+ * created, and the operating system pages in only the parts that are queried,  <br>
+ * so trees larger than the heap work fine. Nodes are referred to by their index, <br>
+ * the root being node 0.                                                      <br>
+ * Queries don't change any state, so a mapped tree can be shared between threads.
+ * </tt>
+ */
+public class MappedOcTree implements Closeable {
+
+    // Mappings are limited to 2GB, so the sections are mapped in chunks of whole records.
+    private static final long NODE_CHUNK = 1L << 30;
+    private static final long POINT_CHUNK = (long) OcTreeFile.POINT_SIZE << 25;
+
+    private final FileChannel channel;
+    private final ByteBuffer[] nodes, points;
+
+    private final double scale;
+    private final int depth, leafCapacity;
+    private final long nodeCount, pointCount;
+
+    private MappedOcTree(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        ByteBuffer header = ByteBuffer.allocate(OcTreeFile.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0);
+        header.flip();
+
+        if (header.remaining() < OcTreeFile.HEADER_SIZE || header.getInt() != OcTreeFile.MAGIC)
+            throw new IOException("Not an OcTree file");
+        int version = header.getInt();
+        if (version != OcTreeFile.VERSION)
+            throw new IOException("Unsupported OcTree file version " + version);
+
+        this.scale = header.getDouble();
+        this.depth = header.getInt();
+        this.leafCapacity = header.getInt();
+        this.nodeCount = header.getLong();
+        this.pointCount = header.getLong();
+
+        long nodesOffset = OcTreeFile.HEADER_SIZE;
+        long pointsOffset = nodesOffset + nodeCount * OcTreeFile.NODE_SIZE;
+        if (channel.size() < pointsOffset + pointCount * OcTreeFile.POINT_SIZE)
+            throw new IOException("OcTree file is truncated");
+
+        this.nodes = map(nodesOffset, nodeCount * OcTreeFile.NODE_SIZE, NODE_CHUNK);
+        this.points = map(pointsOffset, pointCount * OcTreeFile.POINT_SIZE, POINT_CHUNK);
+    }
+
+    /**
+     * Maps the given file. The file must not be changed while it's open.
+     */
+    public static MappedOcTree open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new MappedOcTree(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private ByteBuffer[] map(long offset, long length, long chunk) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[(int) ((length + chunk - 1) / chunk)];
+        for (int i = 0; i < buffers.length; i++) {
+            long size = Math.min(chunk, length - i * chunk);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset + i * chunk, size);
+            buffers[i] = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return buffers;
+    }
+
+    /**
+     * Method for looking up the leaf node of the given coordinates.                     <br>
+     * Returns the index of the node, or -1 when the coordinates are out of bounds or <br>
+     * the tree has no branch there, just like <code>OcTree.findLeaf</code>.
+     */
+    public int findLeaf(double x, double y, double z) {
+        x /= scale;
+        y /= scale;
+        z /= scale;
+        if (x < 0 || x > 1 || y < 0 || y > 1 || z < 0 || z > 1)
+            return -1;
+
+        int node = 0;
+        for (int i = 0, j; i < depth; i++) {
+            // Adaptive trees end wherever a branch hasn't been split.
+            if (leafCapacity > 0 && getChildMask(node) == 0)
+                break;
+
+            // Same indexing as OcTree, i = |x| + 4|y| + 2|z|.
+            j = FMath.round(x) + FMath.round(y) * 4 + FMath.round(z) * 2;
+
+            node = getChild(node, j);
+            if (node < 0)
+                return -1;
+
+            x = (2 * x - FMath.round(x));
+            y = (2 * y - FMath.round(y));
+            z = (2 * z - FMath.round(z));
+        }
+        return node;
+    }
+
+    /**
+     * Returns whether the exact point [x, y, z] is stored in the tree.
+     */
+    public boolean contains(double x, double y, double z) {
+        int node = findLeaf(x, y, z);
+        if (node < 0)
+            return false;
+
+        long start = getPointStart(node);
+        for (int i = 0, n = getPointCount(node); i < n; i++) {
+            long p = (start + i) * OcTreeFile.POINT_SIZE;
+            if (getPointDouble(p) == x && getPointDouble(p + 8) == y && getPointDouble(p + 16) == z)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the index of child <tt>j</tt> of the given node, or -1 if it doesn't exist.
+     */
+    public int getChild(int node, int j) {
+        int mask = getChildMask(node);
+        if ((mask & (1 << j)) == 0)
+            return -1;
+        return getNodeInt(node, 0) + Integer.bitCount(mask & ((1 << j) - 1));
+    }
+
+    /**
+     * Returns the mask of the children the given node has, bit <tt>j</tt> being child <tt>j</tt>.
+     */
+    public int getChildMask(int node) {
+        return (int) getNodeLong(node, 8) & 0xFF;
+    }
+
+    /**
+     * Returns the amount of points stored in the given node.
+     */
+    public int getPointCount(int node) {
+        return getNodeInt(node, 4);
+    }
+
+    private long getPointStart(int node) {
+        return getNodeLong(node, 8) >>> 8;
+    }
+
+    /**
+     * Visits every point stored in the given node.
+     */
+    public void forEachPoint(int node, PointConsumer consumer) {
+        long start = getPointStart(node);
+        for (int i = 0, n = getPointCount(node); i < n; i++) {
+            long p = (start + i) * OcTreeFile.POINT_SIZE;
+            consumer.accept(getPointDouble(p), getPointDouble(p + 8), getPointDouble(p + 16));
+        }
+    }
+
+    /**
+     * Visits every point in the tree, in node order.
+     */
+    public void forEachPoint(PointConsumer consumer) {
+        for (long p = 0, end = pointCount * OcTreeFile.POINT_SIZE; p < end; p += OcTreeFile.POINT_SIZE)
+            consumer.accept(getPointDouble(p), getPointDouble(p + 8), getPointDouble(p + 16));
+    }
+
+    /**
+     * Method which visits every point inside the axis aligned box [min, max],  <br>
+     * skipping every node whose cell lies outside of the box.
+     */
+    public void queryRange(double minX, double minY, double minZ,
+                           double maxX, double maxY, double maxZ, PointConsumer consumer) {
+        if (nodeCount > 0)
+            queryRange(0, 0, 0, 0, scale, minX, minY, minZ, maxX, maxY, maxZ, consumer);
+    }
+
+    private void queryRange(int node, double ox, double oy, double oz, double size,
+                            double minX, double minY, double minZ,
+                            double maxX, double maxY, double maxZ, PointConsumer consumer) {
+        if (ox > maxX || oy > maxY || oz > maxZ || ox + size < minX || oy + size < minY || oz + size < minZ)
+            return;
+
+        long start = getPointStart(node);
+        for (int i = 0, n = getPointCount(node); i < n; i++) {
+            long p = (start + i) * OcTreeFile.POINT_SIZE;
+            double x = getPointDouble(p), y = getPointDouble(p + 8), z = getPointDouble(p + 16);
+            if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ)
+                consumer.accept(x, y, z);
+        }
+
+        int mask = getChildMask(node);
+        int child = getNodeInt(node, 0);
+        double half = size / 2;
+        for (int j = 0; j < 8; j++) {
+            if ((mask & (1 << j)) == 0)
+                continue;
+
+            // Inverse of the indexing, i = |x| + 4|y| + 2|z|.
+            queryRange(child++, ox + (j & 1) * half, oy + (j >> 2 & 1) * half, oz + (j >> 1 & 1) * half,
+                    half, minX, minY, minZ, maxX, maxY, maxZ, consumer);
+        }
+    }
+
+    public double getScale() { return this.scale; }
+
+    public int getDepth() { return this.depth; }
+
+    public long getNodeCount() { return this.nodeCount; }
+
+    public long getPointCount() { return this.pointCount; }
+
+    private int getNodeInt(int node, int field) {
+        long position = (long) node * OcTreeFile.NODE_SIZE + field;
+        return nodes[(int) (position / NODE_CHUNK)].getInt((int) (position % NODE_CHUNK));
+    }
+
+    private long getNodeLong(int node, int field) {
+        long position = (long) node * OcTreeFile.NODE_SIZE + field;
+        return nodes[(int) (position / NODE_CHUNK)].getLong((int) (position % NODE_CHUNK));
+    }
+
+    private double getPointDouble(long position) {
+        return points[(int) (position / POINT_CHUNK)].getDouble((int) (position % POINT_CHUNK));
+    }
+
+    /**
+     * Closes the file. The mapping itself is released once it's garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
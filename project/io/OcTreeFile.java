@@ -0,0 +1,110 @@
+package project.io;
+
+import project.data.OcTree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** <tt>
+ * Flat binary format for an {@link OcTree}, read back by {@link MappedOcTree}.  <br>
+ * All values are little endian. The file holds three sections:                <br>
+ * - A header of {@value #HEADER_SIZE} bytes: magic, version, scale, depth,      <br>
+ *   leaf capacity (0 for fixed depth trees), node count and point count.       <br>
+ * - The nodes, breadth first with the root first, {@value #NODE_SIZE} bytes each: <br>
+ *   the index of the first child, the amount of points, and the index of the  <br>
+ *   first point shifted left by 8, or'ed with a mask of the existing children. <br>
+ *   The children of a node are stored next to each other, in index order.     <br>
+ * - The points, {@value #POINT_SIZE} bytes each (x, y, z), grouped per node in node order.
+ * </tt>
+ */
+public final class OcTreeFile {
+
+    static final int MAGIC = 0x4F435446; // "OCTF"
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 48;
+    static final int NODE_SIZE = 16;
+    static final int POINT_SIZE = 24;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private OcTreeFile() {}
+
+    /**
+     * Writes the given tree to the given file, replacing it if it exists.
+     */
+    public static void write(OcTree tree, Path path) throws IOException {
+        // Breadth first numbering, so the children of every node end up next to each other.
+        List<OcTree.Branch> nodes = new ArrayList<>();
+        nodes.add(tree.getRoot());
+        long pointCount = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            OcTree.Branch branch = nodes.get(i);
+            pointCount += branch.size;
+            for (int j = 0; j < 8 && branch.branches != null; j++) {
+                if (branch.branches[j] != null)
+                    nodes.add(branch.branches[j]);
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putDouble(tree.getScale())
+                    .putInt(tree.getDepth())
+                    .putInt(tree.getLeafCapacity())
+                    .putLong(nodes.size())
+                    .putLong(pointCount)
+                    .putLong(0); // Reserved.
+
+            int nextChild = 1;
+            long nextPoint = 0;
+            for (OcTree.Branch branch : nodes) {
+                int mask = 0;
+                for (int j = 0; j < 8 && branch.branches != null; j++) {
+                    if (branch.branches[j] != null)
+                        mask |= 1 << j;
+                }
+
+                ensureRemaining(channel, buffer, NODE_SIZE);
+                buffer.putInt(mask == 0 ? -1 : nextChild)
+                        .putInt(branch.size)
+                        .putLong(nextPoint << 8 | mask);
+
+                nextChild += Integer.bitCount(mask);
+                nextPoint += branch.size;
+            }
+
+            for (OcTree.Branch branch : nodes) {
+                for (int i = 0; i < branch.size; i++) {
+                    ensureRemaining(channel, buffer, POINT_SIZE);
+                    buffer.putDouble(branch.xs[i])
+                            .putDouble(branch.ys[i])
+                            .putDouble(branch.zs[i]);
+                }
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    private static void ensureRemaining(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes)
+            flush(channel, buffer);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+}
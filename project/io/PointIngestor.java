@@ -0,0 +1,372 @@
+package project.io;
+
+import project.data.OcTree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/** <tt>
+ * Pipeline which streams points from files or sockets into an {@link OcTree}.     <br>
+ * Sources are parsed on the calling thread into fixed size batches, which a      <br>
+ * single writer thread inserts into the tree with <code>OcTree.insert</code>.   <br>
+ * Only a fixed amount of batches exists, so when the writer falls behind,       <br>
+ * parsing blocks until it catches up, and memory use stays bounded.             <br>
+ * The tree itself is only ever touched by the writer. Readers query snapshots   <br>
+ * instead: read-only copies of the tree the writer publishes every so often,    <br>
+ * which are never changed afterwards and can be queried from any thread.        <br>
+ * A snapshot only copies the branches points went into since the previous one  <br>
+ * and shares the rest with it, see <code>OcTree.snapshot</code>. That copy is   <br>
+ * made on the writer thread, which stalls ingestion meanwhile; when the points  <br>
+ * are spread all over the tree it's close to a full copy, so pick the interval  <br>
+ * with the size of the tree in mind.                                            <br>
+ * Several sources may be ingested at the same time from different threads.
+ * </tt>
+ */
+public class PointIngestor implements Closeable {
+
+    /**
+     * Formats of the point records read from a source.
+     */
+    public enum Format {
+        /** Text lines of the form <tt>x,y,z</tt>. Empty lines, lines starting with '#' and a header line are skipped. */
+        CSV,
+        /** Records of three little endian doubles, x, y and z. */
+        BINARY
+    }
+
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    private static final long POLL_MILLIS = 100;
+
+    // Handed to the writer to make it stop.
+    private static final Batch STOP = new Batch(0);
+
+    private final OcTree tree;
+    private final long snapshotInterval;
+
+    private final BlockingQueue<Batch> pending;
+    private final BlockingQueue<Batch> free;
+    private final Thread writer;
+
+    private volatile OcTree snapshot;
+    private volatile long inserted, rejected;
+    private volatile Throwable failure;
+
+    // Branches the writer inserted into since the last snapshot, and every branch above those.
+    private final Set<OcTree.Branch> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean closed;
+
+    /**
+     * Creates an ingestor feeding the given tree, which should not be touched elsewhere afterwards. <br>
+     * Points are handed over in batches of <tt>batchSize</tt>, with at most <tt>maxPendingBatches</tt> <br>
+     * waiting for the writer, and a new snapshot is published once <tt>snapshotIntervalMillis</tt> <br>
+     * have passed since the last one.
+     */
+    public PointIngestor(OcTree tree, int batchSize, int maxPendingBatches, long snapshotIntervalMillis) {
+        if (batchSize < 1 || maxPendingBatches < 1)
+            throw new IllegalArgumentException("Batch size and pending batch count must be at least 1");
+
+        this.tree = tree;
+        this.snapshotInterval = snapshotIntervalMillis * 1_000_000L;
+        this.snapshot = tree.snapshot(null, changed);
+
+        // One batch being written, one being parsed, and the ones waiting in between.
+        this.pending = new ArrayBlockingQueue<>(maxPendingBatches + 1);
+        this.free = new ArrayBlockingQueue<>(maxPendingBatches + 2);
+        for (int i = 0; i < maxPendingBatches + 2; i++)
+            this.free.add(new Batch(batchSize));
+
+        this.writer = new Thread(this::write, "OcTree writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Reads every point from the given file, returning the amount of points read.
+     */
+    public long ingest(Path path, Format format) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return ingest(channel, format);
+        }
+    }
+
+    /**
+     * Reads points from the given channel until it ends, returning the amount of points read. <br>
+     * Blocks whenever the writer is behind. The channel is not closed.
+     */
+    public long ingest(ReadableByteChannel channel, Format format) throws IOException {
+        if (closed)
+            throw new IllegalStateException("Ingestor is closed");
+        checkFailure();
+
+        return format == Format.CSV ? readCsv(channel) : readBinary(channel);
+    }
+
+    private long readBinary(ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        Batch batch = takeFree();
+        long count = 0;
+
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            while (buffer.remaining() >= 24) {
+                batch.add(buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+                count++;
+                if (batch.isFull())
+                    batch = handOver(batch);
+            }
+            buffer.compact();
+        }
+        if (buffer.position() > 0)
+            throw new IOException("Source ended in the middle of a record");
+
+        handOverLast(batch);
+        return count;
+    }
+
+    private long readCsv(ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        byte[] line = new byte[256];
+        double[] values = new double[3];
+        int length = 0;
+        long lineNumber = 0, count = 0;
+        Batch batch = takeFree();
+
+        for (boolean end = false; !end; ) {
+            end = channel.read(buffer) < 0;
+            buffer.flip();
+
+            while (buffer.hasRemaining() || (end && length > 0)) {
+                byte b = buffer.hasRemaining() ? buffer.get() : (byte) '\n';
+                if (b != '\n') {
+                    if (length == line.length)
+                        line = Arrays.copyOf(line, length << 1);
+                    line[length++] = b;
+                    continue;
+                }
+
+                lineNumber++;
+                if (parseLine(line, length, values, lineNumber)) {
+                    batch.add(values[0], values[1], values[2]);
+                    count++;
+                    if (batch.isFull())
+                        batch = handOver(batch);
+                }
+                length = 0;
+            }
+            buffer.clear();
+        }
+
+        handOverLast(batch);
+        return count;
+    }
+
+    /**
+     * Parses one CSV line into <tt>values</tt>, returning whether it held a point.
+     */
+    private static boolean parseLine(byte[] line, int length, double[] values, long lineNumber) throws IOException {
+        // Trim, also getting rid of the '\r' of Windows line endings.
+        int start = 0;
+        while (start < length && line[start] <= ' ')
+            start++;
+        while (length > start && line[length - 1] <= ' ')
+            length--;
+        if (start == length || line[start] == '#')
+            return false;
+
+        int field = 0;
+        try {
+            for (int i = start; i <= length && field < 3; i++) {
+                if (i == length || line[i] == ',') {
+                    values[field++] = Double.parseDouble(new String(line, start, i - start, StandardCharsets.US_ASCII));
+                    start = i + 1;
+                }
+            }
+        } catch (NumberFormatException e) {
+            // A header line, such as "x,y,z".
+            if (lineNumber == 1)
+                return false;
+            throw new IOException("Malformed point on line " + lineNumber, e);
+        }
+        if (field < 3)
+            throw new IOException("Expected 3 values on line " + lineNumber + ", found " + field);
+
+        return true;
+    }
+
+    /**
+     * Takes an empty batch, blocking while the writer is behind.
+     */
+    private Batch takeFree() throws IOException {
+        try {
+            Batch batch;
+            while ((batch = free.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null)
+                checkFailure();
+            return batch;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the writer", e);
+        }
+    }
+
+    /**
+     * Hands a batch to the writer, blocking while the writer is behind.
+     */
+    private void put(Batch batch) throws IOException {
+        try {
+            while (!pending.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS))
+                checkFailure();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the writer", e);
+        }
+    }
+
+    /**
+     * Hands a full batch to the writer and returns an empty one.
+     */
+    private Batch handOver(Batch batch) throws IOException {
+        put(batch);
+        return takeFree();
+    }
+
+    private void handOverLast(Batch batch) throws IOException {
+        if (batch.size == 0)
+            free.add(batch);
+        else
+            put(batch);
+    }
+
+    private void write() {
+        long lastSnapshot = System.nanoTime();
+        try {
+            while (true) {
+                Batch batch = pending.take();
+                if (batch == STOP)
+                    break;
+
+                double[] points = batch.points;
+                OcTree.Branch last = null;
+                int count = 0;
+                for (int i = 0, n = batch.size * 3; i < n; i += 3) {
+                    OcTree.Branch leaf = tree.insert(points[i], points[i + 1], points[i + 2]);
+                    if (leaf == null)
+                        continue;
+                    count++;
+                    // Consecutive points tend to share a leaf, and once a branch is in the set so is everything above it.
+                    if (leaf != last) {
+                        for (OcTree.Branch branch = leaf; branch != null && changed.add(branch); branch = branch.parent);
+                        last = leaf;
+                    }
+                }
+                inserted += count;
+                rejected += batch.size - count;
+
+                batch.size = 0;
+                free.add(batch);
+
+                if (System.nanoTime() - lastSnapshot >= snapshotInterval) {
+                    publishSnapshot();
+                    lastSnapshot = System.nanoTime();
+                }
+            }
+            publishSnapshot();
+        } catch (InterruptedException e) {
+            // Parsers waiting on the writer would wait forever otherwise.
+            failure = e;
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            // Parsers waiting on the writer pick this up and fail as well.
+            failure = t;
+        }
+    }
+
+    private void publishSnapshot() {
+        snapshot = tree.snapshot(snapshot, changed);
+        changed.clear();
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null)
+            throw new IOException("Writer failed", failure);
+    }
+
+    /**
+     * Returns the latest snapshot of the tree. A snapshot is a read-only copy which is never <br>
+     * changed again, so it can be queried freely while ingestion continues. Methods which   <br>
+     * would change it throw, and its branches may be shared with later snapshots.
+     */
+    public OcTree getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the amount of points the writer has inserted so far.
+     */
+    public long getInsertedCount() {
+        return inserted;
+    }
+
+    /**
+     * Returns the amount of points the tree rejected so far, because they were out of its bounds.
+     */
+    public long getRejectedCount() {
+        return rejected;
+    }
+
+    /**
+     * Waits for the writer to insert everything handed to it and publishes a final snapshot. <br>
+     * Ingestion must have finished on every thread before calling this.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+
+        put(STOP);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the writer", e);
+        }
+        checkFailure();
+    }
+
+    /**
+     * Interleaved x, y, z coordinates of up to a fixed amount of points.
+     */
+    private static final class Batch {
+        final double[] points;
+        int size;
+
+        Batch(int capacity) {
+            this.points = new double[capacity * 3];
+        }
+
+        void add(double x, double y, double z) {
+            points[size * 3] = x;
+            points[size * 3 + 1] = y;
+            points[size * 3 + 2] = z;
+            size++;
+        }
+
+        boolean isFull() {
+            return size * 3 == points.length;
+        }
+    }
+}
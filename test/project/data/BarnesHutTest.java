@@ -0,0 +1,211 @@
+package project.data;
+
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks {@link BarnesHut} against the exact all pairs sum, and the mass aggregates it relies on <br>
+ * against sums recomputed from the points, after removals, moves, splits and merges.
+ */
+class BarnesHutTest {
+
+    private static final double SOFTENING = 0.01;
+
+    @Test
+    void thetaZeroIsTheExactSum() {
+        Random random = new Random(42);
+        for (OcTree tree : new OcTree[] { new OcTree(4).trackMass(), OcTree.adaptive(1.0, 8).trackMass() }) {
+            double[][] bodies = bodies(random, tree, 1000);
+            double[][] accelerations = accelerations(new BarnesHut(tree).setTheta(0).setSoftening(SOFTENING), bodies);
+
+            for (int i = 0; i < bodies.length; i++) {
+                double[] exact = exact(bodies, bodies[i][0], bodies[i][1], bodies[i][2]);
+                // Only the order of the additions differs, so the error is rounding relative to the size of the terms.
+                double bound = 1e-14 * exact[3];
+                for (int k = 0; k < 3; k++)
+                    assertEquals(exact[k], accelerations[i][k], bound, "Body " + i);
+            }
+        }
+    }
+
+    @Test
+    void thetaHalfStaysClose() {
+        Random random = new Random(7);
+        for (OcTree tree : new OcTree[] { new OcTree(5).trackMass(), OcTree.adaptive(1.0, 8).trackMass() }) {
+            double[][] bodies = bodies(random, tree, 3000);
+            double[][] accelerations = accelerations(new BarnesHut(tree).setTheta(0.5).setSoftening(SOFTENING), bodies);
+
+            double total = 0, worst = 0;
+            for (int i = 0; i < bodies.length; i++) {
+                double[] exact = exact(bodies, bodies[i][0], bodies[i][1], bodies[i][2]);
+                double dx = accelerations[i][0] - exact[0], dy = accelerations[i][1] - exact[1], dz = accelerations[i][2] - exact[2];
+                double error = Math.sqrt(dx * dx + dy * dy + dz * dz) / Math.sqrt(exact[0] * exact[0] + exact[1] * exact[1] + exact[2] * exact[2]);
+                total += error;
+                worst = Math.max(worst, error);
+            }
+            assertTrue(total / bodies.length < 1e-2, "Mean relative error " + total / bodies.length);
+            assertTrue(worst < 0.05, "Worst relative error " + worst);
+        }
+    }
+
+    @Test
+    void singlePointMatchesTheBatch() {
+        OcTree tree = OcTree.adaptive(1.0, 4).trackMass();
+        double[][] bodies = bodies(new Random(3), tree, 200);
+        BarnesHut barnesHut = new BarnesHut(tree).setGravity(6.674e-11);
+        double[][] accelerations = accelerations(barnesHut, bodies);
+
+        Vector3d out = new Vector3d();
+        for (int i = 0; i < bodies.length; i++) {
+            barnesHut.acceleration(bodies[i][0], bodies[i][1], bodies[i][2], out);
+            assertEquals(accelerations[i][0], out.x);
+            assertEquals(accelerations[i][1], out.y);
+            assertEquals(accelerations[i][2], out.z);
+        }
+    }
+
+    @Test
+    void aggregatesFollowChanges() {
+        Random random = new Random(11);
+        for (OcTree tree : new OcTree[] { new OcTree(4), OcTree.adaptive(1.0, 4) }) {
+            // Half of the bodies go in before mass is tracked, weighing 1.
+            List<double[]> bodies = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                double[] body = { random.nextDouble(), random.nextDouble(), random.nextDouble(), 1 };
+                tree.insert(body[0], body[1], body[2]);
+                bodies.add(body);
+            }
+            tree.trackMass();
+            assertAggregates(tree.getRoot());
+
+            for (int round = 0; round < 20; round++) {
+                for (int i = 0; i < 50; i++) {
+                    double[] body = randomBody(random);
+                    tree.insert(body[0], body[1], body[2], body[3]);
+                    bodies.add(body);
+                }
+                // Moves within a cell and across the tree.
+                for (int i = 0; i < 50; i++) {
+                    double[] body = bodies.get(random.nextInt(bodies.size()));
+                    double[] next = random.nextBoolean() ? new double[] { body[0], body[1], Math.min(1, body[2] + 1e-4) } : randomBody(random);
+                    assertTrue(tree.update(body[0], body[1], body[2], next[0], next[1], next[2]) != null);
+                    System.arraycopy(next, 0, body, 0, 3);
+                }
+                // Removing more than gets inserted, so the adaptive tree merges on the way down.
+                for (int i = 0; i < 60 + round; i++) {
+                    double[] body = bodies.remove(random.nextInt(bodies.size()));
+                    assertTrue(tree.remove(body[0], body[1], body[2]));
+                }
+                if (round % 5 == 4)
+                    tree.compact();
+
+                assertAggregates(tree.getRoot());
+                double mass = 0;
+                for (double[] body : bodies)
+                    mass += body[3];
+                assertEquals(mass, tree.getRoot().mass, 1e-9 * mass);
+            }
+        }
+    }
+
+    @Test
+    void rejectsUntrackedTreesAndNegativeTheta() {
+        assertThrows(IllegalArgumentException.class, () -> new BarnesHut(new OcTree(3)));
+        BarnesHut barnesHut = new BarnesHut(new OcTree(3).trackMass());
+        assertThrows(IllegalArgumentException.class, () -> barnesHut.setTheta(-0.1));
+    }
+
+    /**
+     * Inserts <tt>n</tt> bodies, a third of them in a tight cluster, returning them as [x, y, z, mass].
+     */
+    private static double[][] bodies(Random random, OcTree tree, int n) {
+        double[][] bodies = new double[n][];
+        for (int i = 0; i < n; i++) {
+            double[] body = randomBody(random);
+            if (i % 3 == 0) {
+                for (int k = 0; k < 3; k++)
+                    body[k] = 0.6 + body[k] * 0.05;
+            }
+            tree.insert(body[0], body[1], body[2], body[3]);
+            bodies[i] = body;
+        }
+        return bodies;
+    }
+
+    private static double[] randomBody(Random random) {
+        return new double[] { random.nextDouble(), random.nextDouble(), random.nextDouble(), 0.5 + random.nextDouble() * 1.5 };
+    }
+
+    private static double[][] accelerations(BarnesHut barnesHut, double[][] bodies) {
+        int n = bodies.length;
+        double[] xs = new double[n], ys = new double[n], zs = new double[n], ax = new double[n], ay = new double[n], az = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = bodies[i][0];
+            ys[i] = bodies[i][1];
+            zs[i] = bodies[i][2];
+        }
+        barnesHut.accelerations(xs, ys, zs, ax, ay, az);
+
+        double[][] accelerations = new double[n][];
+        for (int i = 0; i < n; i++)
+            accelerations[i] = new double[] { ax[i], ay[i], az[i] };
+        return accelerations;
+    }
+
+    /**
+     * The all pairs sum at [x, y, z] with G = 1, followed by the sum of the magnitudes of its terms.
+     */
+    private static double[] exact(double[][] bodies, double x, double y, double z) {
+        double ax = 0, ay = 0, az = 0, magnitude = 0;
+        for (double[] body : bodies) {
+            double dx = body[0] - x, dy = body[1] - y, dz = body[2] - z;
+            double d2 = dx * dx + dy * dy + dz * dz;
+            if (d2 == 0)
+                continue;
+            double r2 = d2 + SOFTENING * SOFTENING;
+            double f = body[3] / (r2 * Math.sqrt(r2));
+            ax += f * dx;
+            ay += f * dy;
+            az += f * dz;
+            magnitude += f * Math.sqrt(d2);
+        }
+        return new double[] { ax, ay, az, magnitude };
+    }
+
+    /**
+     * Checks the aggregates of every branch against the points below it, returning [mass, massX, massY, massZ].
+     */
+    private static double[] assertAggregates(OcTree.Branch branch) {
+        double[] sums = new double[4];
+        for (int i = 0; i < branch.size; i++) {
+            double mass = branch.getMass(i);
+            sums[0] += mass;
+            sums[1] += mass * branch.xs[i];
+            sums[2] += mass * branch.ys[i];
+            sums[3] += mass * branch.zs[i];
+        }
+        for (int j = 0; j < 8 && branch.branches != null; j++) {
+            if (branch.branches[j] == null)
+                continue;
+            double[] child = assertAggregates(branch.branches[j]);
+            for (int k = 0; k < 4; k++)
+                sums[k] += child[k];
+        }
+
+        // Removals subtract again, so an emptied branch can keep a tiny remainder.
+        double tolerance = 1e-9 * (1 + sums[0]);
+        assertEquals(sums[0], branch.mass, tolerance);
+        assertEquals(sums[1], branch.massX, tolerance);
+        assertEquals(sums[2], branch.massY, tolerance);
+        assertEquals(sums[3], branch.massZ, tolerance);
+        return sums;
+    }
+}
@@ -0,0 +1,155 @@
+package project.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Moves, adds and removes boxes in a {@link BroadPhase} over a number of ticks, checking the  <br>
+ * pairs of both searches after every tick against testing all pairs of boxes.
+ */
+class BroadPhaseTest {
+
+    private static final double SCALE = 10;
+    private static final int BOXES = 3000;
+
+    @Test
+    void pairsMatchAllPairsScanOverTicks() {
+        Random random = new Random(42);
+        BroadPhase broadPhase = new BroadPhase(5, SCALE);
+        List<double[]> boxes = new ArrayList<>();
+        List<Integer> live = new ArrayList<>();
+        for (int i = 0; i < BOXES; i++)
+            add(broadPhase, boxes, live, randomBox(random));
+
+        for (int tick = 0; tick < 30; tick++) {
+            // Most boxes drift a bit, a few jump across the world.
+            for (int id : live) {
+                double[] box = boxes.get(id);
+                if (random.nextInt(50) == 0) {
+                    box = randomBox(random);
+                } else {
+                    double dx = random.nextGaussian() * 0.05, dy = random.nextGaussian() * 0.05, dz = random.nextGaussian() * 0.05;
+                    box = new double[] { box[0] + dx, box[1] + dy, box[2] + dz, box[3] + dx, box[4] + dy, box[5] + dz };
+                }
+                boxes.set(id, box);
+                broadPhase.update(id, box[0], box[1], box[2], box[3], box[4], box[5]);
+            }
+
+            // Then some leave and others come in, taking over the freed ids.
+            for (int i = 0; i < 40; i++) {
+                int id = live.remove(random.nextInt(live.size()));
+                broadPhase.remove(id);
+                boxes.set(id, null);
+            }
+            for (int i = 0; i < 35; i++)
+                add(broadPhase, boxes, live, randomBox(random));
+
+            assertEquals(live.size(), broadPhase.size());
+            Set<Long> expected = allPairs(boxes);
+            assertEquals(expected, sequentialPairs(broadPhase));
+            assertEquals(expected, parallelPairs(broadPhase));
+        }
+    }
+
+    @Test
+    void touchingAndNestedBoxes() {
+        BroadPhase broadPhase = new BroadPhase(3, 1);
+        int a = broadPhase.add(0.1, 0.1, 0.1, 0.5, 0.5, 0.5);
+        int b = broadPhase.add(0.5, 0.2, 0.2, 0.6, 0.3, 0.3);      // Touches a at x = 0.5
+        int c = broadPhase.add(0.2, 0.2, 0.2, 0.21, 0.21, 0.21);   // Deep inside a
+        int d = broadPhase.add(-1, -1, -1, 2, 2, 2);               // Sticks out, so kept in the root
+        int e = broadPhase.add(0.7, 0.7, 0.7, 0.8, 0.8, 0.8);
+        int f = broadPhase.add(0.01, 0.01, 0.01, 0.02, 0.02, 0.02);
+        int g = broadPhase.add(0.02, 0.01, 0.01, 0.03, 0.02, 0.02);  // Touches f in the same cell
+
+        Set<Long> expected = new HashSet<>(List.of(pair(a, b), pair(a, c), pair(a, d), pair(b, d), pair(c, d), pair(d, e),
+                pair(d, f), pair(d, g), pair(f, g)));
+        assertEquals(expected, sequentialPairs(broadPhase));
+        assertEquals(expected, parallelPairs(broadPhase));
+        assertTrue(broadPhase.overlaps(a, b));
+
+        broadPhase.remove(d);
+        assertEquals(Set.of(pair(a, b), pair(a, c), pair(f, g)), sequentialPairs(broadPhase));
+        assertEquals(d, broadPhase.add(0.75, 0.75, 0.75, 0.9, 0.9, 0.9));
+        assertEquals(Set.of(pair(a, b), pair(a, c), pair(d, e), pair(f, g)), sequentialPairs(broadPhase));
+    }
+
+    @Test
+    void unknownIdsAreRejected() {
+        BroadPhase broadPhase = new BroadPhase(3, 1);
+        int id = broadPhase.add(0.1, 0.1, 0.1, 0.2, 0.2, 0.2);
+        broadPhase.remove(id);
+        assertThrows(IllegalArgumentException.class, () -> broadPhase.remove(id));
+        assertThrows(IllegalArgumentException.class, () -> broadPhase.update(id, 0, 0, 0, 1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> broadPhase.remove(5));
+    }
+
+    private static void add(BroadPhase broadPhase, List<double[]> boxes, List<Integer> live, double[] box) {
+        int id = broadPhase.add(box[0], box[1], box[2], box[3], box[4], box[5]);
+        while (boxes.size() <= id)
+            boxes.add(null);
+        assertNull(boxes.get(id), "Id " + id + " handed out twice");
+        boxes.set(id, box);
+        live.add(id);
+    }
+
+    /**
+     * Mostly small boxes, some large ones, and some reaching out of the world.
+     */
+    private static double[] randomBox(Random random) {
+        double size = random.nextInt(20) == 0 ? random.nextDouble() * 3 : random.nextDouble() * 0.4;
+        double x = random.nextDouble() * (SCALE + 1) - 0.5, y = random.nextDouble() * (SCALE + 1) - 0.5, z = random.nextDouble() * (SCALE + 1) - 0.5;
+        return new double[] { x, y, z, x + size * random.nextDouble(), y + size * random.nextDouble(), z + size * random.nextDouble() };
+    }
+
+    private static Set<Long> allPairs(List<double[]> boxes) {
+        Set<Long> pairs = new HashSet<>();
+        for (int a = 0; a < boxes.size(); a++) {
+            double[] p = boxes.get(a);
+            for (int b = a + 1; b < boxes.size() && p != null; b++) {
+                double[] q = boxes.get(b);
+                if (q != null && p[0] <= q[3] && q[0] <= p[3] && p[1] <= q[4] && q[1] <= p[4] && p[2] <= q[5] && q[2] <= p[5])
+                    pairs.add(pair(a, b));
+            }
+        }
+        return pairs;
+    }
+
+    private static Set<Long> sequentialPairs(BroadPhase broadPhase) {
+        Set<Long> pairs = new HashSet<>();
+        broadPhase.findPairs((a, b) -> {
+            assertTrue(a < b, "Pair " + a + ", " + b + " out of order");
+            assertTrue(pairs.add(pair(a, b)), "Pair " + a + ", " + b + " reported twice");
+        });
+        return pairs;
+    }
+
+    private static Set<Long> parallelPairs(BroadPhase broadPhase) {
+        Set<Long> pairs = ConcurrentHashMap.newKeySet();
+        List<String> problems = Collections.synchronizedList(new ArrayList<>());
+        broadPhase.findPairsParallel((a, b) -> {
+            if (a >= b)
+                problems.add("Pair " + a + ", " + b + " out of order");
+            if (!pairs.add(pair(a, b)))
+                problems.add("Pair " + a + ", " + b + " reported twice");
+        });
+        assertEquals(List.of(), problems);
+        return pairs;
+    }
+
+    private static long pair(int a, int b) {
+        return (long) a << 32 | b;
+    }
+}
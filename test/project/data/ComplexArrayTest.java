@@ -0,0 +1,113 @@
+package project.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks the bulk operations of {@link ComplexArray} against the same operations on single <br>
+ * {@link FMath.Complex} values, and the in-place Complex operations with aliased operands.
+ */
+class ComplexArrayTest {
+
+    private static final int LENGTH = 257;
+
+    @Test
+    void elementWiseOperationsMatchComplex() {
+        Random random = new Random(42);
+        ComplexArray a = random(random), b = random(random), out = new ComplexArray(LENGTH);
+        FMath.Complex x = new FMath.Complex(0, 0), y = new FMath.Complex(0, 0), z = new FMath.Complex(0, 0);
+
+        a.add(b, out);
+        for (int i = 0; i < LENGTH; i++)
+            assertElement(a.get(i, x).addInto(b.get(i, y), z), out, i);
+
+        a.subtract(b, out);
+        for (int i = 0; i < LENGTH; i++)
+            assertElement(a.get(i, x).subtractInto(b.get(i, y), z), out, i);
+
+        a.multiply(b, out);
+        for (int i = 0; i < LENGTH; i++)
+            assertElement(a.get(i, x).multiplyInto(b.get(i, y), z), out, i);
+
+        out.copyFrom(a).scale(-2.5);
+        for (int i = 0; i < LENGTH; i++)
+            assertElement(a.get(i, x).scaleInto(-2.5, z), out, i);
+
+        out.copyFrom(a).conjugate();
+        for (int i = 0; i < LENGTH; i++)
+            assertElement(a.get(i, x).conjugateInto(z), out, i);
+
+        double[] magnitudes = a.magnitude(new double[LENGTH]);
+        for (int i = 0; i < LENGTH; i++)
+            assertEquals(Math.hypot(a.re(i), a.im(i)), magnitudes[i], 1e-15);
+    }
+
+    @Test
+    void operationsIntoAnOperand() {
+        Random random = new Random(1);
+        ComplexArray a = random(random), b = random(random);
+        ComplexArray expected = new ComplexArray(LENGTH);
+
+        a.multiply(b, expected);
+        assertSame(b, a.multiply(b, b));
+        assertArrayEquals(expected.data, b.data);
+
+        // a * a, so both operands are the destination.
+        a.multiply(a, expected);
+        a.multiply(a);
+        assertArrayEquals(expected.data, a.data);
+    }
+
+    @Test
+    void lengthsMustMatch() {
+        ComplexArray a = new ComplexArray(4), b = new ComplexArray(5);
+        assertThrows(IllegalArgumentException.class, () -> a.add(b));
+        assertThrows(IllegalArgumentException.class, () -> a.multiply(a, b));
+        assertThrows(IllegalArgumentException.class, () -> a.copyFrom(b));
+        assertThrows(IllegalArgumentException.class, () -> new ComplexArray(new double[3]));
+        assertThrows(IllegalArgumentException.class, () -> a.magnitude(new double[3]));
+    }
+
+    @Test
+    void complexInPlaceOperations() {
+        // (3 + 4i) / (1 - 2i) = (3 + 4i)(1 + 2i) / 5 = (-5 + 10i) / 5 = -1 + 2i
+        FMath.Complex a = new FMath.Complex(3, 4), b = new FMath.Complex(1, -2);
+        assertComplex(-1, 2, a.divide(b));
+        assertComplex(-1, 2, a.divideInto(b, a));
+        assertComplex(-1, 2, a);
+
+        // Dividing by itself through aliasing gives exactly 1.
+        FMath.Complex c = new FMath.Complex(0.3, -1.7);
+        assertComplex(1, 0, c.divideInto(c, c));
+
+        FMath.Complex d = new FMath.Complex(2, 3);
+        d.multiplyInto(d, d);
+        assertComplex(-5, 12, d);
+        d.addInto(d, d).subtractInto(new FMath.Complex(1, 1), d);
+        assertComplex(-11, 23, d);
+        assertEquals(5, new FMath.Complex(3, -4).magnitude());
+    }
+
+    private static ComplexArray random(Random random) {
+        ComplexArray array = new ComplexArray(LENGTH);
+        for (int i = 0; i < LENGTH; i++)
+            array.set(i, random.nextGaussian(), random.nextGaussian());
+        return array;
+    }
+
+    private static void assertElement(FMath.Complex expected, ComplexArray array, int i) {
+        assertEquals(expected.real, array.re(i), "re " + i);
+        assertEquals(expected.complex, array.im(i), "im " + i);
+    }
+
+    private static void assertComplex(double real, double complex, FMath.Complex actual) {
+        assertEquals(real, actual.real, 1e-15);
+        assertEquals(complex, actual.complex, 1e-15);
+    }
+}
@@ -0,0 +1,159 @@
+package project.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Fills a {@link ConcurrentOcTree} from several threads at once, with readers walking it the whole
+ * time, and checks the result point for point against an {@link OcTree} filled from one thread.
+ */
+class ConcurrentOcTreeTest {
+
+    private static final int POINTS = 400_000;
+    private static final int WRITERS = 8;
+    private static final int READERS = 2;
+    private static final int DEPTH = 4;
+
+    @Test
+    void concurrentInsertsMatchSequentialTree() throws Exception {
+        double[][] points = points();
+        ConcurrentOcTree tree = new ConcurrentOcTree(DEPTH);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean done = new AtomicBoolean();
+        CyclicBarrier start = new CyclicBarrier(WRITERS + READERS);
+        List<Thread> threads = new ArrayList<>();
+
+        // Writers take interleaved points, so they keep hitting the same leaves at the same time.
+        for (int t = 0; t < WRITERS; t++) {
+            int first = t;
+            threads.add(thread(failure, () -> {
+                start.await();
+                for (int i = first; i < POINTS; i += WRITERS)
+                    assertNotNull(tree.insert(points[0][i], points[1][i], points[2][i]));
+            }));
+        }
+        for (int t = 0; t < READERS; t++) {
+            threads.add(thread(failure, () -> {
+                start.await();
+                long previous = 0;
+                while (!done.get()) {
+                    long seen = checkPublished(tree);
+                    assertTrue(seen >= previous, "Points disappeared: " + seen + " after " + previous);
+                    assertTrue(seen <= POINTS);
+                    previous = seen;
+                }
+            }));
+        }
+
+        for (Thread thread : threads.subList(0, WRITERS))
+            thread.join();
+        done.set(true);
+        for (Thread thread : threads)
+            thread.join();
+        if (failure.get() != null)
+            throw new AssertionError("A writer or reader failed", failure.get());
+
+        assertEquals(POINTS, checkPublished(tree));
+
+        OcTree expected = new OcTree(DEPTH);
+        for (int i = 0; i < POINTS; i++)
+            expected.insert(points[0][i], points[1][i], points[2][i]);
+
+        List<ConcurrentOcTree.Branch> leaves = tree.getLeaves();
+        assertEquals(expected.getLeaves().size(), leaves.size());
+        for (ConcurrentOcTree.Branch leaf : leaves) {
+            double[][] actual = sorted(leaf);
+            OcTree.Branch reference = expected.findLeaf(actual[0][0], actual[0][1], actual[0][2]);
+            assertEquals(reference.size, leaf.size());
+
+            double[][] wanted = new double[reference.size][];
+            for (int i = 0; i < reference.size; i++)
+                wanted[i] = new double[] { reference.xs[i], reference.ys[i], reference.zs[i] };
+            Arrays.sort(wanted, Arrays::compare);
+            for (int i = 0; i < wanted.length; i++)
+                assertArrayEquals(wanted[i], actual[i]);
+        }
+    }
+
+    @Test
+    void outOfBoundsPointsAreRejected() {
+        ConcurrentOcTree tree = new ConcurrentOcTree(DEPTH);
+        assertNull(tree.insert(-0.1, 0.5, 0.5));
+        assertNull(tree.insert(0.5, 1.1, 0.5));
+        assertNull(tree.findLeaf(0.5, 0.5, 0.5));
+        assertEquals(0, tree.getLeaves().size());
+    }
+
+    /**
+     * Walks the tree as a reader, checking that every branch it reaches is fully set up and <br>
+     * that every point it sees is complete and lies in the leaf holding it. Returns the points seen.
+     */
+    private static long checkPublished(ConcurrentOcTree tree) {
+        long[] seen = new long[1];
+        for (ConcurrentOcTree.Branch leaf : tree.getLeaves()) {
+            assertEquals(DEPTH, leaf.depth);
+            for (ConcurrentOcTree.Branch branch = leaf; branch.parent != null; branch = branch.parent)
+                assertEquals(branch.parent.depth + 1, branch.depth);
+
+            leaf.forEachPoint((x, y, z) -> {
+                // Unwritten slots would read as zeros, which no generated point has.
+                assertTrue(x > 0 && y > 0 && z > 0, "Saw an unwritten point");
+                assertSame(leaf, tree.findLeaf(x, y, z));
+                seen[0]++;
+            });
+        }
+        return seen[0];
+    }
+
+    private static double[][] sorted(ConcurrentOcTree.Branch leaf) {
+        List<double[]> points = new ArrayList<>();
+        leaf.forEachPoint((x, y, z) -> points.add(new double[] { x, y, z }));
+        points.sort(Arrays::compare);
+        return points.toArray(new double[0][]);
+    }
+
+    /**
+     * Points in (0, 1), half of them packed in a few small blobs so leaves get crowded.
+     */
+    private static double[][] points() {
+        Random random = new Random(42);
+        double[][] points = new double[3][POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            boolean clustered = i % 2 == 0;
+            double cx = (i % 7) / 8.0 + 0.06;
+            for (int k = 0; k < 3; k++)
+                points[k][i] = clustered ? cx + random.nextDouble() * 0.01 : 0.001 + random.nextDouble() * 0.998;
+        }
+        return points;
+    }
+
+    private interface Body {
+        void run() throws Exception;
+    }
+
+    private static Thread thread(AtomicReference<Throwable> failure, Body body) {
+        Thread thread = new Thread(() -> {
+            try {
+                body.run();
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,136 @@
+package project.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks {@link FFT} against a naive DFT for power of two and Bluestein sizes, the round trip <br>
+ * through the inverse, and the parallel split against the sequential transform.
+ */
+class FFTTest {
+
+    private static final int[] SIZES = { 1, 2, 3, 5, 7, 12, 16, 100, 256, 1000, 1024, 4095, 4096 };
+
+    @Test
+    void matchesNaiveDft() {
+        Random random = new Random(42);
+        for (int size : SIZES) {
+            ComplexArray input = randomSignal(size, random);
+            ComplexArray output = new ComplexArray(size).copyFrom(input);
+            new FFT(size).transform(output);
+
+            // Rounding grows with n log n, measured errors stay well below this.
+            double bound = 1e-15 * size * (1 + log2(size));
+            double error = maxDistance(dft(input), output);
+            assertTrue(error <= bound, "Size " + size + ": error " + error + " above " + bound);
+        }
+    }
+
+    @Test
+    void lengthOneIsTheIdentity() {
+        FFT fft = new FFT(1);
+        ComplexArray data = new ComplexArray(1);
+        data.set(0, 1.5, -2.25);
+        fft.transform(data);
+        assertEquals(1.5, data.re(0));
+        assertEquals(-2.25, data.im(0));
+        fft.inverse(data);
+        assertEquals(1.5, data.re(0));
+        assertEquals(-2.25, data.im(0));
+    }
+
+    @Test
+    void inverseRoundTrip() {
+        Random random = new Random(7);
+        for (int size : SIZES) {
+            ComplexArray input = randomSignal(size, random);
+            ComplexArray data = new ComplexArray(size).copyFrom(input);
+            FFT fft = new FFT(size);
+
+            fft.transform(data);
+            fft.inverse(data);
+            double error = maxDistance(input, data);
+            assertTrue(error <= 1e-14, "Size " + size + ": round trip error " + error);
+        }
+    }
+
+    @Test
+    void largeTransformsOfASingleTone() {
+        // Too large for the naive DFT, but a pure tone transforms into a single spike of height n.
+        for (int size : new int[] { 1 << 16, 100_000 }) {
+            int frequency = 1234;
+            ComplexArray data = new ComplexArray(size);
+            for (int j = 0; j < size; j++) {
+                double angle = 2 * Math.PI * ((long) frequency * j % size) / size;
+                data.set(j, Math.cos(angle), Math.sin(angle));
+            }
+            new FFT(size).transform(data);
+
+            for (int k = 0; k < size; k++) {
+                double expected = k == frequency ? size : 0;
+                assertEquals(expected, data.re(k), 1e-12 * size, "re " + k + " of " + size);
+                assertEquals(0, data.im(k), 1e-12 * size, "im " + k + " of " + size);
+            }
+        }
+    }
+
+    @Test
+    void parallelMatchesSequential() {
+        Random random = new Random(3);
+        for (int size : new int[] { 1 << 15, 1 << 17, 50_000 }) {
+            ComplexArray input = randomSignal(size, random);
+            ComplexArray sequential = new ComplexArray(size).copyFrom(input);
+            ComplexArray parallel = new ComplexArray(size).copyFrom(input);
+
+            new FFT(size).setParallel(false).transform(sequential);
+            new FFT(size).setParallel(true).transform(parallel);
+            assertArrayEquals(sequential.data, parallel.data, "Size " + size);
+        }
+    }
+
+    @Test
+    void rejectsWrongSizes() {
+        assertThrows(IllegalArgumentException.class, () -> new FFT(0));
+        assertThrows(IllegalArgumentException.class, () -> new FFT(8).transform(new ComplexArray(7)));
+    }
+
+    private static int log2(int n) {
+        return 32 - Integer.numberOfLeadingZeros(n - 1);
+    }
+
+    private static ComplexArray randomSignal(int size, Random random) {
+        ComplexArray signal = new ComplexArray(size);
+        for (int i = 0; i < size; i++)
+            signal.set(i, random.nextGaussian(), random.nextGaussian());
+        return signal;
+    }
+
+    private static ComplexArray dft(ComplexArray x) {
+        int n = x.length();
+        ComplexArray result = new ComplexArray(n);
+        for (int k = 0; k < n; k++) {
+            double re = 0, im = 0;
+            for (int j = 0; j < n; j++) {
+                double angle = -2 * Math.PI * ((long) j * k % n) / n;
+                double c = Math.cos(angle), s = Math.sin(angle);
+                re += x.re(j) * c - x.im(j) * s;
+                im += x.re(j) * s + x.im(j) * c;
+            }
+            result.set(k, re, im);
+        }
+        return result;
+    }
+
+    private static double maxDistance(ComplexArray a, ComplexArray b) {
+        double max = 0;
+        for (int i = 0; i < a.length(); i++)
+            max = Math.max(max, Math.hypot(a.re(i) - b.re(i), a.im(i) - b.im(i)));
+        return max;
+    }
+}
@@ -0,0 +1,127 @@
+package project.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Max errors of every sine and cosine variant against <code>Math.sin</code> and <code>Math.cos</code>, <br>
+ * on angles within a turn and up to 1000 radians, at the bounds the docs of {@link FMath} promise.
+ */
+class FMathTest {
+
+    private static final int ANGLES = 1 << 16;
+
+    private static final float[] SMALL = new float[ANGLES], LARGE = new float[ANGLES];
+
+    static {
+        Random random = new Random(42);
+        for (int i = 0; i < ANGLES; i++) {
+            SMALL[i] = (float) (random.nextDouble() * 2 * Math.PI - Math.PI);
+            LARGE[i] = (float) (random.nextDouble() * 2000 - 1000);
+        }
+    }
+
+    @Test
+    void tableErrors() {
+        // One table step is 2π / 32768 ≈ 1.9e-4; large angles lose another half step to the float index.
+        assertMaxError(x -> FMath.fsin((float) x), Math::sin, 2e-4, 3.5e-4);
+        assertMaxError(x -> FMath.fcos((float) x), Math::cos, 2e-4, 3.5e-4);
+    }
+
+    @Test
+    void interpolatedErrors() {
+        // Interpolation error is about step² / 8 ≈ 4.6e-9, the rest is rounding to float.
+        assertMaxError(x -> FMath.fsin_lerp((float) x), Math::sin, 4e-8, 4e-8);
+        assertMaxError(x -> FMath.fcos_lerp((float) x), Math::cos, 4e-8, 4e-8);
+        assertMaxError(FMath::dsin, Math::sin, 5e-9, 5e-9);
+        assertMaxError(FMath::dcos, Math::cos, 5e-9, 5e-9);
+    }
+
+    @Test
+    void polynomialErrors() {
+        assertMaxError(x -> FMath.fsin_poly((float) x), Math::sin, 4e-8, 4e-8);
+        assertMaxError(x -> FMath.fcos_poly((float) x), Math::cos, 4e-8, 4e-8);
+        assertMaxError(FMath::dsin_poly, Math::sin, 4e-16, 4e-16);
+        assertMaxError(FMath::dcos_poly, Math::cos, 4e-16, 4e-16);
+    }
+
+    @Test
+    void polynomialUpTo1e5() {
+        Random random = new Random(7);
+        double max = 0;
+        for (int i = 0; i < ANGLES; i++) {
+            double x = random.nextDouble() * 2e5 - 1e5;
+            max = Math.max(max, Math.abs(FMath.dsin_poly(x) - Math.sin(x)));
+            max = Math.max(max, Math.abs(FMath.dcos_poly(x) - Math.cos(x)));
+        }
+        assertTrue(max < 1e-15, "Max error " + max);
+    }
+
+    @Test
+    void exactPoints() {
+        assertEquals(0, FMath.dsin_poly(0));
+        assertEquals(1, FMath.dcos_poly(0));
+        assertEquals(1, FMath.dsin_poly(Math.PI / 2), 1e-16);
+        assertEquals(-1, FMath.dcos_poly(Math.PI), 1e-16);
+        assertEquals(0, FMath.dsin(0));
+        assertEquals(1, FMath.dcos(0), 1e-16);
+    }
+
+    @Test
+    void batchMatchesScalar() {
+        float[] out = new float[ANGLES];
+        for (FMath.Precision precision : FMath.Precision.values()) {
+            FMath.fsin(LARGE, out, precision);
+            for (int i = 0; i < ANGLES; i++)
+                assertEquals(scalarSin(LARGE[i], precision), out[i], precision + " sin of " + LARGE[i]);
+
+            FMath.fcos(LARGE, out, precision);
+            for (int i = 0; i < ANGLES; i++)
+                assertEquals(scalarCos(LARGE[i], precision), out[i], precision + " cos of " + LARGE[i]);
+        }
+
+        // In place
+        float[] angles = SMALL.clone();
+        FMath.fsin(angles, angles, FMath.Precision.POLY);
+        for (int i = 0; i < ANGLES; i++)
+            assertEquals(FMath.fsin_poly(SMALL[i]), angles[i]);
+
+        assertThrows(IllegalArgumentException.class, () -> FMath.fsin(SMALL, new float[ANGLES - 1]));
+    }
+
+    private static float scalarSin(float x, FMath.Precision precision) {
+        switch (precision) {
+            case TABLE: return FMath.fsin(x);
+            case LERP:  return FMath.fsin_lerp(x);
+            default:    return FMath.fsin_poly(x);
+        }
+    }
+
+    private static float scalarCos(float x, FMath.Precision precision) {
+        switch (precision) {
+            case TABLE: return FMath.fcos(x);
+            case LERP:  return FMath.fcos_lerp(x);
+            default:    return FMath.fcos_poly(x);
+        }
+    }
+
+    private static void assertMaxError(DoubleUnaryOperator variant, DoubleUnaryOperator reference, double small, double large) {
+        double error = maxError(variant, reference, SMALL);
+        assertTrue(error < small, "Max error " + error + " within a turn, expected below " + small);
+        error = maxError(variant, reference, LARGE);
+        assertTrue(error < large, "Max error " + error + " up to 1000, expected below " + large);
+    }
+
+    private static double maxError(DoubleUnaryOperator variant, DoubleUnaryOperator reference, float[] angles) {
+        double max = 0;
+        for (float angle : angles)
+            max = Math.max(max, Math.abs(variant.applyAsDouble(angle) - reference.applyAsDouble(angle)));
+        return max;
+    }
+}
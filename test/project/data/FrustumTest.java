@@ -0,0 +1,285 @@
+package project.data;
+
+import org.joml.Matrix4f;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the frustum and ray queries of {@link OcTree} against brute force scans, with the <br>
+ * frustum side done in clip space straight from a JOML perspective × lookAt matrix.
+ */
+class FrustumTest {
+
+    private static final int POINTS = 20_000;
+
+    @Test
+    void frustumPointsMatchClipSpace() {
+        Random random = new Random(42);
+        for (OcTree tree : trees(random)) {
+            double[][] points = points(tree);
+            int partial = 0;
+            for (int view = 0; view < 20; view++) {
+                Matrix4f matrix = camera(random, tree.getScale());
+
+                Set<List<Double>> found = new HashSet<>();
+                tree.queryFrustum(matrix, (x, y, z) -> assertTrue(found.add(List.of(x, y, z)), "Visited twice"));
+
+                Set<List<Double>> expected = new HashSet<>();
+                for (double[] point : points) {
+                    if (insideClip(matrix, point[0], point[1], point[2]))
+                        expected.add(List.of(point[0], point[1], point[2]));
+                }
+                assertEquals(expected, found);
+                if (!found.isEmpty() && found.size() < points.length)
+                    partial++;
+            }
+            // Most views should see part of the tree, rather than none or all of it.
+            assertTrue(partial > 10, "Only " + partial + " views saw part of the tree");
+        }
+    }
+
+    @Test
+    void frustumLeavesMatchClipSpace() {
+        Random random = new Random(7);
+        for (OcTree tree : trees(random)) {
+            for (int view = 0; view < 20; view++) {
+                Matrix4f matrix = camera(random, tree.getScale());
+                Set<OcTree.Branch> found = Collections.newSetFromMap(new IdentityHashMap<>());
+                tree.queryFrustumLeaves(matrix, leaf -> assertTrue(found.add(leaf), "Visited twice"));
+
+                for (OcTree.Branch leaf : tree.getLeaves()) {
+                    boolean holdsVisible = false;
+                    for (int i = 0; i < leaf.size; i++)
+                        holdsVisible |= insideClip(matrix, leaf.xs[i], leaf.ys[i], leaf.zs[i]);
+
+                    // Leaves with visible points have to be there, leaves beyond one of the planes can't be.
+                    if (holdsVisible)
+                        assertTrue(found.contains(leaf));
+                    if (outsideClip(matrix, cell(tree, leaf)))
+                        assertFalse(found.contains(leaf));
+                }
+            }
+        }
+    }
+
+    @Test
+    void firstHitMatchesSmallestT() {
+        Random random = new Random(3);
+        OcTree.RayHit hit = new OcTree.RayHit();
+        for (OcTree tree : trees(random)) {
+            double[][] points = points(tree);
+            double scale = tree.getScale(), radius = 0.02 * scale;
+            int hits = 0;
+            for (int cast = 0; cast < 500; cast++) {
+                double[] ray = ray(random, scale);
+
+                double best = Double.POSITIVE_INFINITY;
+                double[] closest = null;
+                for (double[] point : points) {
+                    double t = hitT(ray, point, radius);
+                    if (t < best) {
+                        best = t;
+                        closest = point;
+                    }
+                }
+
+                boolean any = tree.castRay(ray[0], ray[1], ray[2], ray[3], ray[4], ray[5], radius, hit);
+                assertEquals(closest != null, any);
+                if (!any)
+                    continue;
+                hits++;
+                assertEquals(best, hit.t);
+                assertEquals(closest[0], hit.leaf.xs[hit.index]);
+                assertEquals(closest[1], hit.leaf.ys[hit.index]);
+                assertEquals(closest[2], hit.leaf.zs[hit.index]);
+            }
+            assertTrue(hits > 100, "Only " + hits + " rays hit anything");
+        }
+    }
+
+    @Test
+    void allHitsMatchBruteForce() {
+        Random random = new Random(11);
+        for (OcTree tree : trees(random)) {
+            double[][] points = points(tree);
+            double scale = tree.getScale(), radius = 0.03 * scale;
+            for (int cast = 0; cast < 200; cast++) {
+                double[] ray = ray(random, scale);
+
+                Set<List<Double>> found = new HashSet<>();
+                tree.castRay(ray[0], ray[1], ray[2], ray[3], ray[4], ray[5], radius, (leaf, index, t) -> {
+                    double[] point = { leaf.xs[index], leaf.ys[index], leaf.zs[index] };
+                    assertEquals(hitT(ray, point, radius), t);
+                    assertTrue(found.add(List.of(point[0], point[1], point[2])), "Hit twice");
+                    return true;
+                });
+
+                Set<List<Double>> expected = new HashSet<>();
+                for (double[] point : points) {
+                    if (hitT(ray, point, radius) < Double.POSITIVE_INFINITY)
+                        expected.add(List.of(point[0], point[1], point[2]));
+                }
+                assertEquals(expected, found);
+            }
+        }
+    }
+
+    @Test
+    void castStopsWhenAsked() {
+        OcTree tree = new OcTree(3);
+        for (int i = 0; i < 10; i++)
+            tree.insert(0.05 + i * 0.09, 0.5, 0.5);
+
+        int[] count = new int[1];
+        tree.castRay(0, 0.5, 0.5, 1, 0, 0, 0.01, (leaf, index, t) -> ++count[0] < 3);
+        assertEquals(3, count[0]);
+    }
+
+    @Test
+    void rejectsDegenerateDirections() {
+        OcTree tree = new OcTree(3);
+        tree.insert(0.5, 0.5, 0.5);
+        OcTree.RayHit hit = new OcTree.RayHit();
+        OcTree.RayConsumer consumer = (leaf, index, t) -> true;
+
+        assertThrows(IllegalArgumentException.class, () -> tree.castRay(0.5, 0.5, 0.5, 0, 0, 0, 0.1, hit));
+        assertThrows(IllegalArgumentException.class, () -> tree.castRay(0.5, 0.5, 0.5, 0, 0, 0, 0.1, consumer));
+        assertThrows(IllegalArgumentException.class, () -> tree.castRay(0.5, 0.5, 0.5, Double.NaN, 1, 0, 0.1, hit));
+        assertThrows(IllegalArgumentException.class, () -> tree.castRay(0.5, 0.5, 0.5, 1e200, 0, 0, 0.1, consumer));
+
+        assertTrue(tree.castRay(0.5, 0.5, 0, 0, 0, 1e-3, 0.1, hit));
+        assertSame(tree.findLeaf(0.5, 0.5, 0.5), hit.leaf);
+    }
+
+    /**
+     * A fixed depth tree with a scale of 2 and an adaptive one, both with clustered and spread out points.
+     */
+    private static OcTree[] trees(Random random) {
+        OcTree[] trees = { new OcTree(4, 2.0), OcTree.adaptive(1.0, 16) };
+        for (OcTree tree : trees) {
+            double scale = tree.getScale();
+            for (int i = 0; i < POINTS; i++) {
+                double spread = i % 4 == 0 ? 0.1 : 1;
+                double x = (i % 4 == 0 ? 0.3 : 0) + random.nextDouble() * spread;
+                double y = (i % 4 == 0 ? 0.6 : 0) + random.nextDouble() * spread;
+                double z = (i % 4 == 0 ? 0.2 : 0) + random.nextDouble() * spread;
+                tree.insert(x * scale, y * scale, z * scale);
+            }
+        }
+        return trees;
+    }
+
+    private static double[][] points(OcTree tree) {
+        List<double[]> points = new ArrayList<>();
+        for (OcTree.Branch leaf : tree.getLeaves()) {
+            for (int i = 0; i < leaf.size; i++)
+                points.add(new double[] { leaf.xs[i], leaf.ys[i], leaf.zs[i] });
+        }
+        return points.toArray(new double[0][]);
+    }
+
+    /**
+     * A camera somewhere around the tree, looking at a random spot in it, seeing part of it.
+     */
+    private static Matrix4f camera(Random random, double scale) {
+        float s = (float) scale;
+        float ex = (random.nextFloat() * 3 - 1) * s, ey = (random.nextFloat() * 3 - 1) * s, ez = -0.8f * s;
+        float cx = random.nextFloat() * s, cy = random.nextFloat() * s, cz = random.nextFloat() * s;
+        float fov = (float) Math.toRadians(30 + random.nextInt(60));
+        return new Matrix4f()
+                .perspective(fov, 1.5f, 0.05f * s, (1 + random.nextFloat() * 2) * s)
+                .lookAt(ex, ey, ez, cx, cy, cz, 0, 1, 0);
+    }
+
+    // Clip space row r of the point is m.m0r * x + m.m1r * y + m.m2r * z + m.m3r.
+    private static double[] clip(Matrix4f m, double x, double y, double z) {
+        return new double[] {
+                m.m00() * x + m.m10() * y + m.m20() * z + m.m30(),
+                m.m01() * x + m.m11() * y + m.m21() * z + m.m31(),
+                m.m02() * x + m.m12() * y + m.m22() * z + m.m32(),
+                m.m03() * x + m.m13() * y + m.m23() * z + m.m33()
+        };
+    }
+
+    private static boolean insideClip(Matrix4f m, double x, double y, double z) {
+        double[] c = clip(m, x, y, z);
+        return -c[3] <= c[0] && c[0] <= c[3] && -c[3] <= c[1] && c[1] <= c[3] && -c[3] <= c[2] && c[2] <= c[3];
+    }
+
+    /**
+     * Returns whether all corners of the box are beyond the same one of the 6 clip planes.
+     */
+    private static boolean outsideClip(Matrix4f m, double[] box) {
+        int[] beyond = new int[6];
+        for (int corner = 0; corner < 8; corner++) {
+            double[] c = clip(m, box[(corner & 1) * 3], box[(corner >> 1 & 1) * 3 + 1], box[(corner >> 2 & 1) * 3 + 2]);
+            for (int k = 0; k < 3; k++) {
+                if (c[k] < -c[3])
+                    beyond[2 * k]++;
+                if (c[k] > c[3])
+                    beyond[2 * k + 1]++;
+            }
+        }
+        for (int count : beyond) {
+            if (count == 8)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the cell of a branch as [minX, minY, minZ, maxX, maxY, maxZ], found by walking up to the root.
+     */
+    private static double[] cell(OcTree tree, OcTree.Branch branch) {
+        double x = 0, y = 0, z = 0, size = tree.getScale();
+        for (OcTree.Branch child = branch; child.parent != null; child = child.parent) {
+            int j = 0;
+            while (child.parent.branches[j] != child)
+                j++;
+            double half = tree.getScale() / (1L << child.depth);
+            x += (j & 1) * half;
+            y += (j >> 2 & 1) * half;
+            z += (j >> 1 & 1) * half;
+        }
+        size /= 1L << branch.depth;
+        return new double[] { x, y, z, x + size, y + size, z + size };
+    }
+
+    /**
+     * Origin around the tree and a direction towards a spot inside it, unnormalised.
+     */
+    private static double[] ray(Random random, double scale) {
+        double[] ray = new double[6];
+        for (int k = 0; k < 3; k++) {
+            ray[k] = (random.nextDouble() * 2 - 0.5) * scale;
+            ray[k + 3] = (random.nextDouble() * scale - ray[k]) * (0.5 + random.nextDouble() * 3);
+        }
+        return ray;
+    }
+
+    /**
+     * The same t the cast computes, or positive infinity when the point is behind or too far from the ray.
+     */
+    private static double hitT(double[] ray, double[] point, double radius) {
+        double dx = ray[3], dy = ray[4], dz = ray[5];
+        double px = point[0] - ray[0], py = point[1] - ray[1], pz = point[2] - ray[2];
+        double t = (px * dx + py * dy + pz * dz) / (dx * dx + dy * dy + dz * dz);
+        if (t < 0)
+            return Double.POSITIVE_INFINITY;
+        double qx = px - t * dx, qy = py - t * dy, qz = pz - t * dz;
+        return qx * qx + qy * qy + qz * qz > radius * radius ? Double.POSITIVE_INFINITY : t;
+    }
+}
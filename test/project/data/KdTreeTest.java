@@ -0,0 +1,90 @@
+package project.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Inserts into {@link KdTree} with many elements sharing one position, which used to re-split <br>
+ * the leaf holding them on every insert, and checks the queries against a brute force scan.
+ */
+class KdTreeTest {
+
+    private static final int COPIES = 200_000;
+
+    @Test
+    @Timeout(value = 10, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void manyCopiesOfOnePoint() {
+        KdTree<Integer> tree = new KdTree<>(3);
+        for (int i = 0; i < COPIES; i++)
+            tree.insert(i, 0.25, 0.5, 0.75);
+
+        assertEquals(COPIES, tree.size());
+        assertEquals(1, tree.getNodeCount());
+        assertTrue(tree.contains(new Tree.NVector(0.25, 0.5, 0.75)));
+        assertEquals(COPIES, count(tree, new Tree.NVector(0, 0, 0), new Tree.NVector(1, 1, 1)));
+        assertEquals(5, tree.nearest(new Tree.NVector(0, 0, 0), 5, 0).size());
+
+        // Another position splits it after all.
+        tree.insert(-1, 0.3, 0.5, 0.75);
+        assertTrue(tree.getNodeCount() > 1);
+        assertEquals(-1, tree.nearest(new Tree.NVector(0.3, 0.5, 0.75)));
+        assertEquals(COPIES, count(tree, new Tree.NVector(0.25, 0.5, 0.75), new Tree.NVector(0.25, 0.5, 0.75)));
+    }
+
+    @Test
+    @Timeout(value = 10, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void copiesAmongOtherPoints() {
+        Random random = new Random(42);
+        KdTree<Integer> tree = new KdTree<>(3, 8);
+        double[][] others = new double[4000][];
+        for (int i = 0; i < others.length; i++) {
+            others[i] = new double[] { random.nextDouble(), random.nextDouble(), random.nextDouble() };
+            if (i == others.length / 2) {
+                // Halfway through, a pile of copies in the middle of everything else.
+                for (int c = 0; c < COPIES; c++)
+                    tree.insert(-2, 0.5, 0.5, 0.5);
+            }
+            tree.insert(i, others[i]);
+        }
+
+        assertEquals(COPIES + others.length, tree.size());
+        assertEquals(COPIES, count(tree, new Tree.NVector(0.5, 0.5, 0.5), new Tree.NVector(0.5, 0.5, 0.5)));
+        for (int q = 0; q < 200; q++) {
+            double[] query = { random.nextDouble(), random.nextDouble(), random.nextDouble() };
+            int expected = bruteForceNearest(others, query);
+            Integer found = tree.nearest(new Tree.NVector(query));
+            if (found != -2)
+                assertEquals(expected, (int) found);
+            else
+                assertTrue(distance(query, new double[] { 0.5, 0.5, 0.5 }) <= distance(query, others[expected]));
+        }
+    }
+
+    private static int count(KdTree<Integer> tree, Tree.NVector min, Tree.NVector max) {
+        AtomicInteger count = new AtomicInteger();
+        tree.queryRange(min, max, element -> count.incrementAndGet());
+        return count.get();
+    }
+
+    private static int bruteForceNearest(double[][] points, double[] query) {
+        int best = -1;
+        for (int i = 0; i < points.length; i++) {
+            if (best < 0 || distance(query, points[i]) < distance(query, points[best]))
+                best = i;
+        }
+        return best;
+    }
+
+    private static double distance(double[] a, double[] b) {
+        double sum = 0;
+        for (int k = 0; k < a.length; k++)
+            sum += (a[k] - b[k]) * (a[k] - b[k]);
+        return sum;
+    }
+}
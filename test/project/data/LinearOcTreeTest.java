@@ -0,0 +1,91 @@
+package project.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Interleaves inserts and reads on a {@link LinearOcTree}, checking after every read that the <br>
+ * points are in code order, with equal codes in insertion order, like a stable sort of all of them.
+ */
+class LinearOcTreeTest {
+
+    @Test
+    void readsBetweenInsertsMatchAStableSort() {
+        Random random = new Random(42);
+        LinearOcTree tree = new LinearOcTree(3);
+        List<double[]> expected = new ArrayList<>();
+
+        for (int round = 0; round < 300; round++) {
+            // Mostly small batches, some large ones, some into a corner with low codes.
+            int n = round % 25 == 0 ? 2000 : random.nextInt(20);
+            double extent = round % 3 == 0 ? 0.2 : 1;
+            double[] xs = new double[n], ys = new double[n], zs = new double[n];
+            for (int i = 0; i < n; i++) {
+                xs[i] = random.nextDouble() * extent;
+                ys[i] = random.nextDouble() * extent;
+                zs[i] = random.nextDouble() * extent;
+            }
+
+            if (round % 2 == 0) {
+                assertEquals(n, tree.insertAll(xs, ys, zs, n));
+            } else {
+                for (int i = 0; i < n; i++)
+                    assertEquals(OcTree.getCellCode(xs[i], ys[i], zs[i], 1, 3), tree.insert(xs[i], ys[i], zs[i]));
+            }
+            for (int i = 0; i < n; i++)
+                expected.add(new double[] { OcTree.getCellCode(xs[i], ys[i], zs[i], 1, 3), xs[i], ys[i], zs[i] });
+
+            // List.sort is stable.
+            expected.sort(Comparator.comparingDouble(point -> point[0]));
+            assertInOrder(expected, tree);
+        }
+    }
+
+    @Test
+    void leavesAndBranches() {
+        LinearOcTree tree = new LinearOcTree(2);
+        assertEquals(-1, tree.insert(1.5, 0.5, 0.5));
+        assertNull(tree.getLeaf(-0.1, 0.5, 0.5));
+
+        tree.insert(0.9, 0.9, 0.9);
+        tree.insert(0.1, 0.1, 0.1);
+        tree.insert(0.1, 0.1, 0.12);
+        tree.insert(0.3, 0.1, 0.1);
+        assertEquals(3, tree.getLeaves().size());
+
+        LinearOcTree.Leaf leaf = tree.getLeaf(0.1, 0.1, 0.1);
+        assertEquals(2, leaf.size());
+        assertEquals(0.1, leaf.getZ(0));
+        assertEquals(0.12, leaf.getZ(1));
+
+        // Everything but the last point is in the first of the top level branches.
+        int[] count = new int[1];
+        tree.forEachPoint(0, 1, (x, y, z) -> count[0]++);
+        assertEquals(3, count[0]);
+    }
+
+    private static void assertInOrder(List<double[]> expected, LinearOcTree tree) {
+        assertEquals(expected.size(), tree.size());
+        int[] i = new int[1];
+        tree.forEachPoint((x, y, z) -> {
+            double[] point = expected.get(i[0]++);
+            assertEquals(point[1], x);
+            assertEquals(point[2], y);
+            assertEquals(point[3], z);
+        });
+
+        int start = 0;
+        for (LinearOcTree.Leaf leaf : tree.getLeaves()) {
+            assertEquals((long) expected.get(start)[0], leaf.code);
+            start += leaf.size();
+        }
+        assertEquals(expected.size(), start);
+    }
+}
@@ -0,0 +1,176 @@
+package project.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks {@link OcTreeSearch} against a brute force scan over the same points, on fixed depth
+ * and adaptive trees holding uniform and clustered points.
+ */
+class OcTreeSearchTest {
+
+    private static final int POINTS = 5_000;
+    private static final int QUERIES = 200;
+
+    @Test
+    void nearestMatchesBruteForce() {
+        for (boolean clustered : new boolean[] { false, true }) {
+            double[][] points = points(POINTS, clustered, 42);
+            for (OcTree tree : trees()) {
+                insert(tree, points);
+                OcTreeSearch search = new OcTreeSearch(tree);
+                Random random = new Random(7);
+
+                for (int q = 0; q < QUERIES; q++) {
+                    double x = random.nextDouble(), y = random.nextDouble(), z = random.nextDouble();
+                    int k = 1 + random.nextInt(32);
+                    assertNearest(search, points, x, y, z, k);
+                }
+            }
+        }
+    }
+
+    @Test
+    void nearestWithMoreNeighboursThanPoints() {
+        double[][] points = points(20, false, 1);
+        OcTree tree = new OcTree(5);
+        insert(tree, points);
+        OcTreeSearch search = new OcTreeSearch(tree);
+
+        assertEquals(20, search.nearest(0.5, 0.5, 0.5, 100));
+        assertNearest(search, points, 0.5, 0.5, 0.5, 100);
+        assertEquals(0, search.nearest(0.5, 0.5, 0.5, 0));
+    }
+
+    @Test
+    void nearestOutsideTheBounds() {
+        double[][] points = points(POINTS, true, 3);
+        for (OcTree tree : trees()) {
+            insert(tree, points);
+            OcTreeSearch search = new OcTreeSearch(tree);
+
+            assertNearest(search, points, -0.5, 0.5, 0.5, 10);
+            assertNearest(search, points, 2, 2, 2, 10);
+            assertNearest(search, points, 0.5, -3, 1.5, 1);
+        }
+    }
+
+    @Test
+    void emptyTree() {
+        for (OcTree tree : trees()) {
+            OcTreeSearch search = new OcTreeSearch(tree);
+            assertEquals(0, search.nearest(0.5, 0.5, 0.5, 5));
+            assertEquals(0, search.size());
+            assertEquals(0, search.withinRadius(0.5, 0.5, 0.5, 10, (x, y, z) -> { throw new AssertionError(); }));
+        }
+    }
+
+    @Test
+    void withinRadiusMatchesBruteForce() {
+        for (boolean clustered : new boolean[] { false, true }) {
+            double[][] points = points(POINTS, clustered, 42);
+            for (OcTree tree : trees()) {
+                insert(tree, points);
+                OcTreeSearch search = new OcTreeSearch(tree);
+                Random random = new Random(11);
+
+                for (int q = 0; q < QUERIES; q++) {
+                    double x = random.nextDouble() * 1.4 - 0.2, y = random.nextDouble() * 1.4 - 0.2, z = random.nextDouble() * 1.4 - 0.2;
+                    assertWithinRadius(search, points, x, y, z, random.nextDouble() * 0.2);
+                }
+            }
+        }
+    }
+
+    @Test
+    void withinRadiusZero() {
+        double[][] points = points(POINTS, false, 5);
+        OcTree tree = new OcTree(5);
+        insert(tree, points);
+        tree.insert(points[0][0], points[1][0], points[2][0]);
+        OcTreeSearch search = new OcTreeSearch(tree);
+
+        // Only the point itself, twice since it was inserted twice.
+        assertEquals(2, search.withinRadius(points[0][0], points[1][0], points[2][0], 0, (x, y, z) -> {}));
+        assertEquals(0, search.withinRadius(0.123456789, 0.5, 0.5, 0, (x, y, z) -> {}));
+    }
+
+    private static OcTree[] trees() {
+        return new OcTree[] { new OcTree(5), OcTree.adaptive(1.0, 8) };
+    }
+
+    private static void assertNearest(OcTreeSearch search, double[][] points, double x, double y, double z, int k) {
+        double[] expected = distances(points, x, y, z);
+        Arrays.sort(expected);
+        expected = Arrays.copyOf(expected, Math.min(k, expected.length));
+
+        int found = search.nearest(x, y, z, k);
+        double[] actual = new double[found];
+        for (int i = 0; i < found; i++) {
+            actual[i] = search.getDistance(i);
+            double dx = search.getX(i) - x, dy = search.getY(i) - y, dz = search.getZ(i) - z;
+            assertEquals(actual[i], Math.sqrt(dx * dx + dy * dy + dz * dz), 1e-12);
+        }
+        assertArrayEquals(expected, actual, 1e-12);
+    }
+
+    private static void assertWithinRadius(OcTreeSearch search, double[][] points, double x, double y, double z, double r) {
+        List<double[]> expected = new ArrayList<>();
+        for (int i = 0; i < points[0].length; i++) {
+            double dx = points[0][i] - x, dy = points[1][i] - y, dz = points[2][i] - z;
+            if (dx * dx + dy * dy + dz * dz <= r * r)
+                expected.add(new double[] { points[0][i], points[1][i], points[2][i] });
+        }
+
+        List<double[]> actual = new ArrayList<>();
+        int found = search.withinRadius(x, y, z, r, (px, py, pz) -> actual.add(new double[] { px, py, pz }));
+
+        assertEquals(expected.size(), found);
+        assertEquals(expected.size(), actual.size());
+        expected.sort(Arrays::compare);
+        actual.sort(Arrays::compare);
+        for (int i = 0; i < expected.size(); i++)
+            assertArrayEquals(expected.get(i), actual.get(i));
+    }
+
+    private static double[] distances(double[][] points, double x, double y, double z) {
+        double[] distances = new double[points[0].length];
+        for (int i = 0; i < distances.length; i++) {
+            double dx = points[0][i] - x, dy = points[1][i] - y, dz = points[2][i] - z;
+            distances[i] = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        }
+        return distances;
+    }
+
+    private static void insert(OcTree tree, double[][] points) {
+        for (int i = 0; i < points[0].length; i++)
+            tree.insert(points[0][i], points[1][i], points[2][i]);
+    }
+
+    /**
+     * Points in the unit cube, uniform or in 8 tight blobs.
+     */
+    private static double[][] points(int count, boolean clustered, long seed) {
+        Random random = new Random(seed);
+        double[][] centres = new double[8][3];
+        for (double[] centre : centres)
+            Arrays.setAll(centre, k -> random.nextDouble());
+
+        double[][] points = new double[3][count];
+        for (int i = 0; i < count; i++) {
+            double[] centre = centres[random.nextInt(centres.length)];
+            for (int k = 0; k < 3; k++) {
+                double value = clustered ? centre[k] + random.nextGaussian() * 0.01 : random.nextDouble();
+                points[k][i] = Math.max(0, Math.min(1, value));
+            }
+        }
+        return points;
+    }
+}
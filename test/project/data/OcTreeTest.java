@@ -0,0 +1,65 @@
+package project.data;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that branches pruned into the free list of {@link OcTree} come back as clean, small leaves.
+ */
+class OcTreeTest {
+
+    @Test
+    void reusedBranchesDropLargeArrays() {
+        OcTree tree = new OcTree(2);
+        OcTree.Branch crowded = fill(tree, 1000);
+        assertTrue(crowded.xs.length >= 1000);
+        empty(tree, 1000);
+        assertNull(tree.findLeaf(0.1, 0.1, 0.1));
+
+        // The pruned leaf is reused for a different cell.
+        OcTree.Branch leaf = tree.insert(0.9, 0.9, 0.9);
+        assertTrue(leaf == crowded || leaf == crowded.parent, "Expected a reused branch");
+        leaf = tree.findLeaf(0.9, 0.9, 0.9);
+        assertEquals(1, leaf.size);
+        assertTrue(leaf.xs.length <= 16, "Kept an array of " + leaf.xs.length);
+    }
+
+    @Test
+    void reusedBranchesKeepMassesInStep() {
+        OcTree tree = new OcTree(2);
+        fill(tree, 10);
+        empty(tree, 10);
+        assertNull(tree.getRoot().branches);
+
+        // Reused leaves don't bring masses along before the tree tracks them, and get them after.
+        tree.insert(0.9, 0.9, 0.9);
+        assertNull(tree.findLeaf(0.9, 0.9, 0.9).masses);
+        tree.trackMass();
+        assertTrue(tree.remove(0.9, 0.9, 0.9));
+
+        OcTree.Branch leaf = tree.insert(0.6, 0.6, 0.6, 3.0);
+        assertNotNull(leaf.masses);
+        assertEquals(3.0, leaf.getMass(0));
+        assertEquals(3.0, tree.getRoot().mass);
+        assertFalse(tree.remove(0.1, 0.1, 0.1));
+    }
+
+    /**
+     * Inserts <tt>n</tt> distinct points into the leaf at the origin corner, returning that leaf.
+     */
+    private static OcTree.Branch fill(OcTree tree, int n) {
+        for (int i = 0; i < n; i++)
+            tree.insert(0.1 + i * 1e-5, 0.1, 0.1);
+        return tree.findLeaf(0.1, 0.1, 0.1);
+    }
+
+    private static void empty(OcTree tree, int n) {
+        for (int i = 0; i < n; i++)
+            assertTrue(tree.remove(0.1 + i * 1e-5, 0.1, 0.1));
+    }
+}
@@ -0,0 +1,166 @@
+package project.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks inserts, removals and range queries of {@link PointQuadTree} against a plain list <br>
+ * of entries, with several entries sharing a cell and a scale other than 1.
+ */
+class PointQuadTreeTest {
+
+    @Test
+    void entriesShareTheirCell() {
+        PointQuadTree tree = new PointQuadTree(3);
+        PointQuadTree.Branch leaf = tree.insert(0.1, 0.1, 1);
+        assertSame(leaf, tree.insert(0.11, 0.12, 2));
+        assertSame(leaf, tree.insert(0.1, 0.1, 3));
+        assertEquals(3, leaf.size);
+        assertEquals(3, leaf.depth);
+        assertSame(leaf, tree.findLeaf(0.12, 0.1));
+
+        assertTrue(tree.contains(0.1, 0.1));
+        assertTrue(tree.contains(0.11, 0.12));
+        assertFalse(tree.contains(0.12, 0.1));
+        assertEquals(0, leaf.indexOf(0.1, 0.1));
+
+        tree.insert(0.9, 0.9, 4);
+        assertEquals(4, tree.size());
+        assertEquals(2, tree.getLeaves().size());
+
+        // Removing needs the value too, and takes out one entry at a time.
+        assertFalse(tree.remove(0.1, 0.1, 2));
+        assertTrue(tree.remove(0.1, 0.1, 1));
+        assertTrue(tree.contains(0.1, 0.1));
+        assertEquals(3, leaf.values[1]);
+        assertTrue(tree.remove(0.1, 0.1, 3));
+        assertFalse(tree.contains(0.1, 0.1));
+        assertEquals(2, tree.size());
+    }
+
+    @Test
+    void removalsPruneBackToAnEmptyRoot() {
+        Random random = new Random(42);
+        PointQuadTree tree = new PointQuadTree(6);
+        List<double[]> entries = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            double[] entry = { random.nextDouble(), random.nextDouble(), i };
+            tree.insert(entry[0], entry[1], i);
+            entries.add(entry);
+        }
+
+        while (!entries.isEmpty()) {
+            double[] entry = entries.remove(random.nextInt(entries.size()));
+            assertTrue(tree.remove(entry[0], entry[1], (int) entry[2]));
+            assertFalse(tree.remove(entry[0], entry[1], (int) entry[2]));
+            if (entries.size() % 500 == 0)
+                assertNoEmptyBranches(tree.getRoot());
+        }
+
+        assertEquals(0, tree.size());
+        assertNull(tree.getRoot().branches);
+        assertTrue(tree.getLeaves().isEmpty());
+        assertNull(tree.findLeaf(0.5, 0.5));
+    }
+
+    @Test
+    void queryRangeMatchesBruteForce() {
+        Random random = new Random(7);
+        for (double scale : new double[] { 1.0, 3.0, 0.25 }) {
+            PointQuadTree tree = new PointQuadTree(5, scale);
+            List<double[]> entries = new ArrayList<>();
+            for (int i = 0; i < 3000; i++) {
+                // Some on a coarse grid, so points sit right on cell borders.
+                double x = i % 4 == 0 ? random.nextInt(9) / 8.0 : random.nextDouble();
+                double y = i % 4 == 0 ? random.nextInt(9) / 8.0 : random.nextDouble();
+                tree.insert(x * scale, y * scale, i);
+                entries.add(new double[] { x * scale, y * scale, i });
+            }
+            assertEquals(entries.size(), tree.size());
+
+            for (int query = 0; query < 300; query++) {
+                double minX, minY, maxX, maxY;
+                if (query % 3 == 0) {
+                    // Boxes made of whole cells, visited through the fully inside path.
+                    double cell = scale / 8;
+                    minX = random.nextInt(8) * cell;
+                    minY = random.nextInt(8) * cell;
+                    maxX = minX + (1 + random.nextInt(4)) * cell;
+                    maxY = minY + (1 + random.nextInt(4)) * cell;
+                } else {
+                    minX = (random.nextDouble() * 1.2 - 0.1) * scale;
+                    minY = (random.nextDouble() * 1.2 - 0.1) * scale;
+                    maxX = minX + random.nextDouble() * 0.5 * scale;
+                    maxY = minY + random.nextDouble() * 0.5 * scale;
+                }
+                assertEquals(bruteForce(entries, minX, minY, maxX, maxY), query(tree, minX, minY, maxX, maxY));
+            }
+            assertEquals(bruteForce(entries, 0, 0, scale, scale), query(tree, -1, -1, 2 * scale, 2 * scale));
+        }
+    }
+
+    @Test
+    void scaledCells() {
+        PointQuadTree tree = new PointQuadTree(2, 4.0);
+        // Leaves are 1 wide, with index x + 2y at every level.
+        PointQuadTree.Branch leaf = tree.insert(3.9, 0.1, 1);
+        assertSame(leaf, tree.insert(3.1, 0.9, 2));
+        assertSame(leaf, tree.getRoot().branches[1].branches[1]);
+        assertSame(tree.insert(4.0, 4.0, 3), tree.getRoot().branches[3].branches[3]);
+        assertSame(tree.insert(0, 0, 4), tree.getRoot().branches[0].branches[0]);
+        assertNull(tree.findLeaf(1.5, 1.5));
+        assertEquals(4, tree.size());
+    }
+
+    @Test
+    void outOfBoundsReturnsNull() {
+        PointQuadTree tree = new PointQuadTree(3, 2.0);
+        double[][] outside = { { -0.001, 1 }, { 1, -0.001 }, { 2.001, 1 }, { 1, 2.001 }, { Double.NaN, 1 }, { 1, Double.NaN },
+                { Double.POSITIVE_INFINITY, 1 }, { Double.NEGATIVE_INFINITY, 1 } };
+        for (double[] point : outside) {
+            assertNull(tree.insert(point[0], point[1], 0));
+            assertNull(tree.getLeaf(point[0], point[1]));
+            assertNull(tree.findLeaf(point[0], point[1]));
+            assertFalse(tree.contains(point[0], point[1]));
+            assertFalse(tree.remove(point[0], point[1], 0));
+        }
+        assertEquals(0, tree.size());
+        assertNull(tree.getRoot().branches);
+    }
+
+    private static List<String> bruteForce(List<double[]> entries, double minX, double minY, double maxX, double maxY) {
+        List<String> found = new ArrayList<>();
+        for (double[] entry : entries) {
+            if (entry[0] >= minX && entry[0] <= maxX && entry[1] >= minY && entry[1] <= maxY)
+                found.add(entry[0] + ", " + entry[1] + " → " + (int) entry[2]);
+        }
+        found.sort(null);
+        return found;
+    }
+
+    private static List<String> query(PointQuadTree tree, double minX, double minY, double maxX, double maxY) {
+        List<String> found = new ArrayList<>();
+        tree.queryRange(minX, minY, maxX, maxY, (x, y, value) -> found.add(x + ", " + y + " → " + value));
+        found.sort(null);
+        return found;
+    }
+
+    private static void assertNoEmptyBranches(PointQuadTree.Branch branch) {
+        for (int j = 0; j < 4 && branch.branches != null; j++) {
+            PointQuadTree.Branch child = branch.branches[j];
+            if (child == null)
+                continue;
+            assertTrue(child.size > 0 || child.branches != null, "Empty branch left at depth " + child.depth);
+            assertNoEmptyBranches(child);
+        }
+    }
+}
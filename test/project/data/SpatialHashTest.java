@@ -0,0 +1,240 @@
+package project.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs random inserts, moves and removals on a {@link SpatialHash} next to a plain list of <br>
+ * points, and checks the table around its edges: probe chains wrapping around the end,   <br>
+ * growing, negative cells, the 2^20 cell limit and cells made by <code>getLeaf</code>.
+ */
+class SpatialHashTest {
+
+    private static final double CELL_SIZE = 0.1;
+
+    @Test
+    void matchesAListOfPoints() {
+        Random random = new Random(42);
+        SpatialHash hash = new SpatialHash(CELL_SIZE);
+        List<double[]> points = new ArrayList<>();
+
+        for (int step = 1; step <= 5000; step++) {
+            int operation = random.nextInt(10);
+            if (operation < 5 || points.isEmpty()) {
+                double[] point = randomPoint(random, points);
+                SpatialHash.Cell cell = hash.insert(point[0], point[1], point[2]);
+                assertTrue(cell.indexOf(point[0], point[1], point[2]) >= 0);
+                points.add(point);
+            } else if (operation < 8) {
+                double[] point = points.get(random.nextInt(points.size()));
+                // Half the moves stay within the cell, mostly.
+                double[] next = random.nextBoolean()
+                        ? new double[] { point[0] + random.nextGaussian() * 0.01, point[1], point[2] }
+                        : randomPoint(random, points);
+                SpatialHash.Cell cell = hash.update(point[0], point[1], point[2], next[0], next[1], next[2]);
+                assertTrue(cell.indexOf(next[0], next[1], next[2]) >= 0);
+                System.arraycopy(next, 0, point, 0, 3);
+            } else {
+                double[] point = points.remove(random.nextInt(points.size()));
+                assertTrue(hash.remove(point[0], point[1], point[2]));
+            }
+
+            if (step % 250 == 0)
+                assertMatches(points, hash, random);
+        }
+
+        // Emptying it out leaves no cells behind.
+        for (double[] point : points)
+            assertTrue(hash.remove(point[0], point[1], point[2]));
+        assertMatches(List.of(), hash, random);
+        assertEquals(0, hash.getCellCount());
+    }
+
+    @Test
+    void missingPointsAndRejectedMoves() {
+        SpatialHash hash = new SpatialHash(1);
+        hash.insert(0.5, 0.5, 0.5);
+        assertTrue(!hash.remove(0.6, 0.5, 0.5) && !hash.remove(9.5, 0.5, 0.5));
+        assertNull(hash.update(9.5, 0.5, 0.5, 1, 1, 1));
+        assertNull(hash.update(0.5, 0.5, 0.5, Double.NaN, 1, 1));
+        assertTrue(hash.contains(0.5, 0.5, 0.5));
+        assertEquals(1, hash.size());
+    }
+
+    @Test
+    void deletesWrappingAroundTheTable() {
+        SpatialHash hash = new SpatialHash(1);
+        int capacity = hash.getCapacity();
+        int last = capacity - 1;
+
+        // Four cells wanting the last slot, which wrap around to the front, and one wanting slot 0.
+        List<int[]> cells = new ArrayList<>();
+        for (int x = 0; cells.size() < 4; x++) {
+            if (slot(x, 0, 0, capacity) == last)
+                cells.add(new int[] { x, 0, 0 });
+        }
+        for (int x = 0; cells.size() < 5; x++) {
+            if (slot(x, 1, 0, capacity) == 0)
+                cells.add(new int[] { x, 1, 0 });
+        }
+        for (int[] cell : cells)
+            hash.insert(cell[0] + 0.5, cell[1] + 0.5, cell[2] + 0.5);
+        assertEquals(capacity, hash.getCapacity(), "The table shouldn't have grown");
+
+        // Removing from the head of the chain pulls everything behind it back across the end.
+        for (int i : new int[] { 0, 2, 4, 1, 3 }) {
+            int[] removed = cells.get(i);
+            assertTrue(hash.remove(removed[0] + 0.5, removed[1] + 0.5, removed[2] + 0.5));
+            assertNull(hash.findCell(removed[0], removed[1], removed[2]));
+            removed[0] = Integer.MIN_VALUE;
+
+            for (int[] cell : cells) {
+                if (cell[0] != Integer.MIN_VALUE)
+                    assertNotNull(hash.findCell(cell[0], cell[1], cell[2]), "Lost cell " + cell[0] + ", " + cell[1]);
+            }
+        }
+        assertEquals(0, hash.getCellCount());
+    }
+
+    @Test
+    void growsAndKeepsEveryCell() {
+        SpatialHash hash = new SpatialHash(1);
+        for (int i = 0; i < 10_000; i++)
+            hash.insert(i % 100 + 0.5, i / 100 + 0.5, -i % 7 - 0.5);
+
+        assertEquals(10_000, hash.getCellCount());
+        assertTrue(hash.getCapacity() >= 2 * hash.getCellCount());
+        for (int i = 0; i < 10_000; i++) {
+            SpatialHash.Cell cell = hash.findCell(i % 100, i / 100, -i % 7 - 1);
+            assertEquals(1, cell.size);
+        }
+    }
+
+    @Test
+    void negativeCoordinatesAndTheCellLimit() {
+        SpatialHash hash = new SpatialHash(1);
+        double limit = 1 << 20;
+
+        SpatialHash.Cell cell = hash.insert(-0.5, -1.5, -limit);
+        assertEquals(-1, cell.x);
+        assertEquals(-2, cell.y);
+        assertEquals(-(1 << 20), cell.z);
+        assertSame(cell, hash.findCell(-1, -2, -(1 << 20)));
+        assertNull(hash.findCell(-1, -2, (1 << 20) - 1));
+
+        SpatialHash.Cell top = hash.insert(limit - 0.5, limit - 0.5, limit - 0.5);
+        assertEquals((1 << 20) - 1, top.x);
+        assertSame(top, hash.findCell((1 << 20) - 1, (1 << 20) - 1, (1 << 20) - 1));
+
+        assertNull(hash.insert(limit, 0, 0));
+        assertNull(hash.insert(0, -limit - 0.5, 0));
+        assertNull(hash.insert(Double.NaN, 0, 0));
+        assertNull(hash.getLeaf(0, 0, Double.POSITIVE_INFINITY));
+        assertNull(hash.findCell(1 << 20, 0, 0));
+        assertEquals(2, hash.size());
+
+        // An unbounded box sees both corners.
+        Set<List<Double>> found = new HashSet<>();
+        double inf = Double.POSITIVE_INFINITY;
+        hash.queryRange(-inf, -inf, -inf, inf, inf, inf, (x, y, z) -> found.add(List.of(x, y, z)));
+        assertEquals(Set.of(List.of(-0.5, -1.5, -limit), List.of(limit - 0.5, limit - 0.5, limit - 0.5)), found);
+    }
+
+    @Test
+    void leavesFromGetLeafStayHiddenUntilFilled() {
+        SpatialHash hash = new SpatialHash(1);
+        hash.insert(5.5, 5.5, 5.5);
+        SpatialHash.Cell empty = hash.getLeaf(0.5, 0.5, 0.5);
+        assertNotNull(empty);
+        assertSame(empty, hash.getLeaf(0.2, 0.2, 0.2));
+
+        assertNull(hash.findLeaf(0.5, 0.5, 0.5));
+        assertNull(hash.findCell(0, 0, 0));
+        assertEquals(1, hash.getCellCount());
+        assertEquals(1, hash.getLeaves().size());
+        assertEquals(1, hash.leafStream().count());
+        assertEquals(1, hash.leafStream().parallel().count());
+        int[] leaves = new int[1];
+        hash.forEachLeaf(leaf -> leaves[0]++);
+        hash.leafIterator().forEachRemaining(leaf -> leaves[0]++);
+        assertEquals(2, leaves[0]);
+
+        assertSame(empty, hash.insert(0.5, 0.5, 0.5));
+        assertSame(empty, hash.findLeaf(0.5, 0.5, 0.5));
+        assertEquals(2, hash.getCellCount());
+        assertTrue(hash.remove(0.5, 0.5, 0.5));
+        assertEquals(1, hash.getCellCount());
+    }
+
+    /**
+     * Mostly new points around the origin, negative ones included, sometimes a copy of an existing one.
+     */
+    private static double[] randomPoint(Random random, List<double[]> points) {
+        if (!points.isEmpty() && random.nextInt(20) == 0)
+            return points.get(random.nextInt(points.size())).clone();
+        return new double[] { random.nextDouble() * 2 - 1, random.nextDouble() * 2 - 1, random.nextDouble() - 0.5 };
+    }
+
+    private static void assertMatches(List<double[]> points, SpatialHash hash, Random random) {
+        assertEquals(points.size(), hash.size());
+        for (double[] point : points)
+            assertTrue(hash.contains(point[0], point[1], point[2]));
+
+        List<List<Double>> expected = new ArrayList<>(), actual = new ArrayList<>();
+        Set<List<Integer>> cells = new HashSet<>();
+        for (double[] point : points) {
+            expected.add(List.of(point[0], point[1], point[2]));
+            cells.add(List.of((int) Math.floor(point[0] / CELL_SIZE), (int) Math.floor(point[1] / CELL_SIZE), (int) Math.floor(point[2] / CELL_SIZE)));
+        }
+        hash.forEachPoint((x, y, z) -> actual.add(List.of(x, y, z)));
+        assertEquals(sorted(expected), sorted(actual));
+
+        assertEquals(cells.size(), hash.getCellCount());
+        Set<List<Integer>> leaves = new HashSet<>();
+        hash.forEachLeaf(leaf -> {
+            assertTrue(leaf.size > 0);
+            leaves.add(List.of(leaf.x, leaf.y, leaf.z));
+        });
+        assertEquals(cells, leaves);
+
+        // Small boxes probe cell by cell, big ones scan the table.
+        for (int i = 0; i < 50; i++) {
+            double size = i % 2 == 0 ? random.nextDouble() * 0.3 : random.nextDouble() * 2;
+            double x = random.nextDouble() * 2 - 1.2, y = random.nextDouble() * 2 - 1.2, z = random.nextDouble() - 0.7;
+            List<List<Double>> inside = new ArrayList<>(), found = new ArrayList<>();
+            for (List<Double> point : expected) {
+                if (point.get(0) >= x && point.get(0) <= x + size && point.get(1) >= y && point.get(1) <= y + size
+                        && point.get(2) >= z && point.get(2) <= z + size)
+                    inside.add(point);
+            }
+            hash.queryRange(x, y, z, x + size, y + size, z + size, (px, py, pz) -> found.add(List.of(px, py, pz)));
+            assertEquals(sorted(inside), sorted(found));
+        }
+    }
+
+    private static List<List<Double>> sorted(List<List<Double>> points) {
+        points.sort(Comparator.<List<Double>>comparingDouble(p -> p.get(0)).thenComparingDouble(p -> p.get(1)).thenComparingDouble(p -> p.get(2)));
+        return points;
+    }
+
+    /**
+     * The home slot of a cell in a table of the given capacity, the same Fibonacci hash of the packed key SpatialHash uses.
+     */
+    private static int slot(int x, int y, int z, int capacity) {
+        long mask = (1L << 21) - 1;
+        long key = (x & mask) << 42 | (y & mask) << 21 | (z & mask);
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(capacity)));
+    }
+}
@@ -0,0 +1,161 @@
+package project.data;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the counters, latency histograms and shape statistics of {@link TreeMetrics}, and <br>
+ * reading them back over JMX. Runs in a JVM of its own with <code>-Dproject.data.metrics=true</code> <br>
+ * and a sampling of 1, see the <tt>metrics-test</tt> execution in the pom.
+ */
+class TreeMetricsTest {
+
+    @Test
+    void countsOperations() {
+        assertTrue(TreeMetrics.ENABLED, "Run with -Dproject.data.metrics=true");
+        OcTree tree = new OcTree(2);
+        TreeMetrics metrics = tree.getMetrics();
+        assertEquals(1, metrics.getSampling());
+
+        Random random = new Random(42);
+        double[][] points = new double[200][];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new double[] { random.nextDouble(), random.nextDouble(), random.nextDouble() };
+            tree.insert(points[i][0], points[i][1], points[i][2]);
+        }
+        assertEquals(200, metrics.getInserts());
+        assertEquals(200, metrics.getLookups());
+        assertEquals(200, metrics.getLatencySamples());
+        assertEquals(metrics.getNodeCount() - 1, metrics.getBranchAllocations());
+        assertEquals(0, metrics.getBranchReuses());
+
+        for (double[] point : points)
+            assertTrue(tree.remove(point[0], point[1], point[2]));
+        assertEquals(200, metrics.getRemovals());
+        assertEquals(400, metrics.getLookups());
+        assertEquals(1, metrics.getNodeCount());
+
+        // Pruned branches come back from the free list.
+        long allocations = metrics.getBranchAllocations();
+        tree.insert(0.1, 0.1, 0.1);
+        assertEquals(allocations, metrics.getBranchAllocations());
+        assertEquals(2, metrics.getBranchReuses());
+
+        metrics.reset();
+        assertEquals(0, metrics.getInserts());
+        assertEquals(0, metrics.getLookups());
+        assertEquals(0, metrics.getLatencySamples());
+        assertEquals(0, metrics.getLatencyMaxNanos());
+    }
+
+    @Test
+    void timesTraversals() {
+        OcTree tree = new OcTree(3);
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++)
+            tree.insert(random.nextDouble(), random.nextDouble(), random.nextDouble());
+        TreeMetrics metrics = tree.getMetrics();
+
+        tree.queryRange(0.2, 0.2, 0.2, 0.6, 0.6, 0.6, (x, y, z) -> {});
+        tree.forEachLeaf(leaf -> {});
+        tree.getLeaves();
+        OcTreeSearch search = new OcTreeSearch(tree);
+        search.nearest(0.5, 0.5, 0.5, 10);
+        search.withinRadius(0.5, 0.5, 0.5, 0.1, (x, y, z) -> {});
+        assertEquals(5, metrics.getTraversals());
+
+        QuadTree<Integer> quadTree = new QuadTree<>(4, 1.0);
+        quadTree.insert(1, 0.3, 0.3);
+        quadTree.queryRange(new Tree.NVector(0.0, 0.0), new Tree.NVector(1.0, 1.0), element -> {});
+        quadTree.forEachLeaf(leaf -> {});
+        assertEquals(2, quadTree.getMetrics().getTraversals());
+
+        assertTrue(metrics.getTraversalP50Nanos() > 0);
+        assertTrue(metrics.getTraversalP50Nanos() <= metrics.getTraversalP99Nanos());
+        assertTrue(metrics.getTraversalP99Nanos() <= metrics.getTraversalMaxNanos());
+    }
+
+    @Test
+    void percentilesStayWithinTheirBucket() {
+        TreeMetrics.Latencies latencies = new TreeMetrics.Latencies();
+        assertEquals(0, latencies.percentile(0.5));
+
+        // 1..10000 ns once each, so quantile q is q * 10000 ns, and the bucket top up to 25% above it.
+        for (long nanos = 1; nanos <= 10_000; nanos++)
+            latencies.record(nanos);
+        assertEquals(10_000, latencies.samples());
+        for (double quantile : new double[] { 0.01, 0.5, 0.9, 0.99, 0.999 }) {
+            long exact = (long) Math.ceil(quantile * 10_000);
+            long reported = latencies.percentile(quantile);
+            assertTrue(reported >= exact && reported <= exact * 1.25, quantile + ": " + reported + " for " + exact);
+        }
+        // Never past the largest value seen.
+        assertEquals(10_000, latencies.percentile(1.0));
+
+        latencies.reset();
+        latencies.record(3);
+        assertEquals(3, latencies.percentile(0.99));
+    }
+
+    @Test
+    void treeLeavesAreNotEmpty() {
+        QuadTree<Integer> tree = new QuadTree<>(2, 1.0);
+        TreeMetrics metrics = tree.getMetrics();
+        assertArrayEquals(new long[] { 1 }, metrics.getOccupancyHistogram());
+
+        tree.insert(1, 0.1, 0.1);
+        tree.insert(2, 0.9, 0.9);
+        tree.insert(3, 0.9, 0.6);
+        // Root with 2 children, one branch with 1 and one with 2, and 3 leaves holding an element each.
+        assertArrayEquals(new long[] { 0, 4, 2 }, metrics.getOccupancyHistogram());
+        assertArrayEquals(new long[] { 1, 2, 3 }, metrics.getNodeCountPerDepth());
+    }
+
+    @Test
+    void maxNodeCounts() {
+        assertEquals(1 + 8 + 64, new OcTree(2).getMetrics().getMaxNodeCount());
+        assertEquals(1 + 4 + 16 + 64, new QuadTree<Integer>(3, 1.0).getMetrics().getMaxNodeCount());
+        assertEquals(Long.MAX_VALUE, new QuadTree<Integer>(40, 1.0).getMetrics().getMaxNodeCount());
+    }
+
+    @Test
+    void readableOverJmx() throws Exception {
+        OcTree tree = new OcTree(2);
+        TreeMetrics metrics = tree.getMetrics().register("jmx test");
+        try {
+            for (int i = 0; i < 50; i++)
+                tree.insert(i / 50.0, 0.5, 0.5);
+            tree.findLeaf(0.5, 0.5, 0.5);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("project.data:type=OcTree,name=" + ObjectName.quote("jmx test"));
+            assertTrue(server.isRegistered(name));
+            assertEquals("OcTree", server.getAttribute(name, "Structure"));
+            assertEquals(50L, server.getAttribute(name, "Inserts"));
+            assertEquals(51L, server.getAttribute(name, "Lookups"));
+            assertEquals(51L, server.getAttribute(name, "LatencySamples"));
+            assertEquals(73L, server.getAttribute(name, "MaxNodeCount"));
+            assertEquals(metrics.getNodeCount(), server.getAttribute(name, "NodeCount"));
+            assertArrayEquals(metrics.getNodeCountPerDepth(), (long[]) server.getAttribute(name, "NodeCountPerDepth"));
+
+            long p50 = (Long) server.getAttribute(name, "LatencyP50Nanos"), p99 = (Long) server.getAttribute(name, "LatencyP99Nanos");
+            assertTrue(p50 > 0 && p50 <= p99 && p99 <= (Long) server.getAttribute(name, "LatencyMaxNanos"));
+
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "Inserts"));
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(
+                new ObjectName("project.data:type=OcTree,name=" + ObjectName.quote("jmx test"))));
+    }
+}
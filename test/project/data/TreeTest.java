@@ -0,0 +1,105 @@
+package project.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the same inserts and removals on a dense and a sparse {@link QuadTree}, and checks <br>
+ * that both end up with the same leaves, with only the sparse one using sparse branches.
+ */
+class TreeTest {
+
+    private static final int DEPTH = 6;
+
+    @Test
+    void denseAndSparseLayoutsAgree() {
+        QuadTree<Integer> dense = new QuadTree<>(DEPTH, 1.0, false), sparse = new QuadTree<>(DEPTH, 1.0, true);
+        Random random = new Random(42);
+        List<double[]> inserted = new ArrayList<>();
+
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 500; i++) {
+                double[] point = { random.nextDouble(), random.nextDouble() };
+                int element = round * 1000 + i;
+                assertEquals(dense.insert(element, point).data, sparse.insert(element, point).data);
+                inserted.add(point);
+            }
+            // Remove a third of everything, so pruned branches get reused later on.
+            for (int i = 0; i < 170 && !inserted.isEmpty(); i++) {
+                double[] point = inserted.remove(random.nextInt(inserted.size()));
+                assertEquals(dense.remove(new Tree.NVector(dense, point)), sparse.remove(new Tree.NVector(sparse, point)));
+            }
+            assertSameLeaves(dense, sparse);
+        }
+
+        assertLayout(dense.root, false);
+        assertLayout(sparse.root, true);
+
+        // Only sparse branches carry the mask.
+        assertTrue(new QuadTree<>(DEPTH, 1.0, false).estimateHeapSize() < new QuadTree<>(DEPTH, 1.0, true).estimateHeapSize());
+    }
+
+    @Test
+    void bulkInsertUsesTheLayoutToo() {
+        Random random = new Random(7);
+        int n = 20_000;
+        Integer[] elements = new Integer[n];
+        Tree.NVector[] vectors = new Tree.NVector[n];
+        for (int i = 0; i < n; i++) {
+            elements[i] = i;
+            vectors[i] = new Tree.NVector(random.nextDouble(), random.nextDouble());
+        }
+
+        QuadTree<Integer> dense = new QuadTree<>(DEPTH, 1.0, false), sparse = new QuadTree<>(DEPTH, 1.0, true);
+        dense.insertAll(elements, vectors);
+        sparse.insertAll(elements, vectors);
+        assertSameLeaves(dense, sparse);
+        assertLayout(dense.root, false);
+        assertLayout(sparse.root, true);
+    }
+
+    @Test
+    void sparseMaskTracksChildren() {
+        QuadTree<String> tree = new QuadTree<>(1, 1.0, true);
+        Tree.SparseBranch<String> root = (Tree.SparseBranch<String>) tree.root;
+        tree.insert("a", 0.9, 0.1);
+        tree.insert("b", 0.1, 0.9);
+        assertEquals(2, root.branches.length);
+        assertEquals(Long.bitCount(root.mask), root.branches.length);
+
+        assertEquals("a", tree.remove(new Tree.NVector(tree, 0.9, 0.1)));
+        assertEquals(1, Long.bitCount(root.mask));
+        assertEquals("b", tree.remove(new Tree.NVector(tree, 0.1, 0.9)));
+        assertEquals(0, root.mask);
+        assertNull(root.branches);
+        assertNull(tree.findLeaf(new Tree.NVector(tree, 0.1, 0.9)));
+    }
+
+    private static void assertSameLeaves(Tree<Integer> dense, Tree<Integer> sparse) {
+        List<Tree.Branch<Integer>> expected = dense.getLeaves(), actual = sparse.getLeaves();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            assertEquals(expected.get(i).data, actual.get(i).data);
+        assertEquals(dense.getNodeCount(), sparse.getNodeCount());
+    }
+
+    private static void assertLayout(Tree.Branch<?> branch, boolean sparse) {
+        assertEquals(sparse, branch instanceof Tree.SparseBranch);
+        if (branch.branches == null)
+            return;
+        for (Tree.Branch<?> child : branch.branches) {
+            if (child != null)
+                assertLayout(child, sparse);
+            else
+                assertFalse(sparse, "Sparse branches don't hold empty slots");
+        }
+    }
+}
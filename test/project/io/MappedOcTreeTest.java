@@ -0,0 +1,141 @@
+package project.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import project.data.OcTree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes a fixed depth and an adaptive {@link OcTree} with {@link OcTreeFile}, and checks that <br>
+ * the {@link MappedOcTree} of the file answers the same as the tree it came from.
+ */
+class MappedOcTreeTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void answersLikeTheSourceTree() throws IOException {
+        Random random = new Random(42);
+        for (OcTree tree : new OcTree[] { new OcTree(4, 2.0), OcTree.adaptive(2.0, 8) }) {
+            List<double[]> points = new ArrayList<>();
+            for (int i = 0; i < 5000; i++) {
+                // A cluster, so the adaptive tree splits deep in one place and stays shallow elsewhere.
+                double spread = i % 3 == 0 ? 0.05 : 1;
+                double[] point = { (0.5 + (random.nextDouble() - 0.5) * spread) * 2, random.nextDouble() * spread * 2, random.nextDouble() * 2 };
+                tree.insert(point[0], point[1], point[2]);
+                points.add(point);
+            }
+
+            Path path = dir.resolve(tree.isAdaptive() ? "adaptive.octf" : "fixed.octf");
+            OcTreeFile.write(tree, path);
+            try (MappedOcTree mapped = MappedOcTree.open(path)) {
+                assertEquals(tree.getScale(), mapped.getScale());
+                assertEquals(tree.getDepth(), mapped.getDepth());
+                assertEquals(points.size(), mapped.getPointCount());
+                assertEquals(tree.getNodeCount(), mapped.getNodeCount());
+
+                for (double[] point : points) {
+                    assertTrue(mapped.contains(point[0], point[1], point[2]));
+                    assertEquals(tree.findLeaf(point[0], point[1], point[2]).size, mapped.getPointCount(mapped.findLeaf(point[0], point[1], point[2])));
+                }
+
+                // Points that aren't there, some in cells without a branch and some out of bounds.
+                for (int i = 0; i < 2000; i++) {
+                    double x = random.nextDouble() * 2.4 - 0.2, y = random.nextDouble() * 2.4 - 0.2, z = random.nextDouble() * 2.4 - 0.2;
+                    assertEquals(tree.contains(x, y, z), mapped.contains(x, y, z));
+                    OcTree.Branch leaf = tree.findLeaf(x, y, z);
+                    int node = mapped.findLeaf(x, y, z);
+                    assertEquals(leaf == null, node < 0);
+                    if (leaf != null)
+                        assertEquals(leaf.size, mapped.getPointCount(node));
+                }
+
+                for (int i = 0; i < 200; i++) {
+                    double x = random.nextDouble() * 2, y = random.nextDouble() * 2, z = random.nextDouble() * 2;
+                    double size = random.nextDouble();
+                    assertEquals(range(tree, x, y, z, size), range(mapped, x, y, z, size));
+                }
+                assertEquals(range(tree, -1, -1, -1, 4), range(mapped, -1, -1, -1, 4));
+            }
+        }
+    }
+
+    @Test
+    void emptyTree() throws IOException {
+        Path path = dir.resolve("empty.octf");
+        OcTreeFile.write(new OcTree(3), path);
+        try (MappedOcTree mapped = MappedOcTree.open(path)) {
+            assertEquals(1, mapped.getNodeCount());
+            assertEquals(0, mapped.getPointCount());
+            assertEquals(-1, mapped.findLeaf(0.5, 0.5, 0.5));
+            assertFalse(mapped.contains(0.5, 0.5, 0.5));
+        }
+    }
+
+    @Test
+    void rejectsBrokenFiles() throws IOException {
+        OcTree tree = new OcTree(3);
+        for (int i = 0; i < 100; i++)
+            tree.insert(i / 100.0, 0.5, 0.5);
+        Path path = dir.resolve("tree.octf");
+        OcTreeFile.write(tree, path);
+        byte[] bytes = Files.readAllBytes(path);
+
+        Path badMagic = dir.resolve("magic.octf");
+        Files.write(badMagic, bytes);
+        overwriteInt(badMagic, 0, 0x12345678);
+        assertEquals("Not an OcTree file", assertThrows(IOException.class, () -> MappedOcTree.open(badMagic)).getMessage());
+
+        Path badVersion = dir.resolve("version.octf");
+        Files.write(badVersion, bytes);
+        overwriteInt(badVersion, 4, OcTreeFile.VERSION + 1);
+        assertThrows(IOException.class, () -> MappedOcTree.open(badVersion));
+
+        // Missing the last point, and cut off inside of the header.
+        Path truncated = dir.resolve("truncated.octf");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - OcTreeFile.POINT_SIZE));
+        assertEquals("OcTree file is truncated", assertThrows(IOException.class, () -> MappedOcTree.open(truncated)).getMessage());
+        Files.write(truncated, Arrays.copyOf(bytes, OcTreeFile.HEADER_SIZE - 1));
+        assertThrows(IOException.class, () -> MappedOcTree.open(truncated));
+        Files.write(truncated, new byte[0]);
+        assertThrows(IOException.class, () -> MappedOcTree.open(truncated));
+    }
+
+    private static Set<List<Double>> range(OcTree tree, double x, double y, double z, double size) {
+        Set<List<Double>> found = new HashSet<>();
+        tree.queryRange(x, y, z, x + size, y + size, z + size, (px, py, pz) -> found.add(List.of(px, py, pz)));
+        return found;
+    }
+
+    private static Set<List<Double>> range(MappedOcTree tree, double x, double y, double z, double size) {
+        Set<List<Double>> found = new HashSet<>();
+        tree.queryRange(x, y, z, x + size, y + size, z + size, (px, py, pz) -> assertTrue(found.add(List.of(px, py, pz)), "Visited twice"));
+        return found;
+    }
+
+    private static void overwriteInt(Path path, long position, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).flip();
+            channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package project.io;
+
+import org.junit.jupiter.api.Test;
+import project.data.OcTree;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PointIngestorTest {
+
+    @Test
+    void countsRejectedPointsSeparately() throws IOException {
+        OcTree tree = new OcTree(4);
+        PointIngestor ingestor = new PointIngestor(tree, 16, 2, 1000);
+        String csv = "x,y,z\n0.1,0.2,0.3\n2,0.5,0.5\n# comment\n0.5,0.5,0.5\n-1,0,0\n";
+        assertEquals(4, ingestor.ingest(channel(csv.getBytes()), PointIngestor.Format.CSV));
+
+        // Closing waits for the writer, after which the counts are final.
+        ingestor.close();
+        assertEquals(2, ingestor.getInsertedCount());
+        assertEquals(2, ingestor.getRejectedCount());
+    }
+
+    @Test
+    void snapshotsAreReadOnly() throws IOException {
+        OcTree tree = OcTree.adaptive(1.0, 8);
+        PointIngestor ingestor = new PointIngestor(tree, 64, 2, 0);
+        ingestor.ingest(channel(binary(points(1000, 1))), PointIngestor.Format.BINARY);
+        ingestor.close();
+
+        OcTree snapshot = ingestor.getSnapshot();
+        assertTrue(snapshot.isReadOnly());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.insert(0.5, 0.5, 0.5));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.getLeaf(0.5, 0.5, 0.5));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.remove(0.5, 0.5, 0.5));
+        assertThrows(UnsupportedOperationException.class, snapshot::compact);
+    }
+
+    @Test
+    void incrementalSnapshotsMatchTheTree() throws IOException {
+        for (OcTree tree : new OcTree[] { new OcTree(5), OcTree.adaptive(1.0, 8) }) {
+            // A snapshot after every batch, each one sharing most of the previous one.
+            PointIngestor ingestor = new PointIngestor(tree, 50, 2, 0);
+            List<OcTree> snapshots = new ArrayList<>();
+            List<List<double[]>> contents = new ArrayList<>();
+
+            for (int round = 0; round < 20; round++) {
+                // Later rounds only add to one corner, so the rest stays shared.
+                double[][] points = points(500, round);
+                double corner = round < 5 ? 1 : 0.25;
+                for (double[] axis : points) {
+                    for (int i = 0; i < axis.length; i++)
+                        axis[i] *= corner;
+                }
+                ingestor.ingest(channel(binary(points)), PointIngestor.Format.BINARY);
+
+                OcTree snapshot = ingestor.getSnapshot();
+                snapshots.add(snapshot);
+                contents.add(leafPoints(snapshot));
+            }
+            ingestor.close();
+
+            OcTree last = ingestor.getSnapshot();
+            assertLeavesEqual(leafPoints(tree), leafPoints(last));
+            // Nothing went into the far corner after the first rounds, so it wasn't copied again.
+            assertTrue(last.getRoot().branches[7] != null && last.getRoot().branches[7] == snapshots.get(10).getRoot().branches[7]);
+            // Every snapshot still holds what it held when it was published.
+            for (int i = 0; i < snapshots.size(); i++)
+                assertLeavesEqual(contents.get(i), leafPoints(snapshots.get(i)));
+        }
+    }
+
+    @Test
+    void interruptedWriterFailsTheParsers() throws Exception {
+        Set<Thread> before = writers();
+        OcTree tree = new OcTree(4);
+        PointIngestor ingestor = new PointIngestor(tree, 4, 1, 1000);
+        Set<Thread> started = writers();
+        started.removeAll(before);
+        assertEquals(1, started.size());
+
+        Thread writer = started.iterator().next();
+        writer.interrupt();
+        writer.join();
+
+        // Far more batches than there is room for, so this would block without the failure.
+        byte[] data = binary(points(10_000, 5));
+        IOException e = assertThrows(IOException.class, () -> ingestor.ingest(channel(data), PointIngestor.Format.BINARY));
+        assertTrue(e.getCause() instanceof InterruptedException);
+        assertThrows(IOException.class, ingestor::close);
+    }
+
+    private static Set<Thread> writers() {
+        Set<Thread> writers = new HashSet<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("OcTree writer") && thread.isAlive())
+                writers.add(thread);
+        }
+        return writers;
+    }
+
+    private static List<double[]> leafPoints(OcTree tree) {
+        List<double[]> leaves = new ArrayList<>();
+        for (OcTree.Branch leaf : tree.getLeaves()) {
+            double[] points = new double[leaf.size * 3];
+            for (int i = 0; i < leaf.size; i++) {
+                points[i * 3] = leaf.xs[i];
+                points[i * 3 + 1] = leaf.ys[i];
+                points[i * 3 + 2] = leaf.zs[i];
+            }
+            leaves.add(points);
+        }
+        return leaves;
+    }
+
+    private static void assertLeavesEqual(List<double[]> expected, List<double[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            assertArrayEquals(expected.get(i), actual.get(i));
+    }
+
+    private static double[][] points(int count, long seed) {
+        Random random = new Random(seed);
+        double[][] points = new double[3][count];
+        for (double[] axis : points)
+            Arrays.setAll(axis, i -> random.nextDouble());
+        return points;
+    }
+
+    private static byte[] binary(double[][] points) {
+        ByteBuffer buffer = ByteBuffer.allocate(points[0].length * 24).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < points[0].length; i++)
+            buffer.putDouble(points[0][i]).putDouble(points[1][i]).putDouble(points[2][i]);
+        return buffer.array();
+    }
+
+    private static ReadableByteChannel channel(byte[] data) {
+        return Channels.newChannel(new ByteArrayInputStream(data));
+    }
+}
@@ -0,0 +1,94 @@
+package project.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link VectorCellCodes} gives exactly the codes of <code>OcTree.getCellCode</code>, <br>
+ * for random points and for the values where the rounding of every level flips.            <br>
+ * Only compiled and run by the <tt>vector</tt> profile.
+ */
+class VectorCellCodesTest {
+
+    // The deepest a code still fits in a long, 3 bits per level.
+    private static final int MAX_DEPTH = 21;
+
+    @Test
+    void theVectorPathIsUsed() {
+        assertTrue(CellCodes.isVectorized(), "Run with --add-modules jdk.incubator.vector");
+    }
+
+    @Test
+    void randomPointsMatchTheScalarCodes() {
+        Random random = new Random(42);
+        // Not a multiple of any lane count, so the scalar tail runs too.
+        int n = 1003;
+        double[] xs = new double[n], ys = new double[n], zs = new double[n];
+        for (double scale : new double[] { 1.0, 3.0, 0.1 }) {
+            for (int i = 0; i < n; i++) {
+                xs[i] = (random.nextDouble() * 1.2 - 0.1) * scale;
+                ys[i] = (random.nextDouble() * 1.2 - 0.1) * scale;
+                zs[i] = (random.nextDouble() * 1.2 - 0.1) * scale;
+            }
+            assertSameCodes(xs, ys, zs, scale);
+        }
+    }
+
+    @Test
+    void boundariesMatchTheScalarCodes() {
+        // Every cell border down to the deepest level and its neighbours, plus the edges of the tree.
+        List<Double> values = new ArrayList<>(List.of(0.0, -0.0, 0.5, 1.0, 0.49999999999999994, 0.5000000000000001,
+                Math.nextDown(0.0), Math.nextUp(1.0), Double.MIN_VALUE, Math.nextDown(1.0), Double.NaN, Double.POSITIVE_INFINITY));
+        for (int level = 1; level <= MAX_DEPTH; level++) {
+            for (int k = 1; k < 8; k++) {
+                double border = k * Math.scalb(1.0, -level);
+                if (border < 1) {
+                    values.add(border);
+                    values.add(Math.nextDown(border));
+                    values.add(Math.nextUp(border));
+                }
+            }
+        }
+
+        // Every border value on every axis, next to values from the other axes, so every lane position sees each.
+        Random random = new Random(7);
+        int n = values.size() * 3;
+        double[] xs = new double[n], ys = new double[n], zs = new double[n];
+        for (int i = 0; i < n; i++) {
+            double value = values.get(i / 3);
+            double other1 = values.get(random.nextInt(values.size())), other2 = random.nextDouble();
+            xs[i] = i % 3 == 0 ? value : other1;
+            ys[i] = i % 3 == 1 ? value : other2;
+            zs[i] = i % 3 == 2 ? value : other1;
+        }
+        for (double scale : new double[] { 1.0, 3.0, 0.1 }) {
+            double[] sx = xs.clone(), sy = ys.clone(), sz = zs.clone();
+            for (int i = 0; i < n; i++) {
+                sx[i] *= scale;
+                sy[i] *= scale;
+                sz[i] *= scale;
+            }
+            assertSameCodes(sx, sy, sz, scale);
+        }
+    }
+
+    private static void assertSameCodes(double[] xs, double[] ys, double[] zs, double scale) {
+        int n = xs.length;
+        long[] codes = new long[n];
+        VectorCellCodes kernel = new VectorCellCodes();
+        for (int depth = 1; depth <= MAX_DEPTH; depth++) {
+            kernel.compute(xs, ys, zs, n, scale, depth, codes);
+            for (int i = 0; i < n; i++) {
+                long expected = OcTree.getCellCode(xs[i], ys[i], zs[i], scale, depth);
+                int point = i, level = depth;
+                assertEquals(expected, codes[i], () -> "[" + xs[point] + ", " + ys[point] + ", " + zs[point] + "] at depth " + level);
+            }
+        }
+    }
+}
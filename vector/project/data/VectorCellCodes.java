@@ -0,0 +1,57 @@
+package project.data;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API version of the cell code descent, only loaded by {@link CellCodes}
+ * when the incubator module is present. Every lane runs the descent of
+ * <code>OcTree.getCellCode</code> with the rounding done as a compare, so the codes are identical.
+ * Lives in its own source root, only compiled by the <tt>vector</tt> profile.
+ */
+final class VectorCellCodes implements CellCodes.Kernel {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = VectorSpecies.of(long.class, DOUBLES.vectorShape());
+
+    VectorCellCodes() {}
+
+    @Override
+    public void compute(double[] xs, double[] ys, double[] zs, int n, double scale, int depth, long[] codes) {
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(n); i < bound; i += DOUBLES.length()) {
+            DoubleVector x = DoubleVector.fromArray(DOUBLES, xs, i).div(scale);
+            DoubleVector y = DoubleVector.fromArray(DOUBLES, ys, i).div(scale);
+            DoubleVector z = DoubleVector.fromArray(DOUBLES, zs, i).div(scale);
+
+            VectorMask<Double> outside = x.lt(0).or(x.compare(VectorOperators.GT, 1))
+                    .or(y.lt(0)).or(y.compare(VectorOperators.GT, 1))
+                    .or(z.lt(0)).or(z.compare(VectorOperators.GT, 1));
+
+            LongVector code = LongVector.zero(LONGS);
+            for (int level = 0; level < depth; level++) {
+                // FMath.round(x) is 1 exactly when x + 0.5 ≥ 1 for 0 ≤ x ≤ 1, including the rounding of the sum.
+                // Comparing instead of converting keeps the loop free of D2L, which most x86 chips can't vectorise.
+                VectorMask<Double> rx = x.add(0.5).compare(VectorOperators.GE, 1);
+                VectorMask<Double> ry = y.add(0.5).compare(VectorOperators.GE, 1);
+                VectorMask<Double> rz = z.add(0.5).compare(VectorOperators.GE, 1);
+
+                // code = (code << 3) | (x + 4y + 2z)
+                code = code.lanewise(VectorOperators.LSHL, 3)
+                        .lanewise(VectorOperators.OR, 1, rx.cast(LONGS))
+                        .lanewise(VectorOperators.OR, 4, ry.cast(LONGS))
+                        .lanewise(VectorOperators.OR, 2, rz.cast(LONGS));
+
+                x = x.mul(2).lanewise(VectorOperators.SUB, 1, rx);
+                y = y.mul(2).lanewise(VectorOperators.SUB, 1, ry);
+                z = z.mul(2).lanewise(VectorOperators.SUB, 1, rz);
+            }
+
+            code.blend(-1L, outside.cast(LONGS)).intoArray(codes, i);
+        }
+        CellCodes.computeScalar(xs, ys, zs, i, n, scale, depth, codes);
+    }
+}